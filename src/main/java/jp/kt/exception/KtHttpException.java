@@ -2,6 +2,9 @@ package jp.kt.exception;
 
 /**
  * HTTPレスポンスコードを指定したエラーをあらわすException.
+ * <p>
+ * HTTPレスポンスコードのみを使用するため、スタックトレースは取得しない.
+ * </p>
  *
  * @author tatsuya.kumon
  */
@@ -29,4 +32,14 @@ public final class KtHttpException extends RuntimeException {
 	public int getHttpResponseCode() {
 		return httpResponseCode;
 	}
+
+	/**
+	 * スタックトレースを取得しない.
+	 *
+	 * @return このオブジェクト
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
 }
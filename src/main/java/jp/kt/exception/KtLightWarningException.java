@@ -0,0 +1,37 @@
+package jp.kt.exception;
+
+/**
+ * スタックトレースを取得しない {@link KtWarningException}.
+ * <p>
+ * 不正なパラメータなど、発生箇所が明らかで頻繁に発生し得る警告に使用する.<br>
+ * 生成時にスタックトレースを取得しないため、大量に発生しても負荷が小さい.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class KtLightWarningException extends KtWarningException {
+	/** シリアルバージョンUID */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param code
+	 *            エラーコード
+	 * @param msg
+	 *            エラーメッセージ
+	 */
+	public KtLightWarningException(String code, String msg) {
+		super(code, msg);
+	}
+
+	/**
+	 * スタックトレースを取得しない.
+	 *
+	 * @return このオブジェクト
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
@@ -0,0 +1,54 @@
+package jp.kt.web;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 入出力用のバイト配列バッファのプール.
+ * <p>
+ * ファイルのアップロード・ダウンロードなどで大きめのバッファを都度生成しないよう再利用する.<br>
+ * 取得したバッファは使用後に必ず {@link #release(byte[])} で返却すること.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class BufferPool {
+	/** バッファサイズ */
+	public static final int BUFFER_SIZE = 64 * 1024;
+
+	/** プールする最大数 */
+	private static final int MAX_POOL_SIZE = 64;
+
+	/** 待機中のバッファ */
+	private static final BlockingQueue<byte[]> POOL = new ArrayBlockingQueue<byte[]>(
+			MAX_POOL_SIZE);
+
+	private BufferPool() {
+	}
+
+	/**
+	 * バッファを取得する.
+	 *
+	 * @return {@link #BUFFER_SIZE}バイトのバッファ
+	 */
+	public static byte[] acquire() {
+		byte[] buffer = POOL.poll();
+		if (buffer == null) {
+			buffer = new byte[BUFFER_SIZE];
+		}
+		return buffer;
+	}
+
+	/**
+	 * バッファを返却する.
+	 *
+	 * @param buffer
+	 *            {@link #acquire()}で取得したバッファ
+	 */
+	public static void release(byte[] buffer) {
+		if (buffer != null && buffer.length == BUFFER_SIZE) {
+			// プールが一杯の場合は破棄
+			POOL.offer(buffer);
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package jp.kt.web;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import jp.kt.tool.Validator;
+
+/**
+ * Content-Dispositionヘッダの解析結果.
+ * <p>
+ * RFC 5987形式（filename*=UTF-8''%E3%81%82.txt など）の拡張パラメータにも対応し、<br>
+ * 拡張パラメータがある場合はそちらを優先する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class ContentDisposition {
+	/** パラメータ（キーは小文字） */
+	private final Map<String, String> params = new HashMap<>();
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param header
+	 *            Content-Dispositionヘッダ値
+	 */
+	ContentDisposition(String header) {
+		if (header == null) {
+			return;
+		}
+		int len = header.length();
+		int i = header.indexOf(';');
+		while (i >= 0 && i < len) {
+			// パラメータ名
+			int eq = header.indexOf('=', i + 1);
+			if (eq < 0) {
+				break;
+			}
+			String key = header.substring(i + 1, eq).trim()
+					.toLowerCase(Locale.ENGLISH);
+			// 値（クォート内の「;」は区切りとしない）
+			int p = eq + 1;
+			while (p < len && header.charAt(p) == ' ') {
+				p++;
+			}
+			String value;
+			if (p < len && header.charAt(p) == '"') {
+				StringBuilder sb = new StringBuilder();
+				p++;
+				while (p < len && header.charAt(p) != '"') {
+					char c = header.charAt(p);
+					if (c == '\\' && p + 1 < len && header.charAt(p + 1) == '"') {
+						c = '"';
+						p++;
+					}
+					sb.append(c);
+					p++;
+				}
+				value = sb.toString();
+				i = header.indexOf(';', p);
+			} else {
+				int end = header.indexOf(';', p);
+				value = header.substring(p, end < 0 ? len : end).trim();
+				i = end;
+			}
+			if (key.endsWith("*")) {
+				// RFC 5987の拡張パラメータ
+				String decoded = decodeExtValue(value);
+				if (decoded != null) {
+					params.put(key.substring(0, key.length() - 1), decoded);
+				}
+			} else if (!params.containsKey(key)) {
+				params.put(key, value);
+			}
+		}
+	}
+
+	/**
+	 * RFC 5987形式の値（charset'language'パーセントエンコード値）をデコードする.
+	 *
+	 * @param value
+	 *            拡張パラメータの値
+	 * @return デコード結果.<br>
+	 *         不正な形式の場合はnull.
+	 */
+	private static String decodeExtValue(String value) {
+		int q1 = value.indexOf('\'');
+		int q2 = q1 < 0 ? -1 : value.indexOf('\'', q1 + 1);
+		if (q2 < 0) {
+			return null;
+		}
+		Charset charset;
+		try {
+			charset = Charset.forName(value.substring(0, q1).trim());
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		for (int i = q2 + 1, len = value.length(); i < len; i++) {
+			char c = value.charAt(i);
+			if (c == '%') {
+				if (i + 2 >= len) {
+					return null;
+				}
+				int hi = Character.digit(value.charAt(i + 1), 16);
+				int lo = Character.digit(value.charAt(i + 2), 16);
+				if (hi < 0 || lo < 0) {
+					return null;
+				}
+				os.write((hi << 4) | lo);
+				i += 2;
+			} else if (c < 0x80) {
+				os.write(c);
+			} else {
+				// 本来は許可されない文字だが、そのままの文字として扱う
+				byte[] b = String.valueOf(c).getBytes(charset);
+				os.write(b, 0, b.length);
+			}
+		}
+		return new String(os.toByteArray(), charset);
+	}
+
+	/**
+	 * パラメータ値を取得する.
+	 *
+	 * @param name
+	 *            パラメータ名（大文字小文字は区別しない）
+	 * @return パラメータ値.<br>
+	 *         存在しない場合はnull.
+	 */
+	String getParam(String name) {
+		return params.get(name.toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * ファイル名を取得する.
+	 * <p>
+	 * ブラウザによってフルパスが送信される場合もあるので、ファイル名のみにする.
+	 * </p>
+	 *
+	 * @return ファイル名.<br>
+	 *         filenameパラメータがない場合はnull.
+	 */
+	String getFilename() {
+		String filename = params.get("filename");
+		if (Validator.isEmpty(filename)) {
+			return filename;
+		}
+		int index = Math.max(filename.lastIndexOf('/'),
+				filename.lastIndexOf('\\'));
+		return filename.substring(index + 1);
+	}
+}
@@ -1,22 +1,25 @@
 package jp.kt.web;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.Part;
 
 import jp.kt.fileio.FileUtil;
-import jp.kt.tool.StringUtil;
-import jp.kt.tool.Validator;
 
 /**
  * マルチパートフォームの処理クラス.
@@ -41,13 +44,15 @@ import jp.kt.tool.Validator;
  * <br>
  * 【ポイント３】ファイル以外の通常のパラメータは {@link HttpServletRequest#getParameter(String)}
  * で取得してください.<br>
+ * <br>
+ * 大きなファイルをコンテナに展開させず、受信しながら処理したい場合は {@link MultipartStreamParser} を使用してください.<br>
  * </p>
  *
  * @author tatsuya.kumon
  */
 public class MultipartForm {
-	/** アップロードファイル情報のリスト */
-	private List<UploadFile> uploadFileList;
+	/** パラメータ名ごとのアップロードファイル情報 */
+	private final Map<String, List<UploadFile>> uploadFileMap;
 
 	/**
 	 * コンストラクタ.
@@ -58,13 +63,23 @@ public class MultipartForm {
 	 *             処理中に例外発生した場合
 	 */
 	public MultipartForm(HttpServletRequest req) throws Exception {
-		this.uploadFileList = new ArrayList<>();
+		Map<String, List<UploadFile>> map = new HashMap<>();
 		for (Part part : req.getParts()) {
 			if (part.getSize() > 0) {
 				// fileでない、通常のパラメータはファイルサイズ0なので、0より大きいものをリストに追加
-				this.uploadFileList.add(new UploadFile(part));
+				List<UploadFile> list = map.get(part.getName());
+				if (list == null) {
+					list = new ArrayList<>();
+					map.put(part.getName(), list);
+				}
+				list.add(new UploadFile(part));
 			}
 		}
+		// 取得時に都度コピーしないよう、変更不可のリストにしておく
+		for (Map.Entry<String, List<UploadFile>> entry : map.entrySet()) {
+			entry.setValue(Collections.unmodifiableList(entry.getValue()));
+		}
+		this.uploadFileMap = map;
 	}
 
 	/**
@@ -72,18 +87,16 @@ public class MultipartForm {
 	 *
 	 * @param name
 	 *            パラメータ名
-	 * @return アップロードしたファイル
+	 * @return アップロードしたファイル.<br>
+	 *         変更不可のリストで、該当なしの場合は空リスト.
 	 */
 	public List<UploadFile> getUploadFileList(String name) {
-
-		List<UploadFile> list = new ArrayList<UploadFile>();
+		List<UploadFile> list = null;
 		if (name != null) {
-			for (UploadFile f : this.uploadFileList) {
-				if (f.getParamName().equals(name)) {
-					// パラメータ名が合致すればリストにセットする
-					list.add(f);
-				}
-			}
+			list = this.uploadFileMap.get(name);
+		}
+		if (list == null) {
+			return Collections.emptyList();
 		}
 		return list;
 	}
@@ -99,6 +112,12 @@ public class MultipartForm {
 	public final class UploadFile implements Serializable {
 		private Part part;
 
+		/** アップロードファイル名（未解析の場合はnull） */
+		private String filename;
+
+		/** アップロードファイル名の解析済みフラグ */
+		private boolean filenameParsed;
+
 		/**
 		 * コンストラクタ.
 		 *
@@ -109,15 +128,6 @@ public class MultipartForm {
 			this.part = part;
 		}
 
-		/**
-		 * パラメータ名の取得.
-		 *
-		 * @return パラメータ名
-		 */
-		private String getParamName() {
-			return part.getName();
-		}
-
 		/**
 		 * ファイル内容の取得.
 		 * <p>
@@ -130,16 +140,48 @@ public class MultipartForm {
 		 *             入出力エラーが発生した場合
 		 */
 		public byte[] getContent() throws IOException {
-			try (BufferedInputStream is = new BufferedInputStream(
-					part.getInputStream());
-					ByteArrayOutputStream os = new ByteArrayOutputStream()) {
-				copy(is, os);
-				return os.toByteArray();
+			long start = System.nanoTime();
+			long size = part.getSize();
+			if (size > Integer.MAX_VALUE - 8) {
+				throw new IOException("ファイルサイズが大きすぎるため読み込めません [" + size
+						+ "]");
 			}
+			byte[] content;
+			try (InputStream is = part.getInputStream()) {
+				// サイズが分かっているので、結果の配列へ直接読み込む
+				content = new byte[(int) Math.max(size, 0)];
+				int offset = 0;
+				int read;
+				while (offset < content.length
+						&& (read = is.read(content, offset, content.length
+								- offset)) != -1) {
+					offset += read;
+				}
+				if (offset < content.length) {
+					// 申告サイズより短かった場合
+					content = Arrays.copyOf(content, offset);
+				} else {
+					// 申告サイズより長かった場合は残りを読み込む
+					int next = is.read();
+					if (next != -1) {
+						ByteArrayOutputStream os = new ByteArrayOutputStream(
+								content.length + BufferPool.BUFFER_SIZE);
+						os.write(content);
+						os.write(next);
+						copy(is, os);
+						content = os.toByteArray();
+					}
+				}
+			}
+			UploadStatistics.record(content.length, System.nanoTime() - start);
+			return content;
 		}
 
 		/**
 		 * アップロードファイルをファイルに保存する.
+		 * <p>
+		 * 内容をメモリに保持せず、プールしたバッファで {@link FileChannel} へ書き込む.
+		 * </p>
 		 *
 		 * @param outFile
 		 *            出力ファイルの {@link FileUtil} オブジェクト
@@ -147,12 +189,27 @@ public class MultipartForm {
 		 *             処理中に例外発生した場合
 		 */
 		public void saveFile(FileUtil outFile) throws Exception {
-			try (BufferedInputStream is = new BufferedInputStream(
-					part.getInputStream());
-					BufferedOutputStream os = new BufferedOutputStream(
-							new FileOutputStream(outFile.getPath()))) {
-				copy(is, os);
+			long start = System.nanoTime();
+			long total = 0;
+			byte[] buffer = BufferPool.acquire();
+			try (InputStream is = part.getInputStream();
+					FileChannel channel = FileChannel.open(
+							Paths.get(outFile.getPath()),
+							StandardOpenOption.WRITE,
+							StandardOpenOption.CREATE,
+							StandardOpenOption.TRUNCATE_EXISTING)) {
+				int read;
+				while ((read = is.read(buffer)) != -1) {
+					ByteBuffer bb = ByteBuffer.wrap(buffer, 0, read);
+					while (bb.hasRemaining()) {
+						channel.write(bb);
+					}
+					total += read;
+				}
+			} finally {
+				BufferPool.release(buffer);
 			}
+			UploadStatistics.record(total, System.nanoTime() - start);
 		}
 
 		/**
@@ -165,12 +222,15 @@ public class MultipartForm {
 		 * @throws IOException
 		 */
 		private void copy(InputStream is, OutputStream os) throws IOException {
-			// 入力ファイルを読み込み出力ストリームに書き込んでいく
-			int ava = 0;
-			while ((ava = is.available()) > 0) {
-				byte[] bs = new byte[ava];
-				is.read(bs);
-				os.write(bs);
+			// EOFまで読み込み出力ストリームに書き込んでいく
+			byte[] buffer = BufferPool.acquire();
+			try {
+				int read;
+				while ((read = is.read(buffer)) != -1) {
+					os.write(buffer, 0, read);
+				}
+			} finally {
+				BufferPool.release(buffer);
 			}
 		}
 
@@ -185,33 +245,19 @@ public class MultipartForm {
 
 		/**
 		 * アップロードファイル名を取得する.
+		 * <p>
+		 * RFC 5987形式の filename* パラメータがある場合はそちらを優先する.<br>
+		 * ブラウザによってフルパスが送信される場合もあるので、ファイル名のみにする.
+		 * </p>
 		 *
 		 * @return アップロードファイル名
 		 */
 		public String getFilename() {
-			String filename = null;
-			/*
-			 * ヘッダ値 Content-Disposition からファイル名を取得
-			 */
-			for (String cd : part.getHeader("Content-Disposition").split(";")) {
-				if (cd.trim().startsWith("filename")) {
-					filename = cd.substring(cd.indexOf('=') + 1).trim()
-							.replace("\"", "");
-				}
-			}
-			/*
-			 * ブラウザによってフルパスが取得される場合もあるので、ファイル名のみにする
-			 */
-			if (!Validator.isEmpty(filename)) {
-				String path = StringUtil.replaceAll(filename, "\\", "/");
-				int index = path.lastIndexOf('/');
-				if (index < 0) {
-					// スラッシュがなかった場合は全体がファイル名
-					filename = path;
-				} else {
-					// スラッシュがあった場合はそれ以降がファイル名
-					filename = path.substring(index + 1);
-				}
+			if (!filenameParsed) {
+				// ヘッダ値 Content-Disposition からファイル名を取得（初回のみ解析）
+				filename = new ContentDisposition(
+						part.getHeader("Content-Disposition")).getFilename();
+				filenameParsed = true;
 			}
 			return filename;
 		}
@@ -0,0 +1,420 @@
+package jp.kt.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import jp.kt.exception.KtException;
+import jp.kt.prop.KtProperties;
+
+/**
+ * multipart/form-data をリクエストのストリームから直接解析するクラス.
+ * <p>
+ * {@link MultipartForm} はコンテナが全パートをメモリや一時ファイルに展開してから処理するが、<br>
+ * このクラスはデータの到着順にパートごとに {@link PartHandler} を呼び出すため、<br>
+ * ハッシュ計算、検証、サイズ超過の拒否、ストレージへの転送などを1パスで行える.<br>
+ * <br>
+ * 【注意点】<br>
+ * &nbsp;&nbsp;・Servletクラスに@MultipartConfigアノテーションを付加しないこと.<br>
+ * &nbsp;&nbsp;・解析前に {@link HttpServletRequest#getParameter(String)} や
+ * {@link HttpServletRequest#getParts()} を呼び出さないこと.<br>
+ * &nbsp;&nbsp;・通常のパラメータも {@link StreamPart} として通知される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class MultipartStreamParser {
+	/** 1パートのヘッダの最大バイト数 */
+	private static final int MAX_HEADER_SIZE = 10 * 1024;
+
+	/** リクエストのストリーム */
+	private final InputStream in;
+
+	/** 区切り文字列（CRLF + "--" + boundary） */
+	private final byte[] delimiter;
+
+	/** ヘッダの文字コード */
+	private final Charset headerCharset;
+
+	/** 1パートの最大バイト数 */
+	private long maxPartSize;
+
+	/** 読み込みバッファ */
+	private byte[] buffer;
+
+	/** バッファ内の未処理データの先頭位置 */
+	private int head;
+
+	/** バッファ内のデータの終端位置 */
+	private int tail;
+
+	/** 見つかった区切り文字列の位置（未検出の場合は-1） */
+	private int delimiterPos = -1;
+
+	/** 区切り文字列の探索を再開する位置（これより前の開始位置は探索済み） */
+	private int scanFrom;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public MultipartStreamParser(HttpServletRequest req) throws IOException {
+		String boundary = getBoundary(req.getContentType());
+		if (boundary == null) {
+			throw new KtException("A063", "マルチパートフォームのリクエストではありません ["
+					+ req.getContentType() + "]");
+		}
+		this.in = req.getInputStream();
+		this.delimiter = ("\r\n--" + boundary)
+				.getBytes(StandardCharsets.ISO_8859_1);
+		String charset = req.getCharacterEncoding();
+		this.headerCharset = Charset.forName(charset != null ? charset
+				: KtProperties.getInstance().getDefaultCharset());
+		this.maxPartSize = WebProperties.getLong(
+				"kt.core.web.fileupload.stream.max.part.size", -1);
+	}
+
+	/**
+	 * Content-Typeからboundaryを取得する.
+	 *
+	 * @param contentType
+	 *            Content-Type
+	 * @return boundary.<br>
+	 *         multipart/form-dataでない場合はnull.
+	 */
+	private static String getBoundary(String contentType) {
+		if (contentType == null
+				|| !contentType.toLowerCase(Locale.ENGLISH).startsWith(
+						"multipart/")) {
+			return null;
+		}
+		for (String param : contentType.split(";")) {
+			param = param.trim();
+			if (param.regionMatches(true, 0, "boundary=", 0, 9)) {
+				String boundary = param.substring(9).trim();
+				if (boundary.length() > 1 && boundary.startsWith("\"")
+						&& boundary.endsWith("\"")) {
+					boundary = boundary.substring(1, boundary.length() - 1);
+				}
+				return boundary.isEmpty() ? null : boundary;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * 1パートの最大バイト数を設定する.
+	 * <p>
+	 * 超過した場合は読み込み中に {@link KtException} が発生する.<br>
+	 * 初期値は kt.core.web.fileupload.stream.max.part.size で、-1の場合は制限なし.
+	 * </p>
+	 *
+	 * @param maxPartSize
+	 *            1パートの最大バイト数
+	 */
+	public void setMaxPartSize(long maxPartSize) {
+		this.maxPartSize = maxPartSize;
+	}
+
+	/**
+	 * リクエストを解析し、パートごとに処理を呼び出す.
+	 *
+	 * @param handler
+	 *            パートごとの処理
+	 * @throws Exception
+	 *             処理中に例外発生した場合
+	 */
+	public void parse(PartHandler handler) throws Exception {
+		buffer = BufferPool.acquire();
+		try {
+			// 先頭の区切りもCRLFから始まるものとして扱う
+			buffer[0] = '\r';
+			buffer[1] = '\n';
+			head = 0;
+			tail = 2;
+			delimiterPos = -1;
+			scanFrom = 0;
+			// プリアンブルを読み捨てる
+			skip(new PartInputStream());
+			while (true) {
+				int b1 = readByte();
+				int b2 = readByte();
+				if (b1 == '-' && b2 == '-') {
+					// 終端
+					break;
+				}
+				if (b1 != '\r' || b2 != '\n') {
+					throw new IOException("マルチパートの区切りが不正です");
+				}
+				PartInputStream partStream = new PartInputStream();
+				handler.handle(new StreamPart(readHeaders(), partStream));
+				// 読み込まれなかった残りを読み捨てる
+				skip(partStream);
+			}
+		} finally {
+			BufferPool.release(buffer);
+			buffer = null;
+		}
+	}
+
+	/**
+	 * パートのヘッダを読み込む.
+	 *
+	 * @return ヘッダ（キーは小文字）
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private Map<String, String> readHeaders() throws IOException {
+		Map<String, String> headers = new HashMap<>();
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		int total = 0;
+		while (true) {
+			int b = readByte();
+			if (++total > MAX_HEADER_SIZE) {
+				throw new IOException("マルチパートのヘッダが大きすぎます");
+			}
+			if (b != '\n') {
+				if (b != '\r') {
+					line.write(b);
+				}
+				continue;
+			}
+			if (line.size() == 0) {
+				// 空行でヘッダ終了
+				return headers;
+			}
+			String header = new String(line.toByteArray(), headerCharset);
+			line.reset();
+			int colon = header.indexOf(':');
+			if (colon > 0) {
+				headers.put(header.substring(0, colon).trim()
+						.toLowerCase(Locale.ENGLISH), header.substring(colon + 1)
+						.trim());
+			}
+		}
+	}
+
+	/**
+	 * 1バイト読み込む.
+	 *
+	 * @return 読み込んだバイト
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private int readByte() throws IOException {
+		if (head == tail && !fill()) {
+			throw new IOException("マルチパートの終端がありません");
+		}
+		return buffer[head++] & 0xff;
+	}
+
+	/**
+	 * 未処理データをバッファ先頭に詰め、ストリームから追加で読み込む.
+	 *
+	 * @return 読み込めた場合はtrue.<br>
+	 *         ストリームの終端に達した場合はfalse.
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private boolean fill() throws IOException {
+		if (head > 0) {
+			System.arraycopy(buffer, head, buffer, 0, tail - head);
+			tail -= head;
+			// 探索済みの位置も合わせてずらす
+			scanFrom = Math.max(scanFrom - head, 0);
+			delimiterPos = delimiterPos >= head ? delimiterPos - head : -1;
+			head = 0;
+		}
+		int read = in.read(buffer, tail, buffer.length - tail);
+		if (read < 0) {
+			return false;
+		}
+		tail += read;
+		return true;
+	}
+
+	/**
+	 * バッファ内の区切り文字列の位置を探す.
+	 * <p>
+	 * 探索結果を保持し、次回は前回探索していない位置からのみ探索する.<br>
+	 * そのため1バイトずつ読み込まれても、バッファ全体を繰り返し探索することはない.
+	 * </p>
+	 *
+	 * @return 区切り文字列の開始位置.<br>
+	 *         見つからない場合は-1.
+	 */
+	private int findDelimiter() {
+		if (delimiterPos >= head) {
+			return delimiterPos;
+		}
+		int from = Math.max(head, scanFrom);
+		int last = tail - delimiter.length;
+		byte first = delimiter[0];
+		outer: for (int i = from; i <= last; i++) {
+			if (buffer[i] != first) {
+				continue;
+			}
+			for (int j = 1; j < delimiter.length; j++) {
+				if (buffer[i + j] != delimiter[j]) {
+					continue outer;
+				}
+			}
+			delimiterPos = i;
+			scanFrom = i;
+			return i;
+		}
+		// 末尾の区切り文字列の長さ未満の位置は、追加で読み込んだ後に探索する
+		scanFrom = Math.max(from, last + 1);
+		return -1;
+	}
+
+	/**
+	 * ストリームを終端まで読み捨てる.
+	 *
+	 * @param is
+	 *            {@link PartInputStream}
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void skip(PartInputStream is) throws IOException {
+		is.discard();
+		while (is.skip(Long.MAX_VALUE) > 0) {
+			// 終端まで繰り返す
+		}
+	}
+
+	/**
+	 * 次の区切り文字列までを読み込むストリーム.
+	 */
+	private final class PartInputStream extends InputStream {
+		/** 終端に達したかどうか */
+		private boolean finished;
+
+		/** 読み捨て中かどうか（最大サイズの判定対象外） */
+		private boolean discarding;
+
+		/** 読み込んだバイト数 */
+		private long count;
+
+		/**
+		 * 以降の読み込みを読み捨てとして扱う.
+		 */
+		void discard() {
+			discarding = true;
+		}
+
+		/**
+		 * 読み込み可能なバイト数を求める.
+		 * <p>
+		 * 必要に応じてストリームから追加で読み込む.
+		 * </p>
+		 *
+		 * @return 読み込み可能なバイト数.<br>
+		 *         パートの終端に達した場合は-1.
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		private int available0() throws IOException {
+			if (finished) {
+				return -1;
+			}
+			while (true) {
+				int pos = findDelimiter();
+				if (pos >= 0) {
+					if (pos == head) {
+						// 区切り文字列を読み飛ばして終了
+						head += delimiter.length;
+						finished = true;
+						return -1;
+					}
+					return pos - head;
+				}
+				// 区切り文字列の途中かもしれない末尾は残す
+				int safe = tail - head - (delimiter.length - 1);
+				if (safe > 0) {
+					return safe;
+				}
+				if (!fill()) {
+					throw new IOException("マルチパートの終端がありません");
+				}
+			}
+		}
+
+		/**
+		 * 読み込んだバイト数を加算し、最大サイズを判定する.
+		 *
+		 * @param n
+		 *            読み込んだバイト数
+		 */
+		private void consume(int n) {
+			head += n;
+			count += n;
+			if (!discarding && maxPartSize >= 0 && count > maxPartSize) {
+				throw new KtException("A064", "パートのサイズが上限を超えています [max="
+						+ maxPartSize + "]");
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (available0() < 0) {
+				return -1;
+			}
+			int b = buffer[head] & 0xff;
+			consume(1);
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			int available = available0();
+			if (available < 0) {
+				return -1;
+			}
+			int n = Math.min(len, available);
+			System.arraycopy(buffer, head, b, off, n);
+			consume(n);
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			int available = available0();
+			if (available < 0 || n <= 0) {
+				return 0;
+			}
+			int skipped = (int) Math.min(n, available);
+			consume(skipped);
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			if (finished) {
+				return 0;
+			}
+			int available = findDelimiter();
+			return Math.max(available < 0 ? tail - head
+					- (delimiter.length - 1) : available - head, 0);
+		}
+
+		@Override
+		public void close() throws IOException {
+			// リクエストのストリームはcloseしない（残りは解析側で読み捨てる）
+		}
+	}
+}
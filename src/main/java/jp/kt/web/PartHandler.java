@@ -0,0 +1,22 @@
+package jp.kt.web;
+
+/**
+ * ストリーミング形式のマルチパート解析で、パートごとに呼び出される処理.
+ * <p>
+ * {@link MultipartStreamParser#parse(PartHandler)} から、パートのヘッダを読み込んだ時点で呼び出される.<br>
+ * {@link StreamPart#getInputStream()} で読み込まなかった残りのデータは、呼び出し後に読み捨てられる.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public interface PartHandler {
+	/**
+	 * 1パート分の処理.
+	 *
+	 * @param part
+	 *            パート情報
+	 * @throws Exception
+	 *             処理中に例外発生した場合
+	 */
+	void handle(StreamPart part) throws Exception;
+}
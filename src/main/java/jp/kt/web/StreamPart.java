@@ -0,0 +1,169 @@
+package jp.kt.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+
+import jp.kt.prop.KtProperties;
+
+/**
+ * ストリーミング形式で解析中のマルチパートの1パート.
+ * <p>
+ * {@link PartHandler#handle(StreamPart)} の呼び出し中のみ有効.<br>
+ * 内容はリクエストから直接読み込むため、{@link #getInputStream()} は1度しか読めない.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class StreamPart {
+	/** 一時ファイルを作成するディレクトリのプロパティキー */
+	private static final String TEMP_DIR_KEY = "kt.core.web.fileupload.dir.temp";
+
+	/** ヘッダ（キーは小文字） */
+	private final Map<String, String> headers;
+
+	/** パラメータ名 */
+	private final String name;
+
+	/** Content-Disposition */
+	private final ContentDisposition disposition;
+
+	/** 内容のストリーム */
+	private final InputStream inputStream;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param headers
+	 *            ヘッダ（キーは小文字）
+	 * @param inputStream
+	 *            内容のストリーム
+	 */
+	StreamPart(Map<String, String> headers, InputStream inputStream) {
+		this.headers = headers;
+		this.inputStream = inputStream;
+		this.disposition = new ContentDisposition(
+				headers.get("content-disposition"));
+		this.name = disposition.getParam("name");
+	}
+
+	/**
+	 * パラメータ名を取得する.
+	 *
+	 * @return パラメータ名
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * アップロードファイル名を取得する.
+	 * <p>
+	 * ブラウザによってフルパスが送信される場合もあるので、ファイル名のみにする.
+	 * </p>
+	 *
+	 * @return アップロードファイル名.<br>
+	 *         ファイル以外のパラメータの場合はnull.
+	 */
+	public String getFilename() {
+		return disposition.getFilename();
+	}
+
+	/**
+	 * ファイルのパートかどうか.
+	 *
+	 * @return ファイルの場合はtrue
+	 */
+	public boolean isFile() {
+		return disposition.getParam("filename") != null;
+	}
+
+	/**
+	 * Content-Typeを取得する.
+	 *
+	 * @return Content-Type.<br>
+	 *         指定されていない場合はnull.
+	 */
+	public String getContentType() {
+		return getHeader("Content-Type");
+	}
+
+	/**
+	 * ヘッダ値を取得する.
+	 *
+	 * @param headerName
+	 *            ヘッダ名（大文字小文字は区別しない）
+	 * @return ヘッダ値
+	 */
+	public String getHeader(String headerName) {
+		return headers.get(headerName.toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * 内容を読み込むストリームを取得する.
+	 * <p>
+	 * リクエストから直接読み込むため、バイト数は事前に分からない.<br>
+	 * 最大サイズを超えた場合は読み込み中に {@link jp.kt.exception.KtException} が発生する.<br>
+	 * closeしても残りは読み捨てるだけで、リクエストのストリームはcloseされない.
+	 * </p>
+	 *
+	 * @return 内容のストリーム
+	 */
+	public InputStream getInputStream() {
+		return inputStream;
+	}
+
+	/**
+	 * 文字列パラメータの値を取得する.
+	 *
+	 * @param charset
+	 *            文字コード
+	 * @return 値
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public String getString(String charset) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		byte[] buffer = BufferPool.acquire();
+		try {
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				os.write(buffer, 0, read);
+			}
+		} finally {
+			BufferPool.release(buffer);
+		}
+		return os.toString(charset);
+	}
+
+	/**
+	 * 内容を一時ファイルに書き出す.
+	 * <p>
+	 * その場で処理しきれない場合のみ使用する.<br>
+	 * 一時ファイルは kt.core.web.fileupload.dir.temp のディレクトリに作成され、<br>
+	 * 不要になったら呼び出し元で削除すること.
+	 * </p>
+	 *
+	 * @return 一時ファイルのパス
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public Path saveTempFile() throws IOException {
+		Path dir = Paths.get(KtProperties.getInstance().getString(TEMP_DIR_KEY));
+		Files.createDirectories(dir);
+		Path temp = Files.createTempFile(dir, "upload", ".tmp");
+		try {
+			Files.copy(inputStream, temp, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException | RuntimeException e) {
+			Files.deleteIfExists(temp);
+			throw e;
+		}
+		return temp;
+	}
+}
@@ -0,0 +1,81 @@
+package jp.kt.web;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * アップロードファイルの読み込み・保存の統計情報.
+ * <p>
+ * {@link MultipartForm.UploadFile}の処理件数、バイト数、処理時間を集計する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class UploadStatistics {
+	/** 処理件数 */
+	private static final AtomicLong COUNT = new AtomicLong();
+
+	/** 処理バイト数 */
+	private static final AtomicLong BYTES = new AtomicLong();
+
+	/** 処理時間（ナノ秒） */
+	private static final AtomicLong NANOS = new AtomicLong();
+
+	private UploadStatistics() {
+	}
+
+	/**
+	 * 1件分の処理結果を記録する.
+	 *
+	 * @param bytes
+	 *            処理バイト数
+	 * @param nanos
+	 *            処理時間（ナノ秒）
+	 */
+	static void record(long bytes, long nanos) {
+		COUNT.incrementAndGet();
+		BYTES.addAndGet(bytes);
+		NANOS.addAndGet(nanos);
+	}
+
+	/**
+	 * 処理件数を取得する.
+	 *
+	 * @return 処理件数
+	 */
+	public static long getCount() {
+		return COUNT.get();
+	}
+
+	/**
+	 * 処理バイト数の合計を取得する.
+	 *
+	 * @return 処理バイト数
+	 */
+	public static long getTotalBytes() {
+		return BYTES.get();
+	}
+
+	/**
+	 * 処理時間の合計を取得する.
+	 *
+	 * @return 処理時間（ミリ秒）
+	 */
+	public static long getTotalMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(NANOS.get());
+	}
+
+	/**
+	 * 平均スループットを取得する.
+	 *
+	 * @return 1秒あたりの処理バイト数.<br>
+	 *         未処理の場合は0.
+	 */
+	public static long getBytesPerSecond() {
+		long nanos = NANOS.get();
+		if (nanos <= 0) {
+			return 0;
+		}
+		return (long) (BYTES.get() * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+	}
+}
@@ -0,0 +1,105 @@
+package jp.kt.web;
+
+import jp.kt.prop.KtProperties;
+import jp.kt.tool.Validator;
+
+/**
+ * kt_core_webの任意設定値を取得するクラス.
+ * <p>
+ * {@link KtProperties}から値を取得し、未設定または不正な値の場合はデフォルト値を返す.<br>
+ * 後から追加された設定項目は、既存アプリケーションのプロパティファイルに記載が無い場合があるため、<br>
+ * 必須でない設定項目はこのクラス経由で取得すること.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class WebProperties {
+	private WebProperties() {
+	}
+
+	/**
+	 * 文字列の設定値を取得する.
+	 *
+	 * @param key
+	 *            プロパティキー
+	 * @param defaultValue
+	 *            デフォルト値
+	 * @return 設定値.<br>
+	 *         未設定の場合はデフォルト値.
+	 */
+	public static String getString(String key, String defaultValue) {
+		String value;
+		try {
+			value = KtProperties.getInstance().getString(key);
+		} catch (RuntimeException e) {
+			// キーが存在しない場合
+			value = null;
+		}
+		if (Validator.isEmpty(value) || Validator.isEmpty(value.trim())) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+
+	/**
+	 * int値の設定値を取得する.
+	 *
+	 * @param key
+	 *            プロパティキー
+	 * @param defaultValue
+	 *            デフォルト値
+	 * @return 設定値.<br>
+	 *         未設定もしくは数値でない場合はデフォルト値.
+	 */
+	public static int getInt(String key, int defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * long値の設定値を取得する.
+	 *
+	 * @param key
+	 *            プロパティキー
+	 * @param defaultValue
+	 *            デフォルト値
+	 * @return 設定値.<br>
+	 *         未設定もしくは数値でない場合はデフォルト値.
+	 */
+	public static long getLong(String key, long defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * boolean値の設定値を取得する.
+	 *
+	 * @param key
+	 *            プロパティキー
+	 * @param defaultValue
+	 *            デフォルト値
+	 * @return 設定値.<br>
+	 *         未設定の場合はデフォルト値.
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = getString(key, null);
+		if (value == null) {
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(value);
+	}
+}
@@ -0,0 +1,202 @@
+package jp.kt.web.compress;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * gzipもしくはdeflate形式で圧縮しながら出力するストリーム.
+ * <p>
+ * {@link Deflater}は{@link DeflaterPool}から取得し、close時に返却する.<br>
+ * closeすると出力先のストリームもcloseされる.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class CompressingOutputStream extends OutputStream {
+	/** gzipヘッダ */
+	private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b,
+			Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+	/** 圧縮データのバッファサイズ */
+	private static final int BUFFER_SIZE = 8192;
+
+	/** 出力先 */
+	private final OutputStream out;
+
+	/** gzip形式かどうか */
+	private final boolean gzip;
+
+	/** 圧縮処理 */
+	private final Deflater deflater;
+
+	/** gzipトレーラ用のCRC */
+	private final CRC32 crc;
+
+	/** 圧縮データのバッファ */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	/** 1バイト書き込み用 */
+	private final byte[] single = new byte[1];
+
+	/** ヘッダ出力済みフラグ */
+	private boolean headerWritten;
+
+	/** close済みフラグ */
+	private boolean closed;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param out
+	 *            出力先
+	 * @param encoding
+	 *            圧縮形式
+	 */
+	public CompressingOutputStream(OutputStream out, ContentEncoding encoding) {
+		this.out = out;
+		this.gzip = encoding == ContentEncoding.GZIP;
+		this.deflater = DeflaterPool.acquire(gzip);
+		this.crc = gzip ? new CRC32() : null;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		single[0] = (byte) b;
+		write(single, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("ストリームはcloseされています");
+		}
+		if (len == 0) {
+			return;
+		}
+		writeHeader();
+		if (gzip) {
+			crc.update(b, off, len);
+		}
+		deflater.setInput(b, off, len);
+		while (!deflater.needsInput()) {
+			deflate(Deflater.NO_FLUSH);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (closed) {
+			return;
+		}
+		if (headerWritten) {
+			// 溜まっている圧縮データを吐き出す
+			int length;
+			do {
+				length = deflate(Deflater.SYNC_FLUSH);
+			} while (length == buffer.length);
+		}
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			writeHeader();
+			deflater.finish();
+			while (!deflater.finished()) {
+				deflate(Deflater.NO_FLUSH);
+			}
+			if (gzip) {
+				writeTrailer();
+			}
+		} finally {
+			DeflaterPool.release(deflater, gzip);
+			out.close();
+		}
+	}
+
+	/**
+	 * 未出力のデータを出力せずに破棄する.
+	 * <p>
+	 * レスポンスのバッファを破棄する場合に使用する.<br>
+	 * {@link Deflater}は返却するが、出力先はcloseしない.<br>
+	 * 以降は書き込みできない.
+	 * </p>
+	 */
+	public void discard() {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		DeflaterPool.release(deflater, gzip);
+	}
+
+	/**
+	 * gzipヘッダを出力する.
+	 *
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void writeHeader() throws IOException {
+		if (headerWritten) {
+			return;
+		}
+		headerWritten = true;
+		if (gzip) {
+			out.write(GZIP_HEADER);
+		}
+	}
+
+	/**
+	 * gzipトレーラ（CRCと元データサイズ）を出力する.
+	 *
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void writeTrailer() throws IOException {
+		byte[] trailer = new byte[8];
+		writeInt((int) crc.getValue(), trailer, 0);
+		writeInt((int) deflater.getBytesRead(), trailer, 4);
+		out.write(trailer);
+	}
+
+	/**
+	 * リトルエンディアンで4バイト書き込む.
+	 *
+	 * @param value
+	 *            値
+	 * @param b
+	 *            書き込み先
+	 * @param offset
+	 *            書き込み位置
+	 */
+	private static void writeInt(int value, byte[] b, int offset) {
+		b[offset] = (byte) value;
+		b[offset + 1] = (byte) (value >> 8);
+		b[offset + 2] = (byte) (value >> 16);
+		b[offset + 3] = (byte) (value >> 24);
+	}
+
+	/**
+	 * 圧縮して出力する.
+	 *
+	 * @param flush
+	 *            フラッシュモード
+	 * @return 出力したバイト数
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private int deflate(int flush) throws IOException {
+		int length = deflater.deflate(buffer, 0, buffer.length, flush);
+		if (length > 0) {
+			out.write(buffer, 0, length);
+		}
+		return length;
+	}
+}
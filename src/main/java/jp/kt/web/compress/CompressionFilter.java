@@ -0,0 +1,730 @@
+package jp.kt.web.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.ServletResponseWrapper;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * JSPへのforwardなどのレスポンスを圧縮するFilter.
+ * <p>
+ * web.xmlに登録して使用する.<br>
+ * Accept-Encodingヘッダでgzip/deflateを受け付けるクライアントに対し、<br>
+ * 圧縮対象のコンテントタイプで、かつ
+ * {@link CompressionSupport#getThreshold()}バイト以上のレスポンスのみ圧縮する.<br>
+ * 閾値に達するまでは出力をバッファし、達した時点で圧縮するかを決定する.<br>
+ * 圧縮開始後に {@link ServletResponse#resetBuffer()}（JSPのerrorPageへのforwardなど）
+ * された場合は、<br>
+ * 圧縮途中のデータを破棄して新たに圧縮し直す.
+ * {@link ServletResponse#reset()} の場合は、圧縮するかの判定からやり直す.<br>
+ * 非同期処理を開始したリクエストは、Filterを抜けた時点ではなく非同期処理の完了時に出力を完了する.<br>
+ * {@link ServletOutputStream#setWriteListener(WriteListener)}
+ * によるノンブロッキング出力は圧縮せず、元のストリームにそのまま委譲する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class CompressionFilter implements Filter {
+	/** ServletContext（非同期処理完了時のエラー出力用） */
+	private ServletContext servletContext;
+
+	@Override
+	public void init(FilterConfig filterConfig) throws ServletException {
+		servletContext = filterConfig.getServletContext();
+	}
+
+	@Override
+	public void doFilter(ServletRequest request, ServletResponse response,
+			FilterChain chain) throws IOException, ServletException {
+		if (!(request instanceof HttpServletRequest)
+				|| !(response instanceof HttpServletResponse)) {
+			chain.doFilter(request, response);
+			return;
+		}
+		HttpServletRequest req = (HttpServletRequest) request;
+		CompressionResponse current = find(response);
+		if (current != null) {
+			// forwardや非同期処理からのdispatchで、既に圧縮対象となっている
+			chain.doFilter(request, response);
+			if (req.getDispatcherType() == DispatcherType.ASYNC
+					&& !req.isAsyncStarted()) {
+				current.finish();
+			}
+			return;
+		}
+		ContentEncoding encoding = ContentEncoding.negotiate(req
+				.getHeader("Accept-Encoding"));
+		if (encoding == null || req.getHeader("Range") != null
+				|| "HEAD".equals(req.getMethod())) {
+			chain.doFilter(request, response);
+			return;
+		}
+		final CompressionResponse wrapper = new CompressionResponse(
+				(HttpServletResponse) response, encoding);
+		boolean async = false;
+		try {
+			chain.doFilter(request, wrapper);
+			async = req.isAsyncStarted();
+		} finally {
+			if (async) {
+				// 非同期処理の完了時に出力を完了する
+				req.getAsyncContext().addListener(new AsyncListener() {
+					@Override
+					public void onComplete(AsyncEvent event) {
+						finishQuietly(wrapper);
+					}
+
+					@Override
+					public void onTimeout(AsyncEvent event) {
+					}
+
+					@Override
+					public void onError(AsyncEvent event) {
+					}
+
+					@Override
+					public void onStartAsync(AsyncEvent event) {
+						// 再度startAsyncされた場合も引き続き完了を待つ
+						event.getAsyncContext().addListener(this);
+					}
+				});
+			} else {
+				wrapper.finish();
+			}
+		}
+	}
+
+	/**
+	 * レスポンスのラッパーから圧縮対象のレスポンスを探す.
+	 *
+	 * @param response
+	 *            レスポンス
+	 * @return 圧縮対象のレスポンス、存在しない場合はnull
+	 */
+	private static CompressionResponse find(ServletResponse response) {
+		ServletResponse res = response;
+		while (res instanceof ServletResponseWrapper) {
+			if (res instanceof CompressionResponse) {
+				return (CompressionResponse) res;
+			}
+			res = ((ServletResponseWrapper) res).getResponse();
+		}
+		return null;
+	}
+
+	/**
+	 * 非同期処理の完了時に、未出力のデータを出力する.
+	 * <p>
+	 * 呼び出し元に例外を返せないため、エラーはServletContextのログに出力する.
+	 * </p>
+	 *
+	 * @param wrapper
+	 *            圧縮対象のレスポンス
+	 */
+	private void finishQuietly(CompressionResponse wrapper) {
+		try {
+			wrapper.finish();
+		} catch (IOException | RuntimeException e) {
+			servletContext.log("非同期処理の完了時に圧縮レスポンスを出力できませんでした", e);
+		}
+	}
+
+	@Override
+	public void destroy() {
+	}
+
+	/**
+	 * 出力を圧縮するレスポンスラッパー.
+	 */
+	private static final class CompressionResponse extends
+			HttpServletResponseWrapper {
+		/** 圧縮形式 */
+		private final ContentEncoding encoding;
+
+		/** 出力ストリーム */
+		private CompressionStream stream;
+
+		/** Writer */
+		private PrintWriter writer;
+
+		/** Writerの出力先（バッファ破棄時に文字コード変換のバッファも破棄するためのもの） */
+		private ResettableWriter charWriter;
+
+		/** 保留中のContent-Length */
+		private long contentLength = -1;
+
+		/** 圧縮しないことが確定しているかどうか */
+		private boolean disabled;
+
+		/** 出力完了済みフラグ */
+		private boolean finished;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param res
+		 *            HTTPレスポンス
+		 * @param encoding
+		 *            圧縮形式
+		 */
+		CompressionResponse(HttpServletResponse res, ContentEncoding encoding) {
+			super(res);
+			this.encoding = encoding;
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (writer != null) {
+				throw new IllegalStateException("getWriter()が既に呼ばれています");
+			}
+			return getStream();
+		}
+
+		@Override
+		public PrintWriter getWriter() throws IOException {
+			if (writer == null) {
+				if (stream != null) {
+					throw new IllegalStateException(
+							"getOutputStream()が既に呼ばれています");
+				}
+				charWriter = new ResettableWriter(getStream(),
+						getCharacterEncoding());
+				writer = new PrintWriter(charWriter);
+			}
+			return writer;
+		}
+
+		/**
+		 * 出力ストリームを取得する.
+		 *
+		 * @return 出力ストリーム
+		 */
+		private CompressionStream getStream() {
+			if (stream == null) {
+				stream = new CompressionStream(this);
+			}
+			return stream;
+		}
+
+		@Override
+		public void setContentLength(int len) {
+			setContentLengthLong(len);
+		}
+
+		@Override
+		public void setContentLengthLong(long len) {
+			if (disabled || (stream != null && stream.isDecided())) {
+				if (stream == null || !stream.isCompressing()) {
+					super.setContentLengthLong(len);
+				}
+				return;
+			}
+			// 圧縮するかが決まるまで保留
+			this.contentLength = len;
+		}
+
+		@Override
+		public void setHeader(String name, String value) {
+			if (interceptHeader(name, value)) {
+				return;
+			}
+			super.setHeader(name, value);
+		}
+
+		@Override
+		public void addHeader(String name, String value) {
+			if (interceptHeader(name, value)) {
+				return;
+			}
+			super.addHeader(name, value);
+		}
+
+		@Override
+		public void setIntHeader(String name, int value) {
+			if (interceptHeader(name, String.valueOf(value))) {
+				return;
+			}
+			super.setIntHeader(name, value);
+		}
+
+		@Override
+		public void addIntHeader(String name, int value) {
+			if (interceptHeader(name, String.valueOf(value))) {
+				return;
+			}
+			super.addIntHeader(name, value);
+		}
+
+		/**
+		 * 圧縮に影響するヘッダを処理する.
+		 *
+		 * @param name
+		 *            ヘッダ名
+		 * @param value
+		 *            値
+		 * @return ヘッダ設定を保留した場合はtrue
+		 */
+		private boolean interceptHeader(String name, String value) {
+			if ("Content-Length".equalsIgnoreCase(name)) {
+				try {
+					setContentLengthLong(Long.parseLong(value.trim()));
+				} catch (NumberFormatException e) {
+					return false;
+				}
+				return true;
+			}
+			if ("Content-Encoding".equalsIgnoreCase(name)) {
+				// アプリケーションが独自にエンコードしている場合は圧縮しない
+				disabled = true;
+			}
+			return false;
+		}
+
+		@Override
+		public void setStatus(int sc) {
+			if (sc == SC_NO_CONTENT || sc == SC_NOT_MODIFIED
+					|| sc == SC_PARTIAL_CONTENT) {
+				disabled = true;
+			}
+			super.setStatus(sc);
+		}
+
+		@Override
+		public void sendError(int sc) throws IOException {
+			disabled = true;
+			super.sendError(sc);
+		}
+
+		@Override
+		public void sendError(int sc, String msg) throws IOException {
+			disabled = true;
+			super.sendError(sc, msg);
+		}
+
+		@Override
+		public void sendRedirect(String location) throws IOException {
+			disabled = true;
+			super.sendRedirect(location);
+		}
+
+		@Override
+		public void flushBuffer() throws IOException {
+			if (writer != null) {
+				writer.flush();
+			}
+			if (stream != null) {
+				stream.decide();
+				stream.flush();
+			}
+			super.flushBuffer();
+		}
+
+		@Override
+		public void resetBuffer() {
+			if (isCommitted()) {
+				throw new IllegalStateException("レスポンスは確定済みです");
+			}
+			if (stream != null) {
+				// 圧縮中の場合は、ヘッダはそのままで新たに圧縮し直す
+				stream.resetBuffer();
+			}
+			super.resetBuffer();
+			if (charWriter != null) {
+				charWriter.discard(charWriter.getEncoding());
+			}
+		}
+
+		@Override
+		public void reset() {
+			if (isCommitted()) {
+				throw new IllegalStateException("レスポンスは確定済みです");
+			}
+			if (stream != null) {
+				// ヘッダも破棄されるため、圧縮するかの判定からやり直す
+				stream.reset();
+			}
+			contentLength = -1;
+			disabled = false;
+			super.reset();
+			if (charWriter != null) {
+				// 文字コードが変更されている場合もあるため、改めて取得する
+				charWriter.discard(getCharacterEncoding());
+			}
+		}
+
+		/**
+		 * 圧縮するかを判定する.
+		 *
+		 * @param bufferedLength
+		 *            判定時点でバッファしているバイト数
+		 * @param complete
+		 *            出力が完了している場合はtrue
+		 * @return 圧縮する場合はtrue
+		 */
+		boolean shouldCompress(int bufferedLength, boolean complete) {
+			if (disabled || isCommitted()
+					|| !CompressionSupport.isCompressibleType(getContentType())) {
+				return false;
+			}
+			long length = complete ? bufferedLength : contentLength;
+			return length < 0 || length >= CompressionSupport.getThreshold();
+		}
+
+		/**
+		 * 実際の出力先を準備する.
+		 *
+		 * @param compress
+		 *            圧縮する場合はtrue
+		 * @return 出力先
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		OutputStream openTarget(boolean compress) throws IOException {
+			if (compress) {
+				super.setHeader("Content-Encoding", encoding.getHeaderValue());
+				super.addHeader("Vary", "Accept-Encoding");
+				return openCompressingStream();
+			}
+			if (contentLength >= 0) {
+				super.setContentLengthLong(contentLength);
+			}
+			return super.getOutputStream();
+		}
+
+		/**
+		 * 圧縮して出力するストリームを作成する.
+		 *
+		 * @return 出力先
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		OutputStream openCompressingStream() throws IOException {
+			return new CompressingOutputStream(super.getOutputStream(),
+					encoding);
+		}
+
+		/**
+		 * 圧縮しないことを確定する.
+		 */
+		void disableCompression() {
+			disabled = true;
+		}
+
+		/**
+		 * Filterの処理完了時に、未出力のデータを出力する.
+		 * <p>
+		 * 非同期処理の完了時とdispatch後の両方から呼ばれる場合があるため、2回目以降は何もしない.
+		 * </p>
+		 *
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		void finish() throws IOException {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			if (writer != null) {
+				writer.close();
+			} else if (stream != null) {
+				stream.close();
+			} else if (contentLength >= 0 && !isCommitted()) {
+				super.setContentLengthLong(contentLength);
+			}
+		}
+	}
+
+	/**
+	 * 文字コード変換のバッファを破棄できるWriter.
+	 * <p>
+	 * {@link OutputStreamWriter} は変換後のバイトを内部でバッファするため、<br>
+	 * レスポンスのバッファ破棄時は、未出力分ごと新しいものに差し替える.
+	 * </p>
+	 */
+	private static final class ResettableWriter extends Writer {
+		/** 出力先のストリーム */
+		private final OutputStream stream;
+
+		/** 出力先 */
+		private OutputStreamWriter out;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param stream
+		 *            出力先のストリーム
+		 * @param charset
+		 *            文字コード
+		 * @throws UnsupportedEncodingException
+		 *             使用できない文字コードの場合
+		 */
+		ResettableWriter(OutputStream stream, String charset)
+				throws UnsupportedEncodingException {
+			this.stream = stream;
+			this.out = new OutputStreamWriter(stream, charset);
+		}
+
+		/**
+		 * 現在の文字コードを取得する.
+		 *
+		 * @return 文字コード
+		 */
+		String getEncoding() {
+			return out.getEncoding();
+		}
+
+		/**
+		 * 未出力のデータを破棄する.
+		 *
+		 * @param charset
+		 *            以降の文字コード.<br>
+		 *            使用できない場合は現在の文字コード.
+		 */
+		void discard(String charset) {
+			Charset cs;
+			try {
+				cs = Charset.forName(charset);
+			} catch (IllegalArgumentException e) {
+				cs = Charset.forName(out.getEncoding());
+			}
+			// 古いWriterはflushせずに破棄する（出力先のストリームも共有しているためcloseしない）
+			out = new OutputStreamWriter(stream, cs);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			out.write(cbuf, off, len);
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			out.write(str, off, len);
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			out.write(c);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+
+	/**
+	 * 閾値まではバッファし、以降は圧縮もしくはそのまま出力するストリーム.
+	 */
+	private static final class CompressionStream extends ServletOutputStream {
+		/** レスポンス */
+		private final CompressionResponse response;
+
+		/** 判定前のバッファ */
+		private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+
+		/** 判定後の出力先 */
+		private OutputStream target;
+
+		/** 圧縮中かどうか */
+		private boolean compressing;
+
+		/** close済みフラグ */
+		private boolean closed;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param response
+		 *            レスポンス
+		 */
+		CompressionStream(CompressionResponse response) {
+			this.response = response;
+		}
+
+		/**
+		 * 圧縮するかが確定しているか.
+		 *
+		 * @return 確定している場合はtrue
+		 */
+		boolean isDecided() {
+			return target != null;
+		}
+
+		/**
+		 * 圧縮中かどうか.
+		 *
+		 * @return 圧縮中の場合はtrue
+		 */
+		boolean isCompressing() {
+			return compressing;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] { (byte) b }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (closed) {
+				throw new IOException("ストリームはcloseされています");
+			}
+			if (target != null) {
+				target.write(b, off, len);
+				return;
+			}
+			pending.write(b, off, len);
+			if (pending.size() >= CompressionSupport.getThreshold()) {
+				decide();
+			}
+		}
+
+		/**
+		 * 圧縮するかを確定し、バッファしていたデータを出力する.
+		 *
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		void decide() throws IOException {
+			decide(false);
+		}
+
+		/**
+		 * 圧縮するかを確定し、バッファしていたデータを出力する.
+		 *
+		 * @param complete
+		 *            出力が完了している場合はtrue
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		private void decide(boolean complete) throws IOException {
+			if (target != null) {
+				return;
+			}
+			compressing = response.shouldCompress(pending.size(), complete);
+			target = response.openTarget(compressing);
+			pending.writeTo(target);
+			pending = null;
+		}
+
+		/**
+		 * 未出力のデータを破棄する.
+		 * <p>
+		 * 圧縮中の場合は、圧縮途中のデータを破棄して新たに圧縮を開始する.<br>
+		 * 圧縮しない場合は、レスポンスのバッファの破棄のみでよい.
+		 * </p>
+		 */
+		void resetBuffer() {
+			if (pending != null) {
+				pending.reset();
+			} else if (compressing) {
+				((CompressingOutputStream) target).discard();
+				try {
+					target = response.openCompressingStream();
+				} catch (IOException e) {
+					// getOutputStreamは既に呼ばれているため発生しない
+					throw new IllegalStateException(e);
+				}
+			}
+		}
+
+		/**
+		 * 未出力のデータを破棄し、圧縮するかの判定前の状態に戻す.
+		 */
+		void reset() {
+			if (compressing) {
+				((CompressingOutputStream) target).discard();
+			}
+			target = null;
+			compressing = false;
+			if (pending == null) {
+				pending = new ByteArrayOutputStream();
+			} else {
+				pending.reset();
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			// 判定前はバッファしたままにする
+			if (target != null) {
+				target.flush();
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (closed) {
+				return;
+			}
+			decide(true);
+			closed = true;
+			target.close();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * 圧縮中は常にブロッキングで出力するため、常にtrueを返す.
+		 * </p>
+		 */
+		@Override
+		public boolean isReady() {
+			if (target instanceof ServletOutputStream) {
+				return ((ServletOutputStream) target).isReady();
+			}
+			return true;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * <p>
+		 * 圧縮するかの判定前であれば、圧縮しないことを確定して元のストリームに委譲する.<br>
+		 * 圧縮を開始した後はノンブロッキング出力に切り替えられないため、例外とする.
+		 * </p>
+		 */
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			if (target == null) {
+				response.disableCompression();
+				try {
+					decide();
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			if (compressing) {
+				throw new IllegalStateException(
+						"圧縮を開始した後はノンブロッキング出力に切り替えられません");
+			}
+			((ServletOutputStream) target).setWriteListener(writeListener);
+		}
+	}
+}
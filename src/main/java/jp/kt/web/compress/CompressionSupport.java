@@ -0,0 +1,147 @@
+package jp.kt.web.compress;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import javax.servlet.http.HttpServletRequest;
+
+import jp.kt.web.WebProperties;
+
+/**
+ * レスポンス圧縮の設定と判定を行うクラス.
+ * <p>
+ * 設定は kt.properties の下記項目で行う.<br>
+ * ・kt.core.web.compress：DownloadPageのレスポンスを圧縮するかどうか<br>
+ * ・kt.core.web.compress.threshold：圧縮対象とする最小バイト数<br>
+ * ・kt.core.web.compress.types：圧縮対象とするコンテントタイプ（カンマ区切り、「text/*」形式も可）<br>
+ * ・kt.core.web.compress.level：圧縮レベル（0～9、-1はデフォルト.範囲外の場合もデフォルト）
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class CompressionSupport {
+	/** 圧縮対象コンテントタイプのデフォルト */
+	private static final String DEFAULT_TYPES = "text/html,text/plain,text/css,text/csv,text/xml,"
+			+ "text/javascript,application/json,application/javascript,application/xml";
+
+	/** DownloadPageのレスポンスを圧縮するかどうか */
+	private static final boolean ENABLED = WebProperties.getBoolean(
+			"kt.core.web.compress", false);
+
+	/** 圧縮対象とする最小バイト数 */
+	private static final int THRESHOLD = WebProperties.getInt(
+			"kt.core.web.compress.threshold", 1024);
+
+	/** 圧縮レベル */
+	private static final int LEVEL = toLevel(WebProperties.getInt(
+			"kt.core.web.compress.level", Deflater.DEFAULT_COMPRESSION));
+
+	/** 圧縮対象コンテントタイプ */
+	private static final Set<String> TYPES = new HashSet<String>();
+
+	static {
+		for (String type : WebProperties.getString(
+				"kt.core.web.compress.types", DEFAULT_TYPES).split(",")) {
+			type = type.trim().toLowerCase(Locale.ENGLISH);
+			if (!type.isEmpty()) {
+				TYPES.add(type);
+			}
+		}
+	}
+
+	private CompressionSupport() {
+	}
+
+	/**
+	 * 設定値を圧縮レベルとして検証する.
+	 *
+	 * @param level
+	 *            設定値
+	 * @return 圧縮レベル.<br>
+	 *         -1、0～9以外の場合はデフォルトの圧縮レベル.
+	 */
+	private static int toLevel(int level) {
+		if (level < Deflater.DEFAULT_COMPRESSION
+				|| level > Deflater.BEST_COMPRESSION) {
+			// 不正な値のままではDeflater生成時に毎回例外となるため、デフォルトにする
+			return Deflater.DEFAULT_COMPRESSION;
+		}
+		return level;
+	}
+
+	/**
+	 * DownloadPageのレスポンスを圧縮するかどうか.
+	 *
+	 * @return 圧縮する場合はtrue
+	 */
+	public static boolean isEnabled() {
+		return ENABLED;
+	}
+
+	/**
+	 * 圧縮対象とする最小バイト数を取得する.
+	 *
+	 * @return 最小バイト数
+	 */
+	public static int getThreshold() {
+		return THRESHOLD;
+	}
+
+	/**
+	 * 圧縮レベルを取得する.
+	 *
+	 * @return 圧縮レベル
+	 */
+	static int getLevel() {
+		return LEVEL;
+	}
+
+	/**
+	 * 圧縮対象のコンテントタイプか判定する.
+	 *
+	 * @param contentType
+	 *            コンテントタイプ（charsetなどのパラメータ付きでも可）
+	 * @return 圧縮対象の場合はtrue
+	 */
+	public static boolean isCompressibleType(String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		int index = contentType.indexOf(';');
+		String mimeType = (index < 0 ? contentType : contentType.substring(0,
+				index)).trim().toLowerCase(Locale.ENGLISH);
+		if (TYPES.contains(mimeType)) {
+			return true;
+		}
+		int slash = mimeType.indexOf('/');
+		return slash > 0 && TYPES.contains(mimeType.substring(0, slash) + "/*");
+	}
+
+	/**
+	 * レスポンスを圧縮するか判定し、圧縮形式を決定する.
+	 * <p>
+	 * 範囲指定（Range）のリクエストは圧縮しない.
+	 * </p>
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param contentType
+	 *            コンテントタイプ
+	 * @param contentLength
+	 *            レスポンスのバイト数（不明な場合は-1）
+	 * @return 圧縮形式.<br>
+	 *         圧縮しない場合はnull.
+	 */
+	public static ContentEncoding negotiate(HttpServletRequest req,
+			String contentType, long contentLength) {
+		if (contentLength >= 0 && contentLength < THRESHOLD) {
+			return null;
+		}
+		if (!isCompressibleType(contentType) || req.getHeader("Range") != null) {
+			return null;
+		}
+		return ContentEncoding.negotiate(req.getHeader("Accept-Encoding"));
+	}
+}
@@ -0,0 +1,94 @@
+package jp.kt.web.compress;
+
+import java.util.Locale;
+
+/**
+ * レスポンスの圧縮形式.
+ *
+ * @author tatsuya.kumon
+ */
+public enum ContentEncoding {
+	/** gzip */
+	GZIP("gzip"),
+
+	/** deflate（zlib形式） */
+	DEFLATE("deflate");
+
+	/** Content-Encodingヘッダの値 */
+	private final String headerValue;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param headerValue
+	 *            Content-Encodingヘッダの値
+	 */
+	private ContentEncoding(String headerValue) {
+		this.headerValue = headerValue;
+	}
+
+	/**
+	 * Content-Encodingヘッダの値を取得する.
+	 *
+	 * @return Content-Encodingヘッダの値
+	 */
+	public String getHeaderValue() {
+		return headerValue;
+	}
+
+	/**
+	 * Accept-Encodingヘッダから使用する圧縮形式を決定する.
+	 * <p>
+	 * q値が0のものは除外し、同じq値の場合はgzipを優先する.
+	 * </p>
+	 *
+	 * @param acceptEncoding
+	 *            Accept-Encodingヘッダの値
+	 * @return 圧縮形式.<br>
+	 *         受け付けない場合はnull.
+	 */
+	public static ContentEncoding negotiate(String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return null;
+		}
+		double gzipQ = -1;
+		double deflateQ = -1;
+		double wildcardQ = -1;
+		for (String item : acceptEncoding.split(",")) {
+			String[] params = item.split(";");
+			String coding = params[0].trim().toLowerCase(Locale.ENGLISH);
+			double q = 1;
+			for (int i = 1; i < params.length; i++) {
+				String param = params[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						q = Double.parseDouble(param.substring(2));
+					} catch (NumberFormatException e) {
+						q = 0;
+					}
+				}
+			}
+			if (coding.equals("gzip") || coding.equals("x-gzip")) {
+				gzipQ = q;
+			} else if (coding.equals("deflate")) {
+				deflateQ = q;
+			} else if (coding.equals("*")) {
+				wildcardQ = q;
+			}
+		}
+		// 明示されていない形式はワイルドカードのq値に従う
+		if (gzipQ < 0) {
+			gzipQ = wildcardQ;
+		}
+		if (deflateQ < 0) {
+			deflateQ = wildcardQ;
+		}
+		if (gzipQ > 0 && gzipQ >= deflateQ) {
+			return GZIP;
+		}
+		if (deflateQ > 0) {
+			return DEFLATE;
+		}
+		return null;
+	}
+}
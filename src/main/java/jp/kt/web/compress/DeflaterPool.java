@@ -0,0 +1,109 @@
+package jp.kt.web.compress;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * {@link Deflater}のプール.
+ * <p>
+ * {@link Deflater}はネイティブのzlib領域を確保するため、リクエストごとに生成せず再利用する.<br>
+ * 取得した{@link Deflater}は必ず {@link #release(Deflater, boolean)} で返却すること.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class DeflaterPool {
+	/** プールする最大数（形式ごと） */
+	private static final int MAX_POOL_SIZE = 64;
+
+	/** 圧縮レベル */
+	private static final int LEVEL = CompressionSupport.getLevel();
+
+	/** zlibヘッダなし（gzip用）のプール */
+	private static final Pool NOWRAP_POOL = new Pool(true);
+
+	/** zlibヘッダあり（deflate用）のプール */
+	private static final Pool ZLIB_POOL = new Pool(false);
+
+	private DeflaterPool() {
+	}
+
+	/**
+	 * {@link Deflater}を取得する.
+	 *
+	 * @param nowrap
+	 *            zlibヘッダを付けない場合（gzip形式）はtrue
+	 * @return {@link Deflater}オブジェクト
+	 */
+	public static Deflater acquire(boolean nowrap) {
+		return (nowrap ? NOWRAP_POOL : ZLIB_POOL).acquire();
+	}
+
+	/**
+	 * {@link Deflater}を返却する.
+	 *
+	 * @param deflater
+	 *            {@link #acquire(boolean)}で取得した{@link Deflater}
+	 * @param nowrap
+	 *            取得時に指定した値
+	 */
+	public static void release(Deflater deflater, boolean nowrap) {
+		(nowrap ? NOWRAP_POOL : ZLIB_POOL).release(deflater);
+	}
+
+	/**
+	 * 形式ごとのプール.
+	 */
+	private static final class Pool {
+		/** zlibヘッダなしかどうか */
+		private final boolean nowrap;
+
+		/** 待機中の{@link Deflater} */
+		private final ConcurrentLinkedQueue<Deflater> idle = new ConcurrentLinkedQueue<Deflater>();
+
+		/** 待機中の件数 */
+		private final AtomicInteger idleCount = new AtomicInteger();
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param nowrap
+		 *            zlibヘッダなしかどうか
+		 */
+		Pool(boolean nowrap) {
+			this.nowrap = nowrap;
+		}
+
+		/**
+		 * 取得する.
+		 *
+		 * @return {@link Deflater}オブジェクト
+		 */
+		Deflater acquire() {
+			Deflater deflater = idle.poll();
+			if (deflater == null) {
+				return new Deflater(LEVEL, nowrap);
+			}
+			idleCount.decrementAndGet();
+			return deflater;
+		}
+
+		/**
+		 * 返却する.
+		 *
+		 * @param deflater
+		 *            {@link Deflater}オブジェクト
+		 */
+		void release(Deflater deflater) {
+			if (idleCount.incrementAndGet() > MAX_POOL_SIZE) {
+				// 上限を超える分はネイティブ領域を解放して破棄
+				idleCount.decrementAndGet();
+				deflater.end();
+				return;
+			}
+			deflater.reset();
+			idle.offer(deflater);
+		}
+	}
+}
@@ -0,0 +1,5 @@
+/**
+ * HTTPレスポンスの圧縮（gzip/deflate）を行うクラス群.
+ * @author tatsuya.kumon
+ */
+package jp.kt.web.compress;
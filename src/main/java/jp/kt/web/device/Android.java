@@ -14,6 +14,14 @@ import jp.kt.tool.Validator;
 public class Android extends Pc {
 	private static final long serialVersionUID = 1366827011257935711L;
 
+	/** OS、機種名、ビルド番号の解析パターン */
+	private static final Pattern PATTERN_BUILD = Pattern
+			.compile("(.*(Android [^;]*); [a-z_\\-]*;?(.*) Build/(.*))");
+
+	/** ブラウザバージョンの解析パターン */
+	private static final Pattern PATTERN_VERSION = Pattern
+			.compile("(.* (Version/.*))");
+
 	/**
 	 * コンストラクタ.
 	 * 
@@ -35,9 +43,7 @@ public class Android extends Pc {
 		/*
 		 * 標準ブラウザであるSafariでマッチング
 		 */
-		Pattern p1 = Pattern
-				.compile("(.*(Android [^;]*); [a-z_\\-]*;?(.*) Build/(.*))");
-		Matcher m1 = p1.matcher(userAgent);
+		Matcher m1 = PATTERN_BUILD.matcher(userAgent);
 		if (m1.matches()) {
 			// OS
 			os = m1.group(2);
@@ -46,8 +52,7 @@ public class Android extends Pc {
 			// ブラウザ
 			browser = m1.group(4);
 			if (!Validator.isEmpty(browser)) {
-				Pattern p2 = Pattern.compile("(.* (Version/.*))");
-				Matcher m2 = p2.matcher(userAgent);
+				Matcher m2 = PATTERN_VERSION.matcher(userAgent);
 				if (m2.matches()) {
 					browser = m2.group(2);
 				} else {
@@ -1,6 +1,7 @@
 package jp.kt.web.device;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -16,6 +17,41 @@ import jp.kt.web.RequestHeader;
 public abstract class Device implements Serializable {
 	private static final long serialVersionUID = 2587277089087906687L;
 
+	/** 判定キーワード：iPhone */
+	private static final int KEYWORD_IPHONE = 1;
+
+	/** 判定キーワード：iPod */
+	private static final int KEYWORD_IPOD = 1 << 1;
+
+	/** 判定キーワード：iPad */
+	private static final int KEYWORD_IPAD = 1 << 2;
+
+	/** 判定キーワード：Android */
+	private static final int KEYWORD_ANDROID = 1 << 3;
+
+	/** 判定キーワード：WILLCOM */
+	private static final int KEYWORD_WILLCOM = 1 << 4;
+
+	/** 判定キーワード：DDIPOCKET */
+	private static final int KEYWORD_DDIPOCKET = 1 << 5;
+
+	/** 端末区分判定用のマッチャー（キーワードの並びは上記ビットと対応） */
+	private static final UserAgentMatcher MATCHER = new UserAgentMatcher(
+			"iPhone;", "iPod;", "iPad;", "Android", "WILLCOM;", "DDIPOCKET;");
+
+	/** 最大キャッシュ件数 */
+	private static final int CACHE_SIZE = 4096;
+
+	/** 解析済み{@link Device}オブジェクトのキャッシュ */
+	private static final DeviceCache CACHE = new DeviceCache(CACHE_SIZE);
+
+	/** {@link Device}オブジェクトを保持するリクエスト属性名 */
+	private static final String REQUEST_ATTRIBUTE_NAME = Device.class
+			.getName();
+
+	/** リクエスト属性の再利用により解析を省略した回数 */
+	private static final AtomicLong AVOIDED_PARSE_COUNT = new AtomicLong();
+
 	/** OS */
 	private String os;
 
@@ -46,6 +82,10 @@ public abstract class Device implements Serializable {
 
 	/**
 	 * ユーザエージェントから{@link Device}オブジェクトを生成する.
+	 * <p>
+	 * 生成した{@link Device}オブジェクトはリクエスト属性に保持し、<br>
+	 * 同一リクエスト内の2回目以降の呼び出しではそれを返す.
+	 * </p>
 	 * 
 	 * @param req
 	 *            HTTPリクエスト
@@ -55,11 +95,34 @@ public abstract class Device implements Serializable {
 	 */
 	public static Device getInstance(HttpServletRequest req,
 			ApplicationLogger logger) {
-		return getInstance(RequestHeader.getUserAgent(req), logger);
+		// 同一リクエスト内で解析済みであればそれを返す
+		Object cached = req.getAttribute(REQUEST_ATTRIBUTE_NAME);
+		if (cached instanceof Device) {
+			AVOIDED_PARSE_COUNT.incrementAndGet();
+			return (Device) cached;
+		}
+		Device device = getInstance(RequestHeader.getUserAgent(req), logger);
+		req.setAttribute(REQUEST_ATTRIBUTE_NAME, device);
+		return device;
+	}
+
+	/**
+	 * リクエスト属性に保持した{@link Device}オブジェクトを再利用した回数を取得する.
+	 * <p>
+	 * 同一リクエスト内でユーザエージェントの解析を省略できた回数.
+	 * </p>
+	 *
+	 * @return 解析を省略した回数
+	 */
+	public static long getAvoidedParseCount() {
+		return AVOIDED_PARSE_COUNT.get();
 	}
 
 	/**
 	 * ユーザエージェントから{@link Device}オブジェクトを生成する.
+	 * <p>
+	 * 一度解析したユーザエージェントはキャッシュされ、同じ{@link Device}オブジェクトを返す.
+	 * </p>
 	 * 
 	 * @param userAgent
 	 *            ユーザエージェント
@@ -72,47 +135,68 @@ public abstract class Device implements Serializable {
 		if (logger == null) {
 			logger = ApplicationLogger.NULL_LOGGER;
 		}
-		Device device = null;
-		if (!Validator.isEmpty(userAgent)) {
-			if (userAgent.startsWith("DoCoMo") || userAgent.startsWith("KDDI")
-					|| userAgent.startsWith("J-PHONE")
-					|| userAgent.startsWith("SoftBank")
-					|| userAgent.startsWith("Vodafone")) {
-				/*
-				 * 携帯
-				 */
-				device = new Mobile(userAgent, logger);
-			} else if (userAgent.matches(".*iPhone;.*")
-					|| userAgent.matches(".*iPod;.*")) {
-				/*
-				 * iPhone
-				 */
-				device = new Iphone(userAgent, logger);
-			} else if (userAgent.matches(".*iPad;.*")) {
-				/*
-				 * iPad
-				 */
-				device = new Ipad(userAgent, logger);
-			} else if (userAgent.matches(".*Android.*")) {
-				/*
-				 * Android
-				 */
-				device = new Android(userAgent, logger);
-			} else if (userAgent.matches(".*WILLCOM;.*")
-					|| userAgent.matches(".*DDIPOCKET;.*")) {
-				/*
-				 * PHS
-				 */
-				device = new Phs(userAgent, logger);
-			}
+		if (Validator.isEmpty(userAgent)) {
+			/*
+			 * ユーザエージェントが無い場合はPC
+			 */
+			return new Pc(userAgent, logger);
 		}
+		// 解析済みのユーザエージェントであればキャッシュから返す
+		Device device = CACHE.get(userAgent);
 		if (device == null) {
+			device = createDevice(userAgent, logger);
+			CACHE.put(userAgent, device);
+		}
+		return device;
+	}
+
+	/**
+	 * ユーザエージェントを解析して{@link Device}オブジェクトを生成する.
+	 *
+	 * @param userAgent
+	 *            ユーザエージェント
+	 * @param logger
+	 *            {@link ApplicationLogger}オブジェクト
+	 * @return {@link Device}オブジェクト
+	 */
+	private static Device createDevice(String userAgent,
+			ApplicationLogger logger) {
+		if (userAgent.startsWith("DoCoMo") || userAgent.startsWith("KDDI")
+				|| userAgent.startsWith("J-PHONE")
+				|| userAgent.startsWith("SoftBank")
+				|| userAgent.startsWith("Vodafone")) {
 			/*
-			 * その他は全てPC
+			 * 携帯
 			 */
-			device = new Pc(userAgent, logger);
+			return new Mobile(userAgent, logger);
 		}
-		return device;
+		// 判定用キーワードを1回の走査で検出
+		int found = MATCHER.match(userAgent);
+		if ((found & (KEYWORD_IPHONE | KEYWORD_IPOD)) != 0) {
+			/*
+			 * iPhone
+			 */
+			return new Iphone(userAgent, logger);
+		} else if ((found & KEYWORD_IPAD) != 0) {
+			/*
+			 * iPad
+			 */
+			return new Ipad(userAgent, logger);
+		} else if ((found & KEYWORD_ANDROID) != 0) {
+			/*
+			 * Android
+			 */
+			return new Android(userAgent, logger);
+		} else if ((found & (KEYWORD_WILLCOM | KEYWORD_DDIPOCKET)) != 0) {
+			/*
+			 * PHS
+			 */
+			return new Phs(userAgent, logger);
+		}
+		/*
+		 * その他は全てPC
+		 */
+		return new Pc(userAgent, logger);
 	}
 
 	/**
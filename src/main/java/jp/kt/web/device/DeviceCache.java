@@ -0,0 +1,124 @@
+package jp.kt.web.device;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ユーザエージェントをキーとした{@link Device}オブジェクトのキャッシュ.
+ * <p>
+ * 上限件数付きのLRUキャッシュ.<br>
+ * ロック競合を避けるため、キーのハッシュ値で分割したセグメントごとに排他制御する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class DeviceCache {
+	/** セグメント数（2の累乗） */
+	private static final int SEGMENT_COUNT = 16;
+
+	/** キャッシュ対象とするユーザエージェントの最大長 */
+	private static final int MAX_KEY_LENGTH = 1024;
+
+	/** セグメント */
+	private final Segment[] segments;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param maxSize
+	 *            最大キャッシュ件数
+	 */
+	DeviceCache(int maxSize) {
+		int segmentSize = Math.max(1, maxSize / SEGMENT_COUNT);
+		this.segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			this.segments[i] = new Segment(segmentSize);
+		}
+	}
+
+	/**
+	 * キャッシュから取得する.
+	 *
+	 * @param userAgent
+	 *            ユーザエージェント
+	 * @return キャッシュされた{@link Device}オブジェクト.<br>
+	 *         存在しない場合はnull.
+	 */
+	Device get(String userAgent) {
+		Segment segment = segmentFor(userAgent);
+		synchronized (segment) {
+			return segment.get(userAgent);
+		}
+	}
+
+	/**
+	 * キャッシュに格納する.
+	 * <p>
+	 * 極端に長いユーザエージェントはキャッシュしない.
+	 * </p>
+	 *
+	 * @param userAgent
+	 *            ユーザエージェント
+	 * @param device
+	 *            {@link Device}オブジェクト
+	 */
+	void put(String userAgent, Device device) {
+		if (userAgent.length() > MAX_KEY_LENGTH) {
+			return;
+		}
+		Segment segment = segmentFor(userAgent);
+		synchronized (segment) {
+			segment.put(userAgent, device);
+		}
+	}
+
+	/**
+	 * キャッシュを全てクリアする.
+	 */
+	void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/**
+	 * キーに対応するセグメントを取得する.
+	 *
+	 * @param userAgent
+	 *            ユーザエージェント
+	 * @return セグメント
+	 */
+	private Segment segmentFor(String userAgent) {
+		int h = userAgent.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (SEGMENT_COUNT - 1)];
+	}
+
+	/**
+	 * アクセス順のLinkedHashMapによるセグメント.
+	 */
+	private static final class Segment extends LinkedHashMap<String, Device> {
+		private static final long serialVersionUID = 1L;
+
+		/** 最大件数 */
+		private final int maxSize;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param maxSize
+		 *            最大件数
+		 */
+		Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Device> eldest) {
+			return size() > maxSize;
+		}
+	}
+}
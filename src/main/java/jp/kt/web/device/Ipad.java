@@ -13,6 +13,10 @@ import jp.kt.logger.ApplicationLogger;
 public class Ipad extends Pc {
 	private static final long serialVersionUID = -5839178773256900577L;
 
+	/** ユーザエージェント解析パターン */
+	private static final Pattern PATTERN = Pattern
+			.compile("(.*\\(([a-zA-Z]+); U; CPU (.*); [a-z_\\-]+\\) AppleWebKit/[0-9\\.]+ \\([a-zA-Z, ]+\\)(.*))");
+
 	/**
 	 * コンストラクタ.
 	 *
@@ -31,9 +35,7 @@ public class Ipad extends Pc {
 		String os = null;
 		String browser = null;
 		String model = null;
-		Pattern p1 = Pattern
-				.compile("(.*\\(([a-zA-Z]+); U; CPU (.*); [a-z_\\-]+\\) AppleWebKit/[0-9\\.]+ \\([a-zA-Z, ]+\\)(.*))");
-		Matcher m1 = p1.matcher(userAgent);
+		Matcher m1 = PATTERN.matcher(userAgent);
 		if (m1.matches()) {
 			// 機種名（iPhone or iPod）
 			model = m1.group(2);
@@ -16,6 +16,10 @@ import jp.kt.logger.ApplicationLogger;
 public class Iphone extends Pc {
 	private static final long serialVersionUID = -933954120462677053L;
 
+	/** ユーザエージェント解析パターン */
+	private static final Pattern PATTERN = Pattern
+			.compile("(.*\\(([a-zA-Z]+); U; CPU (.*); [a-z_\\-]+\\) AppleWebKit/[0-9\\.]+ \\([a-zA-Z, ]+\\)(.*))");
+
 	/**
 	 * コンストラクタ.
 	 *
@@ -34,9 +38,7 @@ public class Iphone extends Pc {
 		String os = null;
 		String browser = null;
 		String model = null;
-		Pattern p1 = Pattern
-				.compile("(.*\\(([a-zA-Z]+); U; CPU (.*); [a-z_\\-]+\\) AppleWebKit/[0-9\\.]+ \\([a-zA-Z, ]+\\)(.*))");
-		Matcher m1 = p1.matcher(userAgent);
+		Matcher m1 = PATTERN.matcher(userAgent);
 		if (m1.matches()) {
 			// 機種名（iPhone or iPod）
 			model = m1.group(2);
@@ -14,6 +14,14 @@ import jp.kt.logger.ApplicationLogger;
 public class Mobile extends Device {
 	private static final long serialVersionUID = 7461824303551784449L;
 
+	/** auのユーザエージェント解析パターン */
+	private static final Pattern PATTERN_AU = Pattern
+			.compile("(KDDI-([a-zA-Z0-9]{4}) .+)");
+
+	/** ソフトバンクのユーザエージェント解析パターン */
+	private static final Pattern PATTERN_SOFTBANK = Pattern
+			.compile("([a-zA-Z\\-]+/[0-9\\.]+/([a-zA-Z0-9]+)/.+)");
+
 	/** 携帯キャリア */
 	private Carrier carrier;
 
@@ -106,8 +114,7 @@ public class Mobile extends Device {
 			/*
 			 * au
 			 */
-			Pattern p = Pattern.compile("(KDDI-([a-zA-Z0-9]{4}) .+)");
-			Matcher m = p.matcher(userAgent);
+			Matcher m = PATTERN_AU.matcher(userAgent);
 			if (m.matches()) {
 				// 機種名
 				model = m.group(2);
@@ -125,9 +132,7 @@ public class Mobile extends Device {
 			/*
 			 * SoftBank
 			 */
-			Pattern p = Pattern
-					.compile("([a-zA-Z\\-]+/[0-9\\.]+/([a-zA-Z0-9]+)/.+)");
-			Matcher m = p.matcher(userAgent);
+			Matcher m = PATTERN_SOFTBANK.matcher(userAgent);
 			if (m.matches()) {
 				// 機種名
 				model = m.group(2);
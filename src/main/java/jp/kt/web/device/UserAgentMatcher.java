@@ -0,0 +1,129 @@
+package jp.kt.web.device;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+
+/**
+ * ユーザエージェント内のキーワードを1パスで検出するマッチャー.
+ * <p>
+ * Aho-Corasick法のオートマトンを事前に構築し、遷移表を1文字1回参照するだけで<br>
+ * 全キーワードの出現有無を判定する.<br>
+ * キーワードはASCII文字のみ対応.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class UserAgentMatcher {
+	/** 遷移表で扱う文字種（ASCII） */
+	private static final int ALPHABET_SIZE = 128;
+
+	/** 遷移表（状態番号×文字） */
+	private final int[][] transitions;
+
+	/** 状態ごとの出現キーワードビット */
+	private final int[] outputs;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param keywords
+	 *            検出するキーワード群（最大32個）.<br>
+	 *            配列の添字がビット位置となる.
+	 */
+	UserAgentMatcher(String... keywords) {
+		if (keywords.length > Integer.SIZE) {
+			throw new IllegalArgumentException("キーワードは" + Integer.SIZE
+					+ "個までです");
+		}
+		// 状態数の上限はキーワード文字数の合計+1
+		int maxStates = 1;
+		for (String k : keywords) {
+			maxStates += k.length();
+		}
+		int[][] goTo = new int[maxStates][];
+		int[] out = new int[maxStates];
+		goTo[0] = newRow();
+		int stateCount = 1;
+		/*
+		 * トライ木の構築
+		 */
+		for (int i = 0; i < keywords.length; i++) {
+			int state = 0;
+			for (char c : keywords[i].toCharArray()) {
+				if (c >= ALPHABET_SIZE) {
+					throw new IllegalArgumentException("ASCII以外の文字は使用できません ["
+							+ keywords[i] + "]");
+				}
+				if (goTo[state][c] < 0) {
+					goTo[stateCount] = newRow();
+					goTo[state][c] = stateCount++;
+				}
+				state = goTo[state][c];
+			}
+			out[state] |= 1 << i;
+		}
+		/*
+		 * 失敗遷移を解決して決定性オートマトン（遷移表）にする
+		 */
+		int[] fail = new int[stateCount];
+		Queue<Integer> queue = new ArrayDeque<Integer>();
+		for (int c = 0; c < ALPHABET_SIZE; c++) {
+			if (goTo[0][c] < 0) {
+				goTo[0][c] = 0;
+			} else {
+				fail[goTo[0][c]] = 0;
+				queue.add(goTo[0][c]);
+			}
+		}
+		while (!queue.isEmpty()) {
+			int state = queue.poll();
+			out[state] |= out[fail[state]];
+			for (int c = 0; c < ALPHABET_SIZE; c++) {
+				int next = goTo[state][c];
+				if (next < 0) {
+					goTo[state][c] = goTo[fail[state]][c];
+				} else {
+					fail[next] = goTo[fail[state]][c];
+					queue.add(next);
+				}
+			}
+		}
+		this.transitions = Arrays.copyOf(goTo, stateCount);
+		this.outputs = Arrays.copyOf(out, stateCount);
+	}
+
+	/**
+	 * 遷移表の1行を生成する.
+	 *
+	 * @return 未遷移（-1）で初期化された行
+	 */
+	private static int[] newRow() {
+		int[] row = new int[ALPHABET_SIZE];
+		Arrays.fill(row, -1);
+		return row;
+	}
+
+	/**
+	 * 対象文字列に含まれるキーワードを検出する.
+	 *
+	 * @param text
+	 *            対象文字列
+	 * @return 出現したキーワードのビット集合
+	 */
+	int match(String text) {
+		int found = 0;
+		int state = 0;
+		for (int i = 0, len = text.length(); i < len; i++) {
+			char c = text.charAt(i);
+			if (c >= ALPHABET_SIZE) {
+				// ASCII以外はキーワードに含まれないので初期状態に戻す
+				state = 0;
+				continue;
+			}
+			state = transitions[state][c];
+			found |= outputs[state];
+		}
+		return found;
+	}
+}
@@ -0,0 +1,352 @@
+package jp.kt.web.log;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import jp.kt.logger.ApplicationLogger;
+import jp.kt.web.WebProperties;
+
+/**
+ * ログをバックグラウンドスレッドでまとめて出力するクラス.
+ * <p>
+ * リクエスト処理スレッドはログ情報をリングバッファへ登録するのみで、<br>
+ * 実際の{@link ApplicationLogger}への出力は専用スレッドがまとめて行う.<br>
+ * 非同期モードは kt.properties の kt.core.web.log.async で有効にする.<br>
+ * 無効の場合は呼び出し元スレッドで即時出力する.<br>
+ * <br>
+ * アプリケーション停止時は {@link jp.kt.web.servlet.WebLifecycleListener} が {@link #shutdown()}
+ * を呼び出し、未出力のログを出力する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class AsyncLogger {
+	/** 1回にまとめて出力する最大件数 */
+	private static final int BATCH_SIZE = 256;
+
+	/** バッファが空の場合の待機時間（ナノ秒） */
+	private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(100);
+
+	/** BLOCK動作時の空き待ち時間（ナノ秒） */
+	private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS
+			.toNanos(100);
+
+	/** 唯一のインスタンス */
+	private static final AsyncLogger INSTANCE = new AsyncLogger();
+
+	/** 非同期モードかどうか */
+	private final boolean enabled;
+
+	/** 溢れた場合の動作 */
+	private final OverflowPolicy overflowPolicy;
+
+	/** SAMPLE動作時に受け付ける間隔 */
+	private final int sampleRate;
+
+	/** SAMPLE動作を開始する格納件数 */
+	private final int sampleThreshold;
+
+	/** リングバッファ */
+	private final LogRingBuffer buffer;
+
+	/** 出力スレッドの起動済みフラグ */
+	private final AtomicBoolean started = new AtomicBoolean();
+
+	/** 出力スレッド */
+	private volatile Thread writerThread;
+
+	/** 出力スレッドが待機中かどうか */
+	private volatile boolean writerIdle;
+
+	/** 停止済みフラグ */
+	private volatile boolean shutdown;
+
+	/** SAMPLE動作用のカウンタ */
+	private final AtomicLong sampleCounter = new AtomicLong();
+
+	/** 破棄した件数 */
+	private final AtomicLong droppedCount = new AtomicLong();
+
+	/** 出力した件数 */
+	private final AtomicLong writtenCount = new AtomicLong();
+
+	/**
+	 * 内部コンストラクタ.
+	 */
+	private AsyncLogger() {
+		this.enabled = WebProperties.getBoolean("kt.core.web.log.async",
+				false);
+		int capacity = WebProperties.getInt(
+				"kt.core.web.log.async.capacity", 8192);
+		this.buffer = new LogRingBuffer(Math.max(capacity, BATCH_SIZE));
+		OverflowPolicy policy;
+		try {
+			policy = OverflowPolicy.valueOf(WebProperties.getString(
+					"kt.core.web.log.async.overflow", "DROP").toUpperCase(
+					Locale.ENGLISH));
+		} catch (IllegalArgumentException e) {
+			policy = OverflowPolicy.DROP;
+		}
+		this.overflowPolicy = policy;
+		this.sampleRate = Math.max(1, WebProperties.getInt(
+				"kt.core.web.log.async.sample.rate", 10));
+		this.sampleThreshold = this.buffer.capacity() / 4 * 3;
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link AsyncLogger}オブジェクト
+	 */
+	public static AsyncLogger getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * 非同期モードかどうか.
+	 *
+	 * @return 非同期モードの場合はtrue
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * INFOレベルのログを出力する.
+	 *
+	 * @param logger
+	 *            出力先のlogger
+	 * @param code
+	 *            ログコード
+	 * @param message
+	 *            メッセージ
+	 */
+	public void infoLog(ApplicationLogger logger, String code, String message) {
+		log(new LogEvent(logger, LogEvent.Level.INFO, code, message, null));
+	}
+
+	/**
+	 * WARNレベルのログを出力する.
+	 *
+	 * @param logger
+	 *            出力先のlogger
+	 * @param code
+	 *            ログコード
+	 * @param message
+	 *            メッセージ
+	 * @param e
+	 *            例外
+	 */
+	public void warnLog(ApplicationLogger logger, String code,
+			String message, Throwable e) {
+		log(new LogEvent(logger, LogEvent.Level.WARN, code, message, e));
+	}
+
+	/**
+	 * ERRORレベルのログを出力する.
+	 *
+	 * @param logger
+	 *            出力先のlogger
+	 * @param code
+	 *            ログコード
+	 * @param message
+	 *            メッセージ
+	 * @param e
+	 *            例外
+	 */
+	public void errorLog(ApplicationLogger logger, String code,
+			String message, Throwable e) {
+		log(new LogEvent(logger, LogEvent.Level.ERROR, code, message, e));
+	}
+
+	/**
+	 * ログを登録する.
+	 *
+	 * @param event
+	 *            ログ情報
+	 */
+	private void log(LogEvent event) {
+		if (!enabled || shutdown) {
+			// 同期出力
+			event.write();
+			return;
+		}
+		startWriterIfNecessary();
+		if (overflowPolicy == OverflowPolicy.SAMPLE
+				&& buffer.size() >= sampleThreshold
+				&& sampleCounter.incrementAndGet() % sampleRate != 0) {
+			// 混み合っている間は間引く
+			droppedCount.incrementAndGet();
+			return;
+		}
+		while (!buffer.offer(event)) {
+			if (overflowPolicy != OverflowPolicy.BLOCK) {
+				droppedCount.incrementAndGet();
+				return;
+			}
+			// 空きができるまで待機
+			LockSupport.unpark(writerThread);
+			LockSupport.parkNanos(this, BLOCK_PARK_NANOS);
+			if (shutdown) {
+				event.write();
+				return;
+			}
+		}
+		if (writerIdle) {
+			LockSupport.unpark(writerThread);
+		}
+	}
+
+	/**
+	 * 出力スレッドが未起動であれば起動する.
+	 */
+	private void startWriterIfNecessary() {
+		if (started.get() || !started.compareAndSet(false, true)) {
+			return;
+		}
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "kt-async-logger");
+		t.setDaemon(true);
+		this.writerThread = t;
+		t.start();
+	}
+
+	/**
+	 * 出力スレッドの処理.
+	 */
+	private void writeLoop() {
+		LogEvent[] batch = new LogEvent[BATCH_SIZE];
+		while (true) {
+			int count = drain(batch);
+			if (count > 0) {
+				writeBatch(batch, count);
+				continue;
+			}
+			if (shutdown) {
+				break;
+			}
+			// 待機状態にしてから再確認し、取りこぼしを防ぐ
+			writerIdle = true;
+			if (buffer.size() == 0 && !shutdown) {
+				LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+			}
+			writerIdle = false;
+		}
+	}
+
+	/**
+	 * バッファから取り出す.
+	 *
+	 * @param batch
+	 *            格納先の配列
+	 * @return 取り出した件数
+	 */
+	private int drain(LogEvent[] batch) {
+		int count = 0;
+		while (count < batch.length) {
+			LogEvent event = buffer.poll();
+			if (event == null) {
+				break;
+			}
+			batch[count++] = event;
+		}
+		return count;
+	}
+
+	/**
+	 * まとめて出力する.
+	 *
+	 * @param batch
+	 *            ログ情報の配列
+	 * @param count
+	 *            件数
+	 */
+	private void writeBatch(LogEvent[] batch, int count) {
+		for (int i = 0; i < count; i++) {
+			try {
+				batch[i].write();
+				writtenCount.incrementAndGet();
+			} catch (Throwable e) {
+				// 出力スレッドを止めないため、出力エラーは無視する
+			}
+			batch[i] = null;
+		}
+	}
+
+	/**
+	 * 未出力のログを全て出力して、出力スレッドを停止する.
+	 * <p>
+	 * 停止後のログは呼び出し元スレッドで同期出力される.
+	 * </p>
+	 *
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合
+	 */
+	public synchronized void shutdown() throws InterruptedException {
+		shutdown = true;
+		Thread t = writerThread;
+		if (t != null) {
+			LockSupport.unpark(t);
+			t.join();
+		}
+		// 停止直前に登録されたログを出力
+		LogEvent[] batch = new LogEvent[BATCH_SIZE];
+		int count;
+		while ((count = drain(batch)) > 0) {
+			writeBatch(batch, count);
+		}
+	}
+
+	/**
+	 * 現在バッファに溜まっている件数を取得する.
+	 *
+	 * @return 格納件数
+	 */
+	public int getQueueDepth() {
+		return buffer.size();
+	}
+
+	/**
+	 * バッファの容量を取得する.
+	 *
+	 * @return 容量
+	 */
+	public int getCapacity() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * 溢れて破棄した件数を取得する.
+	 *
+	 * @return 破棄した件数
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * 出力スレッドで出力した件数を取得する.
+	 *
+	 * @return 出力した件数
+	 */
+	public long getWrittenCount() {
+		return writtenCount.get();
+	}
+
+	/**
+	 * 溢れた場合の動作を取得する.
+	 *
+	 * @return 溢れた場合の動作
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+}
@@ -0,0 +1,77 @@
+package jp.kt.web.log;
+
+import jp.kt.logger.ApplicationLogger;
+
+/**
+ * 非同期出力するログ1件分の情報.
+ *
+ * @author tatsuya.kumon
+ */
+final class LogEvent {
+	/** ログレベル */
+	enum Level {
+		/** INFO */
+		INFO,
+
+		/** WARN */
+		WARN,
+
+		/** ERROR */
+		ERROR;
+	}
+
+	/** 出力先のlogger */
+	final ApplicationLogger logger;
+
+	/** ログレベル */
+	final Level level;
+
+	/** ログコード */
+	final String code;
+
+	/** メッセージ */
+	final String message;
+
+	/** 例外（無い場合はnull） */
+	final Throwable throwable;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param logger
+	 *            出力先のlogger
+	 * @param level
+	 *            ログレベル
+	 * @param code
+	 *            ログコード
+	 * @param message
+	 *            メッセージ
+	 * @param throwable
+	 *            例外
+	 */
+	LogEvent(ApplicationLogger logger, Level level, String code,
+			String message, Throwable throwable) {
+		this.logger = logger;
+		this.level = level;
+		this.code = code;
+		this.message = message;
+		this.throwable = throwable;
+	}
+
+	/**
+	 * loggerへ出力する.
+	 */
+	void write() {
+		switch (level) {
+		case WARN:
+			logger.warnLog(code, message, throwable);
+			break;
+		case ERROR:
+			logger.errorLog(code, message, throwable);
+			break;
+		default:
+			logger.infoLog(code, message);
+			break;
+		}
+	}
+}
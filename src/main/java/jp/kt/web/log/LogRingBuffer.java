@@ -0,0 +1,125 @@
+package jp.kt.web.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 上限付きのロックフリーなリングバッファ.
+ * <p>
+ * 複数スレッドからの追加、単一スレッドからの取り出しを前提とする.<br>
+ * スロットごとのシーケンス番号で書き込み完了を判定する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class LogRingBuffer {
+	/** 容量（2の累乗） */
+	private final int capacity;
+
+	/** 添字計算用のマスク */
+	private final int mask;
+
+	/** 格納領域 */
+	private final AtomicReferenceArray<LogEvent> slots;
+
+	/** スロットごとのシーケンス番号 */
+	private final AtomicLongArray sequences;
+
+	/** 次に書き込む位置 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** 次に読み込む位置（取り出しスレッドのみ更新） */
+	private volatile long head;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param requestedCapacity
+	 *            容量.<br>
+	 *            2の累乗に切り上げられる.
+	 */
+	LogRingBuffer(int requestedCapacity) {
+		int c = 1;
+		while (c < requestedCapacity) {
+			c <<= 1;
+		}
+		this.capacity = c;
+		this.mask = c - 1;
+		this.slots = new AtomicReferenceArray<LogEvent>(c);
+		this.sequences = new AtomicLongArray(c);
+		for (int i = 0; i < c; i++) {
+			this.sequences.set(i, i);
+		}
+	}
+
+	/**
+	 * 追加する.
+	 *
+	 * @param event
+	 *            ログ情報
+	 * @return 追加できた場合はtrue、バッファが満杯の場合はfalse
+	 */
+	boolean offer(LogEvent event) {
+		while (true) {
+			long pos = tail.get();
+			int index = (int) (pos & mask);
+			long diff = sequences.get(index) - pos;
+			if (diff == 0) {
+				if (tail.compareAndSet(pos, pos + 1)) {
+					slots.set(index, event);
+					// 書き込み完了を取り出し側へ公開
+					sequences.set(index, pos + 1);
+					return true;
+				}
+			} else if (diff < 0) {
+				// 満杯
+				return false;
+			}
+			// 他スレッドに先を越された場合は再試行
+		}
+	}
+
+	/**
+	 * 取り出す.
+	 *
+	 * @return ログ情報.<br>
+	 *         空の場合はnull.
+	 */
+	LogEvent poll() {
+		long pos = head;
+		int index = (int) (pos & mask);
+		if (sequences.get(index) != pos + 1) {
+			// 空、もしくは書き込み途中
+			return null;
+		}
+		LogEvent event = slots.get(index);
+		slots.set(index, null);
+		// スロットを次の周回の書き込み用に解放
+		sequences.set(index, pos + capacity);
+		head = pos + 1;
+		return event;
+	}
+
+	/**
+	 * 現在の格納件数を取得する.
+	 *
+	 * @return 格納件数（概算）
+	 */
+	int size() {
+		long size = tail.get() - head;
+		if (size < 0) {
+			return 0;
+		}
+		return (int) Math.min(size, capacity);
+	}
+
+	/**
+	 * 容量を取得する.
+	 *
+	 * @return 容量
+	 */
+	int capacity() {
+		return capacity;
+	}
+}
@@ -0,0 +1,17 @@
+package jp.kt.web.log;
+
+/**
+ * 非同期ログのバッファが溢れた場合の動作.
+ *
+ * @author tatsuya.kumon
+ */
+public enum OverflowPolicy {
+	/** 溢れたログは破棄する */
+	DROP,
+
+	/** バッファに空きができるまで待機する */
+	BLOCK,
+
+	/** バッファが混み合ってきたら一定間隔でのみ受け付け、溢れたら破棄する */
+	SAMPLE;
+}
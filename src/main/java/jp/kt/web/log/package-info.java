@@ -0,0 +1,5 @@
+/**
+ * ログ出力を非同期化するためのクラス群.
+ * @author tatsuya.kumon
+ */
+package jp.kt.web.log;
@@ -0,0 +1,139 @@
+package jp.kt.web.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * ロックフリーな処理時間のヒストグラム.
+ * <p>
+ * HdrHistogramと同様の対数・線形バケット（2の累乗ごとに32分割）で記録するため、<br>
+ * メモリ使用量は固定で、パーセンタイル値の相対誤差は約3%以内となる.<br>
+ * 記録は複数スレッドから同時に行ってよい.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class LatencyHistogram {
+	/** 2の累乗ごとの分割数のビット数 */
+	private static final int SUB_BUCKET_BITS = 5;
+
+	/** 2の累乗ごとの分割数 */
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+	/** バケット数 */
+	private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS)
+			* SUB_BUCKET_COUNT;
+
+	/** バケットごとの件数 */
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+	/** 総件数 */
+	private final AtomicLong totalCount = new AtomicLong();
+
+	/** 合計値（ナノ秒） */
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	/** 最大値（ナノ秒） */
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * 処理時間を記録する.
+	 *
+	 * @param nanos
+	 *            処理時間（ナノ秒）.<br>
+	 *            負の値は0として扱う.
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+		counts.incrementAndGet(indexOf(nanos));
+		totalCount.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+		long max;
+		while (nanos > (max = maxNanos.get())) {
+			if (maxNanos.compareAndSet(max, nanos)) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * 値が属するバケットの添字を求める.
+	 *
+	 * @param value
+	 *            値（0以上）
+	 * @return バケットの添字
+	 */
+	private static int indexOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value))
+				- SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT
+				+ (int) (value >>> shift) - SUB_BUCKET_COUNT;
+	}
+
+	/**
+	 * バケットの上限値を求める.
+	 *
+	 * @param index
+	 *            バケットの添字
+	 * @return バケットに属する最大の値
+	 */
+	private static long upperBoundOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = index / SUB_BUCKET_COUNT - 1;
+		long sub = index % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+		return ((sub + 1) << shift) - 1;
+	}
+
+	/**
+	 * 記録件数を取得する.
+	 *
+	 * @return 記録件数
+	 */
+	public long getCount() {
+		return totalCount.get();
+	}
+
+	/**
+	 * 現在の集計結果を取得する.
+	 * <p>
+	 * 記録中のスレッドがある場合、各値は厳密には同一時点のものではない.
+	 * </p>
+	 *
+	 * @return 集計結果
+	 */
+	public LatencySnapshot snapshot() {
+		long[] copy = new long[BUCKET_COUNT];
+		long count = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			copy[i] = counts.get(i);
+			count += copy[i];
+		}
+		double[] percentiles = { 0.5, 0.9, 0.99, 0.999 };
+		long[] values = new long[percentiles.length];
+		if (count > 0) {
+			int p = 0;
+			long cumulative = 0;
+			for (int i = 0; i < BUCKET_COUNT && p < percentiles.length; i++) {
+				cumulative += copy[i];
+				while (p < percentiles.length
+						&& cumulative >= (long) Math.ceil(count * percentiles[p])) {
+					values[p++] = upperBoundOf(i);
+				}
+			}
+		}
+		long max = maxNanos.get();
+		for (int i = 0; i < values.length; i++) {
+			// バケットの上限値が実際の最大値を超えないようにする
+			values[i] = Math.min(values[i], max);
+		}
+		return new LatencySnapshot(count, totalNanos.get(), max, values[0],
+				values[1], values[2], values[3]);
+	}
+}
@@ -0,0 +1,160 @@
+package jp.kt.web.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link LatencyHistogram} のある時点の集計結果.
+ * <p>
+ * 時間はすべてミリ秒（小数）で返す.<br>
+ * JMX（MXBean）ではCompositeDataとして公開される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class LatencySnapshot {
+	/** 1ミリ秒のナノ秒数 */
+	private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS
+			.toNanos(1);
+
+	/** 件数 */
+	private final long count;
+
+	/** 合計値（ナノ秒） */
+	private final long totalNanos;
+
+	/** 最大値（ナノ秒） */
+	private final long maxNanos;
+
+	/** 50パーセンタイル値（ナノ秒） */
+	private final long p50Nanos;
+
+	/** 90パーセンタイル値（ナノ秒） */
+	private final long p90Nanos;
+
+	/** 99パーセンタイル値（ナノ秒） */
+	private final long p99Nanos;
+
+	/** 99.9パーセンタイル値（ナノ秒） */
+	private final long p999Nanos;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param count
+	 *            件数
+	 * @param totalNanos
+	 *            合計値（ナノ秒）
+	 * @param maxNanos
+	 *            最大値（ナノ秒）
+	 * @param p50Nanos
+	 *            50パーセンタイル値（ナノ秒）
+	 * @param p90Nanos
+	 *            90パーセンタイル値（ナノ秒）
+	 * @param p99Nanos
+	 *            99パーセンタイル値（ナノ秒）
+	 * @param p999Nanos
+	 *            99.9パーセンタイル値（ナノ秒）
+	 */
+	LatencySnapshot(long count, long totalNanos, long maxNanos,
+			long p50Nanos, long p90Nanos, long p99Nanos, long p999Nanos) {
+		this.count = count;
+		this.totalNanos = totalNanos;
+		this.maxNanos = maxNanos;
+		this.p50Nanos = p50Nanos;
+		this.p90Nanos = p90Nanos;
+		this.p99Nanos = p99Nanos;
+		this.p999Nanos = p999Nanos;
+	}
+
+	/**
+	 * ナノ秒をミリ秒に変換する.
+	 *
+	 * @param nanos
+	 *            ナノ秒
+	 * @return ミリ秒
+	 */
+	private static double toMillis(long nanos) {
+		return nanos / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * 件数を取得する.
+	 *
+	 * @return 件数
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 合計時間を取得する.
+	 *
+	 * @return 合計時間（ミリ秒）
+	 */
+	public double getTotalMillis() {
+		return toMillis(totalNanos);
+	}
+
+	/**
+	 * 平均時間を取得する.
+	 *
+	 * @return 平均時間（ミリ秒）.<br>
+	 *         件数が0の場合は0.
+	 */
+	public double getMeanMillis() {
+		return count == 0 ? 0 : toMillis(totalNanos) / count;
+	}
+
+	/**
+	 * 最大時間を取得する.
+	 *
+	 * @return 最大時間（ミリ秒）
+	 */
+	public double getMaxMillis() {
+		return toMillis(maxNanos);
+	}
+
+	/**
+	 * 50パーセンタイル値（中央値）を取得する.
+	 *
+	 * @return 50パーセンタイル値（ミリ秒）
+	 */
+	public double getP50Millis() {
+		return toMillis(p50Nanos);
+	}
+
+	/**
+	 * 90パーセンタイル値を取得する.
+	 *
+	 * @return 90パーセンタイル値（ミリ秒）
+	 */
+	public double getP90Millis() {
+		return toMillis(p90Nanos);
+	}
+
+	/**
+	 * 99パーセンタイル値を取得する.
+	 *
+	 * @return 99パーセンタイル値（ミリ秒）
+	 */
+	public double getP99Millis() {
+		return toMillis(p99Nanos);
+	}
+
+	/**
+	 * 99.9パーセンタイル値を取得する.
+	 *
+	 * @return 99.9パーセンタイル値（ミリ秒）
+	 */
+	public double getP999Millis() {
+		return toMillis(p999Nanos);
+	}
+
+	@Override
+	public String toString() {
+		return String.format(
+				"count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms p99.9=%.3fms max=%.3fms",
+				count, getMeanMillis(), getP50Millis(), getP90Millis(),
+				getP99Millis(), getP999Millis(), getMaxMillis());
+	}
+}
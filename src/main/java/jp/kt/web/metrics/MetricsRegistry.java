@@ -0,0 +1,159 @@
+package jp.kt.web.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jp.kt.web.WebProperties;
+
+/**
+ * 計測値の登録先.
+ * <p>
+ * Servletクラスごとに {@link ServletMetrics} を保持し、<br>
+ * kt.core.web.metrics.jmx が有効な場合（デフォルト有効）はプラットフォームMBeanServerに<br>
+ * 「jp.kt.web:type=ServletMetrics,context=コンテキストパス,name=Servletのクラス名」で登録する.<br>
+ * 登録したMBeanはアプリケーションの停止時に {@link #unregisterAll()} で登録解除する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class MetricsRegistry {
+	/** JMXのドメイン名 */
+	private static final String JMX_DOMAIN = "jp.kt.web";
+
+	/** 唯一のインスタンス */
+	private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+	/** JMXに登録するかどうか */
+	private final boolean jmxEnabled;
+
+	/** Servletクラス名ごとの計測値 */
+	private final ConcurrentMap<String, ServletMetrics> servletMetrics = new ConcurrentHashMap<>();
+
+	/** JMXに登録したMBeanの名前 */
+	private final Set<ObjectName> registered = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * 内部コンストラクタ.
+	 */
+	private MetricsRegistry() {
+		this.jmxEnabled = WebProperties.getBoolean("kt.core.web.metrics.jmx",
+				true);
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link MetricsRegistry}オブジェクト
+	 */
+	public static MetricsRegistry getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Servletの計測値を取得する.
+	 * <p>
+	 * 初回取得時に生成し、JMXに登録する.
+	 * </p>
+	 *
+	 * @param servletClass
+	 *            Servletクラス
+	 * @param contextPath
+	 *            コンテキストパス（JMXの登録名で、アプリケーションを区別するためのもの）
+	 * @return {@link ServletMetrics}オブジェクト
+	 */
+	public ServletMetrics getServletMetrics(Class<?> servletClass,
+			String contextPath) {
+		String name = servletClass.getName();
+		ServletMetrics metrics = servletMetrics.get(name);
+		if (metrics != null) {
+			return metrics;
+		}
+		metrics = new ServletMetrics(name);
+		ServletMetrics existing = servletMetrics.putIfAbsent(name, metrics);
+		if (existing != null) {
+			return existing;
+		}
+		register("ServletMetrics", contextPath, name, metrics);
+		return metrics;
+	}
+
+	/**
+	 * 登録済みの全Servletの計測値を取得する.
+	 *
+	 * @return {@link ServletMetrics}オブジェクト群
+	 */
+	public Collection<ServletMetrics> getAllServletMetrics() {
+		return Collections.unmodifiableCollection(servletMetrics.values());
+	}
+
+	/**
+	 * JMXに登録する.
+	 * <p>
+	 * 同名のMBeanが登録済み（アプリケーションの再デプロイなど）の場合は置き換える.<br>
+	 * 登録に失敗しても計測自体は継続する.
+	 * </p>
+	 *
+	 * @param type
+	 *            MBeanの種類
+	 * @param contextPath
+	 *            コンテキストパス
+	 * @param name
+	 *            MBeanの名前
+	 * @param mbean
+	 *            MBeanオブジェクト
+	 */
+	void register(String type, String contextPath, String name, Object mbean) {
+		if (!jmxEnabled) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			// ルートコンテキストは空文字のため「/」とする
+			String context = (contextPath == null || contextPath.isEmpty()) ? "/"
+					: contextPath;
+			ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=" + type
+					+ ",context=" + ObjectName.quote(context) + ",name="
+					+ ObjectName.quote(name));
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			server.registerMBean(mbean, objectName);
+			registered.add(objectName);
+		} catch (JMException | SecurityException e) {
+			// JMXが使用できない環境では登録しない
+		}
+	}
+
+	/**
+	 * JMXに登録したMBeanを全て登録解除する.
+	 * <p>
+	 * アプリケーションの停止時に呼び出す.<br>
+	 * 登録したままにすると、MBeanServerがWebアプリケーションのクラスローダを参照し続けてしまう.
+	 * </p>
+	 */
+	public void unregisterAll() {
+		MBeanServer server = null;
+		for (ObjectName objectName : registered) {
+			registered.remove(objectName);
+			try {
+				if (server == null) {
+					server = ManagementFactory.getPlatformMBeanServer();
+				}
+				if (server.isRegistered(objectName)) {
+					server.unregisterMBean(objectName);
+				}
+			} catch (JMException | SecurityException e) {
+				// 登録解除できなくても停止処理は継続する
+			}
+		}
+		servletMetrics.clear();
+	}
+}
@@ -0,0 +1,99 @@
+package jp.kt.web.metrics;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import jp.kt.web.WebProperties;
+
+/**
+ * 計測値をテキスト形式で出力するServlet.
+ * <p>
+ * web.xmlに登録して使用する.<br>
+ * kt.core.web.metrics.text が有効な場合のみ出力し、無効の場合は404を返す.<br>
+ * 公開範囲はweb.xmlのsecurity-constraintなどで制限すること.<br>
+ * <br>
+ * 出力形式（タブ区切り、時間はミリ秒）：<br>
+ * &nbsp;&nbsp;servlet page phase count mean p50 p90 p99 p99.9 max
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class MetricsServlet extends HttpServlet {
+	/** シリアルバージョンUID */
+	private static final long serialVersionUID = 1L;
+
+	@Override
+	protected void doGet(HttpServletRequest req, HttpServletResponse res)
+			throws ServletException, IOException {
+		if (!WebProperties.getBoolean("kt.core.web.metrics.text", false)) {
+			res.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		res.setContentType("text/plain; charset=UTF-8");
+		res.setHeader("Cache-Control", "no-cache");
+		PrintWriter out = res.getWriter();
+		out.println("servlet\tpage\tphase\tcount\tmean\tp50\tp90\tp99\tp99.9\tmax");
+		List<ServletMetrics> list = new ArrayList<>(MetricsRegistry
+				.getInstance().getAllServletMetrics());
+		Collections.sort(list, new Comparator<ServletMetrics>() {
+			@Override
+			public int compare(ServletMetrics o1, ServletMetrics o2) {
+				return o1.getServletName().compareTo(o2.getServletName());
+			}
+		});
+		for (ServletMetrics metrics : list) {
+			String name = metrics.getServletName();
+			for (Map.Entry<String, Map<String, LatencySnapshot>> page : metrics
+					.getPhases().entrySet()) {
+				for (Map.Entry<String, LatencySnapshot> phase : page.getValue()
+						.entrySet()) {
+					print(out, name, page.getKey(), phase.getKey(),
+							phase.getValue());
+				}
+			}
+			print(out, name, "-", "CONNECTION_ACQUIRE",
+					metrics.getConnectionAcquire());
+			print(out, name, "-", "CONNECTION_HOLD",
+					metrics.getConnectionHold());
+			print(out, name, "-", "COMMIT", metrics.getCommit());
+			print(out, name, "-", "ROLLBACK", metrics.getRollback());
+		}
+		out.flush();
+	}
+
+	/**
+	 * 1行出力する.
+	 *
+	 * @param out
+	 *            出力先
+	 * @param servlet
+	 *            Servletのクラス名
+	 * @param page
+	 *            遷移ページの種類
+	 * @param phase
+	 *            フェーズ名
+	 * @param s
+	 *            集計結果
+	 */
+	private static void print(PrintWriter out, String servlet, String page,
+			String phase, LatencySnapshot s) {
+		if (s.getCount() == 0) {
+			return;
+		}
+		out.printf(Locale.ROOT, "%s\t%s\t%s\t%d\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f\t%.3f%n",
+				servlet, page, phase, s.getCount(), s.getMeanMillis(),
+				s.getP50Millis(), s.getP90Millis(), s.getP99Millis(),
+				s.getP999Millis(), s.getMaxMillis());
+	}
+}
@@ -0,0 +1,73 @@
+package jp.kt.web.metrics;
+
+/**
+ * 1リクエストのフェーズごとの処理時間を計測するクラス.
+ * <p>
+ * {@link #mark(RequestPhase)} を呼ぶごとに、前回呼び出し時からの経過時間をそのフェーズに加算する.<br>
+ * 1リクエスト内で使用するもので、スレッドセーフではない.<br>
+ * （非同期モードで別スレッドに引き継ぐ場合は、Executorによる同期を前提とする）
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class PhaseTimer {
+	/** 計測開始時刻（{@link System#nanoTime()}） */
+	private final long start;
+
+	/** 前回の計測時刻（{@link System#nanoTime()}） */
+	private long last;
+
+	/** フェーズごとの処理時間（ナノ秒、未計測は-1） */
+	private final long[] nanos = new long[RequestPhase.values().length];
+
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * 生成時点から計測を開始する.
+	 * </p>
+	 */
+	public PhaseTimer() {
+		this.start = System.nanoTime();
+		this.last = start;
+		for (int i = 0; i < nanos.length; i++) {
+			nanos[i] = -1;
+		}
+	}
+
+	/**
+	 * 前回からの経過時間をフェーズの処理時間として加算する.
+	 *
+	 * @param phase
+	 *            完了したフェーズ
+	 */
+	public void mark(RequestPhase phase) {
+		long now = System.nanoTime();
+		int i = phase.ordinal();
+		nanos[i] = Math.max(nanos[i], 0) + (now - last);
+		last = now;
+	}
+
+	/**
+	 * 計測開始時刻を取得する.
+	 *
+	 * @return 計測開始時刻（{@link System#nanoTime()}）
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * フェーズの処理時間を取得する.
+	 *
+	 * @param phase
+	 *            フェーズ
+	 * @return 処理時間（ナノ秒）.<br>
+	 *         計測していない場合は-1.
+	 */
+	public long getNanos(RequestPhase phase) {
+		if (phase == RequestPhase.TOTAL) {
+			return last - start;
+		}
+		return nanos[phase.ordinal()];
+	}
+}
@@ -0,0 +1,35 @@
+package jp.kt.web.metrics;
+
+/**
+ * リクエスト処理のフェーズ.
+ *
+ * @author tatsuya.kumon
+ */
+public enum RequestPhase {
+	/** 文字コード設定、logger生成など */
+	SETUP,
+	/** アクセスログ、メモリ状況のログ出力 */
+	LOGGING,
+	/** HTTPメソッド制限チェック */
+	METHOD_CHECK,
+	/** 非同期モードでの実行待ち */
+	ASYNC_WAIT,
+	/** DB接続の取得 */
+	DB_ACQUIRE,
+	/** IPアドレス制限チェック */
+	IP_CHECK,
+	/** ログインチェック */
+	LOGIN_CHECK,
+	/** メイン処理 */
+	EXECUTE,
+	/** DBトランザクションのコミット */
+	COMMIT,
+	/** 例外発生時のエラー処理（ロールバック含む） */
+	ERROR,
+	/** DB接続のclose */
+	DB_RELEASE,
+	/** ページ遷移（forward、redirect、ダウンロード、エラーレスポンス） */
+	DISPATCH,
+	/** リクエスト全体 */
+	TOTAL;
+}
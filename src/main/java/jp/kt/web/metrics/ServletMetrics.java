@@ -0,0 +1,195 @@
+package jp.kt.web.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Servletごとの計測値.
+ * <p>
+ * {@link MetricsRegistry#getServletMetrics(Class, String)} で取得する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class ServletMetrics implements ServletMetricsMXBean {
+	/** Servletのクラス名 */
+	private final String servletName;
+
+	/** DB接続の取得待ち時間 */
+	private final LatencyHistogram connectionAcquire = new LatencyHistogram();
+
+	/** DB接続の保持時間 */
+	private final LatencyHistogram connectionHold = new LatencyHistogram();
+
+	/** コミットの処理時間 */
+	private final LatencyHistogram commit = new LatencyHistogram();
+
+	/** ロールバックの処理時間 */
+	private final LatencyHistogram rollback = new LatencyHistogram();
+
+	/** ログイン判定キャッシュのヒット数 */
+	private final AtomicLong loginCacheHit = new AtomicLong();
+
+	/** ログイン判定キャッシュのミス数 */
+	private final AtomicLong loginCacheMiss = new AtomicLong();
+
+	/** 遷移ページの種類ごと、フェーズごとの処理時間 */
+	private final ConcurrentMap<String, LatencyHistogram[]> phases = new ConcurrentHashMap<>();
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param servletName
+	 *            Servletのクラス名
+	 */
+	ServletMetrics(String servletName) {
+		this.servletName = servletName;
+	}
+
+	/**
+	 * Servletのクラス名を取得する.
+	 *
+	 * @return Servletのクラス名
+	 */
+	public String getServletName() {
+		return servletName;
+	}
+
+	/**
+	 * DB接続の取得待ち時間を記録する.
+	 *
+	 * @param nanos
+	 *            処理時間（ナノ秒）
+	 */
+	public void recordConnectionAcquire(long nanos) {
+		connectionAcquire.record(nanos);
+	}
+
+	/**
+	 * DB接続の保持時間を記録する.
+	 *
+	 * @param nanos
+	 *            保持時間（ナノ秒）
+	 */
+	public void recordConnectionHold(long nanos) {
+		connectionHold.record(nanos);
+	}
+
+	/**
+	 * コミットの処理時間を記録する.
+	 *
+	 * @param nanos
+	 *            処理時間（ナノ秒）
+	 */
+	public void recordCommit(long nanos) {
+		commit.record(nanos);
+	}
+
+	/**
+	 * ロールバックの処理時間を記録する.
+	 *
+	 * @param nanos
+	 *            処理時間（ナノ秒）
+	 */
+	public void recordRollback(long nanos) {
+		rollback.record(nanos);
+	}
+
+	/**
+	 * ログイン判定キャッシュの利用結果を記録する.
+	 *
+	 * @param hit
+	 *            キャッシュで判定できた場合はtrue
+	 */
+	public void recordLoginCache(boolean hit) {
+		if (hit) {
+			loginCacheHit.incrementAndGet();
+		} else {
+			loginCacheMiss.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 1リクエストのフェーズごとの処理時間を記録する.
+	 *
+	 * @param pageType
+	 *            遷移ページの種類
+	 * @param timer
+	 *            計測結果
+	 */
+	public void recordPhases(String pageType, PhaseTimer timer) {
+		LatencyHistogram[] histograms = phases.get(pageType);
+		if (histograms == null) {
+			histograms = new LatencyHistogram[RequestPhase.values().length];
+			for (int i = 0; i < histograms.length; i++) {
+				histograms[i] = new LatencyHistogram();
+			}
+			LatencyHistogram[] existing = phases.putIfAbsent(pageType,
+					histograms);
+			if (existing != null) {
+				histograms = existing;
+			}
+		}
+		for (RequestPhase phase : RequestPhase.values()) {
+			long nanos = timer.getNanos(phase);
+			if (nanos >= 0) {
+				histograms[phase.ordinal()].record(nanos);
+			}
+		}
+	}
+
+	@Override
+	public Map<String, Map<String, LatencySnapshot>> getPhases() {
+		Map<String, Map<String, LatencySnapshot>> result = new TreeMap<>();
+		for (Map.Entry<String, LatencyHistogram[]> entry : phases.entrySet()) {
+			Map<String, LatencySnapshot> map = new LinkedHashMap<>();
+			for (RequestPhase phase : RequestPhase.values()) {
+				LatencyHistogram h = entry.getValue()[phase.ordinal()];
+				if (h.getCount() > 0) {
+					map.put(phase.name(), h.snapshot());
+				}
+			}
+			result.put(entry.getKey(), map);
+		}
+		return result;
+	}
+
+	@Override
+	public LatencySnapshot getConnectionAcquire() {
+		return connectionAcquire.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getConnectionHold() {
+		return connectionHold.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getCommit() {
+		return commit.snapshot();
+	}
+
+	@Override
+	public LatencySnapshot getRollback() {
+		return rollback.snapshot();
+	}
+
+	@Override
+	public long getRollbackCount() {
+		return rollback.getCount();
+	}
+
+	@Override
+	public long getLoginCacheHitCount() {
+		return loginCacheHit.get();
+	}
+
+	@Override
+	public long getLoginCacheMissCount() {
+		return loginCacheMiss.get();
+	}
+}
@@ -0,0 +1,66 @@
+package jp.kt.web.metrics;
+
+import java.util.Map;
+
+/**
+ * Servletごとの計測値をJMXで公開するためのインタフェース.
+ *
+ * @author tatsuya.kumon
+ */
+public interface ServletMetricsMXBean {
+	/**
+	 * DB接続の取得待ち時間の集計結果を取得する.
+	 *
+	 * @return 集計結果
+	 */
+	LatencySnapshot getConnectionAcquire();
+
+	/**
+	 * DB接続の保持時間（取得からcloseまで）の集計結果を取得する.
+	 *
+	 * @return 集計結果
+	 */
+	LatencySnapshot getConnectionHold();
+
+	/**
+	 * コミットの処理時間の集計結果を取得する.
+	 *
+	 * @return 集計結果
+	 */
+	LatencySnapshot getCommit();
+
+	/**
+	 * ロールバックの処理時間の集計結果を取得する.
+	 *
+	 * @return 集計結果
+	 */
+	LatencySnapshot getRollback();
+
+	/**
+	 * フェーズごとの処理時間の集計結果を取得する.
+	 *
+	 * @return 遷移ページの種類をキー、フェーズ名と集計結果のMapを値とするMap
+	 */
+	Map<String, Map<String, LatencySnapshot>> getPhases();
+
+	/**
+	 * ロールバックした回数を取得する.
+	 *
+	 * @return ロールバック回数
+	 */
+	long getRollbackCount();
+
+	/**
+	 * ログイン判定をキャッシュで済ませた回数を取得する.
+	 *
+	 * @return ヒット数
+	 */
+	long getLoginCacheHitCount();
+
+	/**
+	 * ログイン判定のキャッシュがなく、ログイン判定を実行した回数を取得する.
+	 *
+	 * @return ミス数
+	 */
+	long getLoginCacheMissCount();
+}
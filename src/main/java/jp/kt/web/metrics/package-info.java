@@ -0,0 +1,5 @@
+/**
+ * 処理時間などの計測値を集計し、JMXで公開するクラス群.
+ * @author tatsuya.kumon
+ */
+package jp.kt.web.metrics;
@@ -0,0 +1,127 @@
+package jp.kt.web.page;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * HTTPのRangeヘッダで指定されたバイト範囲.
+ *
+ * @author tatsuya.kumon
+ */
+final class ByteRange {
+	/** 1リクエストで受け付ける範囲数の上限 */
+	private static final int MAX_RANGES = 16;
+
+	/** 開始位置 */
+	final long start;
+
+	/** 終了位置（この位置を含む） */
+	final long end;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param start
+	 *            開始位置
+	 * @param end
+	 *            終了位置（この位置を含む）
+	 */
+	private ByteRange(long start, long end) {
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * 範囲のバイト数を取得する.
+	 *
+	 * @return バイト数
+	 */
+	long length() {
+		return end - start + 1;
+	}
+
+	/**
+	 * Content-Rangeヘッダの値を作成する.
+	 *
+	 * @param total
+	 *            全体のサイズ
+	 * @return Content-Rangeヘッダの値
+	 */
+	String toContentRange(long total) {
+		return "bytes " + start + "-" + end + "/" + total;
+	}
+
+	/**
+	 * Rangeヘッダを解析する.
+	 *
+	 * @param header
+	 *            Rangeヘッダの値
+	 * @param total
+	 *            全体のサイズ
+	 * @return 範囲のList.<br>
+	 *         書式が不正な場合や範囲数が多すぎる場合はnull（Rangeヘッダを無視して全体を返す）.<br>
+	 *         満たせる範囲が1つも無い場合は空のList.
+	 */
+	static List<ByteRange> parse(String header, long total) {
+		if (header == null || !header.startsWith("bytes=")) {
+			return null;
+		}
+		String[] specs = header.substring("bytes=".length()).split(",");
+		if (specs.length > MAX_RANGES) {
+			return null;
+		}
+		List<ByteRange> ranges = new ArrayList<ByteRange>(specs.length);
+		boolean hasSpec = false;
+		for (String spec : specs) {
+			spec = spec.trim();
+			if (spec.isEmpty()) {
+				continue;
+			}
+			int dash = spec.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			long start;
+			long end;
+			try {
+				if (first.isEmpty()) {
+					// 末尾からのバイト数指定（bytes=-500）
+					if (last.isEmpty()) {
+						return null;
+					}
+					long suffix = Long.parseLong(last);
+					if (suffix < 0) {
+						return null;
+					}
+					hasSpec = true;
+					if (suffix == 0 || total == 0) {
+						continue;
+					}
+					start = Math.max(0, total - suffix);
+					end = total - 1;
+				} else {
+					start = Long.parseLong(first);
+					end = last.isEmpty() ? total - 1 : Long.parseLong(last);
+					if (start < 0 || end < start) {
+						return null;
+					}
+					hasSpec = true;
+					if (start >= total) {
+						// 満たせない範囲
+						continue;
+					}
+					end = Math.min(end, total - 1);
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+			ranges.add(new ByteRange(start, end));
+		}
+		if (!hasSpec) {
+			return null;
+		}
+		return ranges;
+	}
+}
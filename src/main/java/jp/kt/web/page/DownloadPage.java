@@ -1,12 +1,24 @@
 package jp.kt.web.page;
 
-import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import jp.kt.tool.Validator;
+import jp.kt.web.BufferPool;
+import jp.kt.web.compress.CompressingOutputStream;
+import jp.kt.web.compress.CompressionSupport;
+import jp.kt.web.compress.ContentEncoding;
 
 /**
  * ダウンロードの基底クラス.
@@ -23,6 +35,15 @@ public abstract class DownloadPage implements Page {
 	/** ダウンロードデータ */
 	private byte[] downloadData;
 
+	/** ETag */
+	private String eTag;
+
+	/** 最終更新日時 */
+	private long lastModified = -1;
+
+	/** multipart/byterangesの区切り文字列 */
+	private static final String BYTERANGES_BOUNDARY = "KT_BYTERANGES_BOUNDARY";
+
 	/**
 	 * コンテントタイプを明示的にセット.
 	 * <p>
@@ -49,6 +70,53 @@ public abstract class DownloadPage implements Page {
 		this.downloadFileName = downloadFileName;
 	}
 
+	/**
+	 * ETagを指定する.
+	 * <p>
+	 * 指定するとIf-None-Matchヘッダによる条件付きGET（304応答）が有効になる.<br>
+	 * 内容が変わらない限り同じ値を指定すること（例："\"v123\""）.
+	 * </p>
+	 *
+	 * @param eTag
+	 *            ETag（ダブルクォートで囲んだ値）
+	 */
+	public void setETag(String eTag) {
+		this.eTag = eTag;
+	}
+
+	/**
+	 * 最終更新日時を指定する.
+	 * <p>
+	 * 指定するとIf-Modified-Sinceヘッダによる条件付きGET（304応答）が有効になる.
+	 * </p>
+	 *
+	 * @param lastModified
+	 *            最終更新日時（エポックミリ秒）
+	 */
+	public void setLastModified(long lastModified) {
+		this.lastModified = lastModified;
+	}
+
+	/**
+	 * ETagを取得する.
+	 *
+	 * @return ETag.<br>
+	 *         無い場合はnull.
+	 */
+	String getETag() {
+		return this.eTag;
+	}
+
+	/**
+	 * 最終更新日時を取得する.
+	 *
+	 * @return 最終更新日時（エポックミリ秒）.<br>
+	 *         無い場合は-1.
+	 */
+	long getLastModified() {
+		return this.lastModified;
+	}
+
 	/**
 	 * デフォルトコンテントタイプの取得.
 	 *
@@ -82,6 +150,99 @@ public abstract class DownloadPage implements Page {
 		this.downloadData = downloadData;
 	}
 
+	/**
+	 * ダウンロードデータのサイズを取得する.
+	 * <p>
+	 * ストリーミング系のサブクラスはオーバーライドすること.
+	 * </p>
+	 *
+	 * @return データサイズ（バイト）.<br>
+	 *         不明な場合は-1.
+	 */
+	long getContentLength() {
+		if (this.downloadData == null) {
+			return -1;
+		}
+		return this.downloadData.length;
+	}
+
+	/**
+	 * ダウンロードデータを出力する.
+	 * <p>
+	 * ストリーミング系のサブクラスはオーバーライドすること.
+	 * </p>
+	 *
+	 * @param os
+	 *            出力先
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	void writeContent(OutputStream os) throws IOException {
+		if (this.downloadData != null) {
+			os.write(this.downloadData);
+		}
+	}
+
+	/**
+	 * 範囲指定（Rangeリクエスト）での出力に対応しているか.
+	 * <p>
+	 * 対応しているサブクラスは {@link #writeContent(OutputStream, long, long)}
+	 * と合わせてオーバーライドすること.
+	 * </p>
+	 *
+	 * @return 対応している場合はtrue
+	 */
+	boolean isRangeSupported() {
+		return this.downloadData != null;
+	}
+
+	/**
+	 * ダウンロードデータの指定範囲を出力する.
+	 *
+	 * @param os
+	 *            出力先
+	 * @param offset
+	 *            開始位置
+	 * @param length
+	 *            出力バイト数
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	void writeContent(OutputStream os, long offset, long length)
+			throws IOException {
+		os.write(this.downloadData, (int) offset, (int) length);
+	}
+
+	/**
+	 * APサーバの機能（sendfileなど）で直接レスポンスする.
+	 * <p>
+	 * 対応しているサブクラスのみオーバーライドすること.
+	 * </p>
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param offset
+	 *            開始位置
+	 * @param length
+	 *            出力バイト数
+	 * @return APサーバに処理を委譲した場合はtrue
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	boolean sendByContainer(HttpServletRequest req, long offset, long length)
+			throws IOException {
+		return false;
+	}
+
+	/**
+	 * ダウンロード完了後（エラー時も含む）に保持しているリソースを解放する.
+	 *
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	void release() throws IOException {
+	}
+
 	/**
 	 * ダウンロード実行.<br>
 	 * このメソッドはBaseServletからのみ実行可.
@@ -92,32 +253,394 @@ public abstract class DownloadPage implements Page {
 	 *             入出力エラーが発生した場合
 	 */
 	public final void download(HttpServletResponse res) throws IOException {
-		// コンテントタイプ設定
-		if (!Validator.isEmpty(getContentType())) {
-			res.setContentType(getContentType());
-		}
-		// ダウンロードファイル名設定
-		if (!Validator.isEmpty(downloadFileName)) {
-			res.setHeader("Content-Disposition", "attachment; filename=\""
-					+ downloadFileName + "\"");
-		}
-		// ダウンロード処理
-		ByteArrayInputStream bais = new ByteArrayInputStream(this.downloadData);
-		ServletOutputStream sos = null;
+		download(null, res);
+	}
+
+	/**
+	 * ダウンロード実行.<br>
+	 * このメソッドはBaseServletからのみ実行可.
+	 * <p>
+	 * リクエストが指定された場合は、下記にも対応する.<br>
+	 * ・If-None-Match / If-Modified-Since による条件付きGET（304応答）<br>
+	 * ・Range / If-Range による範囲指定（206応答、満たせない場合は416応答）
+	 * </p>
+	 *
+	 * @param req
+	 *            HttpServletRequest.<br>
+	 *            nullの場合は条件付きGET、範囲指定、APサーバの機能による送信は行わない.
+	 * @param res
+	 *            HttpServletResponse
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public final void download(HttpServletRequest req, HttpServletResponse res)
+			throws IOException {
+		try {
+			// コンテントタイプ設定
+			if (!Validator.isEmpty(getContentType())) {
+				res.setContentType(getContentType());
+			}
+			// ダウンロードファイル名設定
+			if (!Validator.isEmpty(downloadFileName)) {
+				res.setHeader("Content-Disposition", "attachment; filename=\""
+						+ downloadFileName + "\"");
+			}
+			long contentLength = getContentLength();
+			// 圧縮形式の決定
+			ContentEncoding encoding = null;
+			if (req != null && CompressionSupport.isEnabled()
+					&& CompressionSupport.isCompressibleType(getContentType())) {
+				res.addHeader("Vary", "Accept-Encoding");
+				encoding = CompressionSupport.negotiate(req, getContentType(),
+						contentLength);
+			}
+			// キャッシュ検証用のヘッダ設定
+			String eTag = getETag();
+			long lastModified = getLastModified();
+			if (eTag != null && encoding != null) {
+				// 圧縮形式ごとに別のETagとする
+				eTag = appendToETag(eTag, "-" + encoding.getHeaderValue());
+			}
+			if (eTag != null) {
+				res.setHeader("ETag", eTag);
+			}
+			if (lastModified >= 0) {
+				res.setDateHeader("Last-Modified", lastModified);
+			}
+			boolean rangeSupported = isRangeSupported() && contentLength >= 0;
+			List<ByteRange> ranges = null;
+			if (req != null) {
+				// 条件付きGET
+				if (isNotModified(req, eTag, lastModified)) {
+					res.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+					return;
+				}
+				// 範囲指定
+				res.setHeader("Accept-Ranges", rangeSupported ? "bytes"
+						: "none");
+				if (rangeSupported && "GET".equals(req.getMethod())
+						&& isIfRangeMatched(req, eTag, lastModified)) {
+					ranges = ByteRange.parse(req.getHeader("Range"),
+							contentLength);
+				}
+			}
+			if (ranges != null && ranges.isEmpty()) {
+				// 満たせる範囲が無い
+				res.setHeader("Content-Range", "bytes */" + contentLength);
+				res.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if (ranges != null && ranges.size() == 1) {
+				// 単一範囲
+				ByteRange range = ranges.get(0);
+				res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				res.setHeader("Content-Range",
+						range.toContentRange(contentLength));
+				res.setContentLengthLong(range.length());
+				if (!sendByContainer(req, range.start, range.length())) {
+					ServletOutputStream sos = res.getOutputStream();
+					try {
+						writeContent(sos, range.start, range.length());
+					} finally {
+						sos.close();
+					}
+				}
+				return;
+			}
+			if (ranges != null) {
+				// 複数範囲
+				writeMultipleRanges(res, ranges, contentLength);
+				return;
+			}
+			if (encoding == null) {
+				// データサイズが分かっている場合はContent-Lengthを設定
+				if (contentLength >= 0) {
+					res.setContentLengthLong(contentLength);
+				}
+				// APサーバの機能で送信できる場合は委譲する
+				if (req != null && contentLength >= 0
+						&& sendByContainer(req, 0, contentLength)) {
+					return;
+				}
+			} else {
+				// 圧縮する場合はサイズが変わるのでContent-Lengthは設定しない
+				res.setHeader("Content-Encoding", encoding.getHeaderValue());
+			}
+			// ダウンロード処理
+			OutputStream os = null;
+			try {
+				// レスポンスするOutputStream
+				os = res.getOutputStream();
+				if (encoding != null) {
+					os = new CompressingOutputStream(os, encoding);
+				}
+				writeContent(os);
+			} finally {
+				if (os != null)
+					os.close();
+			}
+		} finally {
+			release();
+		}
+	}
+
+	/**
+	 * 条件付きGETで、クライアントのキャッシュが有効か判定する.
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param eTag
+	 *            ETag
+	 * @param lastModified
+	 *            最終更新日時
+	 * @return 304を返す場合はtrue
+	 */
+	private static boolean isNotModified(HttpServletRequest req, String eTag,
+			long lastModified) {
+		String method = req.getMethod();
+		if (!"GET".equals(method) && !"HEAD".equals(method)) {
+			return false;
+		}
+		String ifNoneMatch = req.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			// If-None-Matchがある場合はIf-Modified-Sinceより優先（弱い比較）
+			if (eTag == null) {
+				return false;
+			}
+			String target = stripWeak(eTag);
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.equals("*") || stripWeak(tag).equals(target)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (lastModified < 0) {
+			return false;
+		}
+		long ifModifiedSince = getDateHeader(req, "If-Modified-Since");
+		// HTTP日付は秒単位なので秒で比較する
+		return ifModifiedSince >= 0
+				&& lastModified / 1000 <= ifModifiedSince / 1000;
+	}
+
+	/**
+	 * If-Rangeヘッダの条件を満たすか判定する.
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param eTag
+	 *            ETag
+	 * @param lastModified
+	 *            最終更新日時
+	 * @return If-Rangeヘッダが無い、もしくは条件を満たす場合はtrue
+	 */
+	private static boolean isIfRangeMatched(HttpServletRequest req,
+			String eTag, long lastModified) {
+		String ifRange = req.getHeader("If-Range");
+		if (ifRange == null) {
+			return true;
+		}
+		ifRange = ifRange.trim();
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+			// ETag指定の場合は強い比較
+			return eTag != null && !eTag.startsWith("W/")
+					&& eTag.equals(ifRange);
+		}
+		long date = getDateHeader(req, "If-Range");
+		return date >= 0 && lastModified >= 0
+				&& lastModified / 1000 == date / 1000;
+	}
+
+	/**
+	 * 日付ヘッダを取得する.
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param name
+	 *            ヘッダ名
+	 * @return 日付（エポックミリ秒）.<br>
+	 *         無い場合や書式が不正な場合は-1.
+	 */
+	private static long getDateHeader(HttpServletRequest req, String name) {
+		try {
+			return req.getDateHeader(name);
+		} catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * ETagの値の末尾に文字列を付加する.
+	 *
+	 * @param eTag
+	 *            ETag
+	 * @param suffix
+	 *            付加する文字列
+	 * @return 付加後のETag
+	 */
+	private static String appendToETag(String eTag, String suffix) {
+		if (eTag.endsWith("\"")) {
+			return eTag.substring(0, eTag.length() - 1) + suffix + "\"";
+		}
+		return eTag + suffix;
+	}
+
+	/**
+	 * 弱いETagの接頭辞を除去する.
+	 *
+	 * @param tag
+	 *            ETag
+	 * @return 接頭辞「W/」を除いたETag
+	 */
+	private static String stripWeak(String tag) {
+		if (tag.startsWith("W/")) {
+			return tag.substring(2);
+		}
+		return tag;
+	}
+
+	/**
+	 * 複数範囲をmultipart/byterangesで出力する.
+	 *
+	 * @param res
+	 *            HTTPレスポンス
+	 * @param ranges
+	 *            範囲のList
+	 * @param total
+	 *            全体のサイズ
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void writeMultipleRanges(HttpServletResponse res,
+			List<ByteRange> ranges, long total) throws IOException {
+		String partContentType = getContentType();
+		// 各パートのヘッダを作成し、全体のサイズを求める
+		byte[][] partHeaders = new byte[ranges.size()][];
+		long length = 0;
+		for (int i = 0; i < ranges.size(); i++) {
+			ByteRange range = ranges.get(i);
+			StringBuilder header = new StringBuilder();
+			header.append("\r\n--").append(BYTERANGES_BOUNDARY).append("\r\n");
+			if (!Validator.isEmpty(partContentType)) {
+				header.append("Content-Type: ").append(partContentType)
+						.append("\r\n");
+			}
+			header.append("Content-Range: ")
+					.append(range.toContentRange(total)).append("\r\n\r\n");
+			partHeaders[i] = header.toString().getBytes(
+					StandardCharsets.ISO_8859_1);
+			length += partHeaders[i].length + range.length();
+		}
+		byte[] closing = ("\r\n--" + BYTERANGES_BOUNDARY + "--\r\n")
+				.getBytes(StandardCharsets.ISO_8859_1);
+		length += closing.length;
+		res.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		res.setContentType("multipart/byteranges; boundary="
+				+ BYTERANGES_BOUNDARY);
+		res.setContentLengthLong(length);
+		ServletOutputStream sos = res.getOutputStream();
+		try {
+			for (int i = 0; i < ranges.size(); i++) {
+				ByteRange range = ranges.get(i);
+				sos.write(partHeaders[i]);
+				writeContent(sos, range.start, range.length());
+			}
+			sos.write(closing);
+		} finally {
+			sos.close();
+		}
+	}
+
+	/**
+	 * {@link InputStream} の内容を {@link OutputStream} へコピーする.
+	 *
+	 * @param is
+	 *            入力元
+	 * @param os
+	 *            出力先
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	static void copy(InputStream is, OutputStream os) throws IOException {
+		byte[] buffer = BufferPool.acquire();
 		try {
-			// レスポンスするOutputStream
-			sos = res.getOutputStream();
-			// 入力＆出力
-			byte[] buffer = new byte[1024];
 			int readByteSize;
-			while ((readByteSize = bais.read(buffer)) != -1) {
-				sos.write(buffer, 0, readByteSize);
+			while ((readByteSize = is.read(buffer)) != -1) {
+				os.write(buffer, 0, readByteSize);
+			}
+		} finally {
+			BufferPool.release(buffer);
+		}
+	}
+
+	/**
+	 * {@link ReadableByteChannel} の内容を {@link OutputStream} へコピーする.
+	 *
+	 * @param in
+	 *            入力元
+	 * @param os
+	 *            出力先
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	static void copy(ReadableByteChannel in, OutputStream os)
+			throws IOException {
+		byte[] array = BufferPool.acquire();
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(array);
+			while (in.read(buffer) != -1) {
+				os.write(array, 0, buffer.position());
+				buffer.clear();
+			}
+		} finally {
+			BufferPool.release(array);
+		}
+	}
+
+	/**
+	 * {@link FileChannel} の指定範囲を {@link OutputStream} へ転送する.
+	 * <p>
+	 * 大きめのバッファで、指定位置から読み込みながら出力する.<br>
+	 * 送信中にファイルが縮んだ場合など、指定バイト数を送信できなかった場合は {@link EOFException}
+	 * とする（Content-Lengthは送信済みのため、黙って終了するとクライアントは不完全なファイルを受け取る）.
+	 * </p>
+	 *
+	 * @param channel
+	 *            入力元
+	 * @param position
+	 *            開始位置
+	 * @param count
+	 *            転送バイト数
+	 * @param os
+	 *            出力先
+	 * @throws EOFException
+	 *             指定バイト数を読み込めなかった場合
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	static void transfer(FileChannel channel, long position, long count,
+			OutputStream os) throws IOException {
+		long end = position + count;
+		byte[] array = BufferPool.acquire();
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(array);
+			while (position < end) {
+				buffer.clear();
+				if (end - position < buffer.capacity()) {
+					buffer.limit((int) (end - position));
+				}
+				int read = channel.read(buffer, position);
+				if (read < 0) {
+					throw new EOFException("ファイルの終端に達したため、送信できませんでした [送信済み="
+							+ (count - (end - position)) + ", 指定=" + count + "]");
+				}
+				os.write(array, 0, read);
+				position += read;
 			}
 		} finally {
-			if (sos != null)
-				sos.close();
-			if (bais != null)
-				bais.close();
+			BufferPool.release(array);
 		}
 	}
 }
@@ -0,0 +1,248 @@
+package jp.kt.web.page;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 文字を逐次エンコードしながら{@link OutputStream}へ出力するWriter.
+ * <p>
+ * 固定サイズのバッファのみを使用するため、出力量に関わらずメモリ使用量は一定.<br>
+ * {@link CharsetEncoder}はスレッドごとに再利用する.<br>
+ * closeしても出力先のストリームはcloseしない.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class EncodingWriter extends Writer {
+	/** 文字バッファのサイズ */
+	private static final int CHAR_BUFFER_SIZE = 4096;
+
+	/** バイトバッファのサイズ */
+	private static final int BYTE_BUFFER_SIZE = 8192;
+
+	/** スレッドごとの{@link CharsetEncoder} */
+	private static final ThreadLocal<Map<Charset, CharsetEncoder>> ENCODERS = new ThreadLocal<Map<Charset, CharsetEncoder>>() {
+		@Override
+		protected Map<Charset, CharsetEncoder> initialValue() {
+			return new HashMap<Charset, CharsetEncoder>();
+		}
+	};
+
+	/** 出力先 */
+	private final OutputStream out;
+
+	/** エンコーダ */
+	private final CharsetEncoder encoder;
+
+	/** 文字バッファ */
+	private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+
+	/** バイトバッファ */
+	private final ByteBuffer bytes = ByteBuffer.allocate(BYTE_BUFFER_SIZE);
+
+	/** close済みフラグ */
+	private boolean closed;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param out
+	 *            出力先
+	 * @param charset
+	 *            文字コード
+	 */
+	EncodingWriter(OutputStream out, Charset charset) {
+		this.out = out;
+		this.encoder = getEncoder(charset);
+	}
+
+	/**
+	 * スレッドごとの{@link CharsetEncoder}を取得する.
+	 * <p>
+	 * {@link String#getBytes(String)}と同様に、変換できない文字は置換文字にする.
+	 * </p>
+	 *
+	 * @param charset
+	 *            文字コード
+	 * @return 初期状態の{@link CharsetEncoder}
+	 */
+	private static CharsetEncoder getEncoder(Charset charset) {
+		Map<Charset, CharsetEncoder> encoders = ENCODERS.get();
+		CharsetEncoder encoder = encoders.get(charset);
+		if (encoder == null) {
+			encoder = charset.newEncoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			encoders.put(charset, encoder);
+		}
+		return encoder.reset();
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		ensureOpen();
+		if (!chars.hasRemaining()) {
+			encodeChars(false);
+		}
+		chars.put((char) c);
+	}
+
+	@Override
+	public void write(char[] cbuf, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			if (!chars.hasRemaining()) {
+				encodeChars(false);
+			}
+			int n = Math.min(len, chars.remaining());
+			chars.put(cbuf, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void write(String str, int off, int len) throws IOException {
+		ensureOpen();
+		while (len > 0) {
+			if (!chars.hasRemaining()) {
+				encodeChars(false);
+			}
+			int n = Math.min(len, chars.remaining());
+			// 中間のchar配列を作らずにバッファへ直接コピー
+			str.getChars(off, off + n, chars.array(), chars.position());
+			chars.position(chars.position() + n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public Writer append(CharSequence csq) throws IOException {
+		if (csq == null) {
+			csq = "null";
+		}
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public Writer append(CharSequence csq, int start, int end)
+			throws IOException {
+		ensureOpen();
+		if (csq == null) {
+			csq = "null";
+		}
+		if (csq instanceof String) {
+			write((String) csq, start, end - start);
+			return this;
+		}
+		// 溜まっている文字を先に出力し、CharSequenceはコピーせずに直接エンコードする
+		encodeChars(false);
+		if (chars.position() == 0) {
+			CharBuffer in = CharBuffer.wrap(csq, start, end);
+			encode(in, false);
+			// 末尾のサロゲートペアの前半など、未処理の文字は文字バッファへ移して次の入力と合わせる
+			while (in.hasRemaining()) {
+				chars.put(in.get());
+			}
+		} else {
+			// サロゲートペアの途中の場合は文字バッファ経由で処理する
+			for (int i = start; i < end; i++) {
+				write(csq.charAt(i));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * 文字バッファの内容をエンコードする.
+	 *
+	 * @param endOfInput
+	 *            入力の終わりの場合はtrue
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void encodeChars(boolean endOfInput) throws IOException {
+		chars.flip();
+		encode(chars, endOfInput);
+		chars.compact();
+	}
+
+	/**
+	 * エンコードしてバイトバッファが一杯になるたびに出力する.
+	 *
+	 * @param in
+	 *            入力文字
+	 * @param endOfInput
+	 *            入力の終わりの場合はtrue
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void encode(CharBuffer in, boolean endOfInput) throws IOException {
+		while (true) {
+			CoderResult result = encoder.encode(in, bytes, endOfInput);
+			if (result.isOverflow()) {
+				writeBytes();
+			} else if (result.isUnderflow()) {
+				break;
+			} else {
+				result.throwException();
+			}
+		}
+	}
+
+	/**
+	 * バイトバッファの内容を出力する.
+	 *
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private void writeBytes() throws IOException {
+		if (bytes.position() > 0) {
+			out.write(bytes.array(), 0, bytes.position());
+			bytes.clear();
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		encodeChars(false);
+		writeBytes();
+		out.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		encodeChars(true);
+		while (encoder.flush(bytes).isOverflow()) {
+			writeBytes();
+		}
+		writeBytes();
+		closed = true;
+	}
+
+	/**
+	 * close済みでないことを確認する.
+	 *
+	 * @throws IOException
+	 *             close済みの場合
+	 */
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Writerはcloseされています");
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package jp.kt.web.page;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+
+import jp.kt.internet.MimeType;
+
+/**
+ * {@link FileChannel} の内容をストリーミングでレスポンスするPage実装クラス.
+ * <p>
+ * 渡された {@link FileChannel} はダウンロード完了後（エラー時も含む）にcloseされる.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class FileChannelDownloadPage extends DownloadPage {
+	/** 入力元 */
+	private final FileChannel channel;
+
+	/** 開始位置 */
+	private final long position;
+
+	/** 送信バイト数 */
+	private final long count;
+
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * チャネルの先頭から末尾までを送信する.
+	 * </p>
+	 *
+	 * @param channel
+	 *            入力元の {@link FileChannel}
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public FileChannelDownloadPage(FileChannel channel) throws IOException {
+		this(channel, 0, channel.size());
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param channel
+	 *            入力元の {@link FileChannel}
+	 * @param position
+	 *            開始位置
+	 * @param count
+	 *            送信バイト数
+	 */
+	public FileChannelDownloadPage(FileChannel channel, long position,
+			long count) {
+		this.channel = channel;
+		this.position = position;
+		this.count = count;
+	}
+
+	@Override
+	String getDefaultContentType() {
+		return MimeType.getMimeType("bin");
+	}
+
+	@Override
+	long getContentLength() {
+		return count;
+	}
+
+	@Override
+	void writeContent(OutputStream os) throws IOException {
+		transfer(channel, position, count, os);
+	}
+
+	@Override
+	boolean isRangeSupported() {
+		return true;
+	}
+
+	@Override
+	void writeContent(OutputStream os, long offset, long length)
+			throws IOException {
+		transfer(channel, position + offset, length, os);
+	}
+
+	@Override
+	void release() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,139 @@
+package jp.kt.web.page;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import javax.servlet.http.HttpServletRequest;
+
+import jp.kt.fileio.FileUtil;
+import jp.kt.internet.MimeType;
+import jp.kt.tool.Validator;
+
+/**
+ * ファイルをストリーミングでレスポンスするPage実装クラス.
+ * <p>
+ * ファイル内容をメモリに読み込まずに送信するため、巨大なファイルでもメモリ使用量は一定.<br>
+ * APサーバがsendfileに対応している場合（Tomcatなど）はAPサーバに送信を委譲し、<br>
+ * そうでない場合は {@link FileChannel} から読み込みながら出力する.<br>
+ * ETag、最終更新日時は明示的に指定しない場合、ファイルのサイズと最終更新日時から自動で設定される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class FileDownloadPage extends DownloadPage {
+	/** ダウンロードするファイル */
+	private final Path file;
+
+	/** ファイルサイズ */
+	private final long fileSize;
+
+	/** ファイルの最終更新日時 */
+	private final long fileLastModified;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param file
+	 *            ダウンロードするファイル
+	 * @throws IOException
+	 *             ファイルが存在しないなど、入出力エラーが発生した場合
+	 */
+	public FileDownloadPage(Path file) throws IOException {
+		this.file = file;
+		this.fileSize = Files.size(file);
+		this.fileLastModified = Files.getLastModifiedTime(file).toMillis();
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param file
+	 *            ダウンロードするファイルの {@link FileUtil} オブジェクト
+	 * @throws IOException
+	 *             ファイルが存在しないなど、入出力エラーが発生した場合
+	 */
+	public FileDownloadPage(FileUtil file) throws IOException {
+		this(Paths.get(file.getPath()));
+	}
+
+	@Override
+	String getDefaultContentType() {
+		// 拡張子からコンテントタイプを判定
+		String name = file.getFileName().toString();
+		int index = name.lastIndexOf('.');
+		String contentType = null;
+		if (index >= 0) {
+			contentType = MimeType.getMimeType(name.substring(index + 1));
+		}
+		if (Validator.isEmpty(contentType)) {
+			contentType = MimeType.getMimeType("bin");
+		}
+		return contentType;
+	}
+
+	@Override
+	long getContentLength() {
+		return fileSize;
+	}
+
+	@Override
+	String getETag() {
+		String eTag = super.getETag();
+		if (eTag == null) {
+			// サイズと最終更新日時から生成
+			eTag = "\"" + Long.toHexString(fileSize) + "-"
+					+ Long.toHexString(fileLastModified) + "\"";
+		}
+		return eTag;
+	}
+
+	@Override
+	long getLastModified() {
+		long lastModified = super.getLastModified();
+		if (lastModified < 0) {
+			lastModified = fileLastModified;
+		}
+		return lastModified;
+	}
+
+	@Override
+	boolean isRangeSupported() {
+		return true;
+	}
+
+	@Override
+	boolean sendByContainer(HttpServletRequest req, long offset, long length)
+			throws IOException {
+		if (!Boolean.TRUE.equals(req
+				.getAttribute("org.apache.tomcat.sendfile.support"))) {
+			return false;
+		}
+		// Tomcatのsendfileで送信する
+		req.setAttribute("org.apache.tomcat.sendfile.filename", file
+				.toAbsolutePath().toString());
+		req.setAttribute("org.apache.tomcat.sendfile.start",
+				Long.valueOf(offset));
+		req.setAttribute("org.apache.tomcat.sendfile.end",
+				Long.valueOf(offset + length));
+		return true;
+	}
+
+	@Override
+	void writeContent(OutputStream os) throws IOException {
+		writeContent(os, 0, fileSize);
+	}
+
+	@Override
+	void writeContent(OutputStream os, long offset, long length)
+			throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			transfer(channel, offset, length, os);
+		}
+	}
+}
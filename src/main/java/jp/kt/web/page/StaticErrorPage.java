@@ -0,0 +1,149 @@
+package jp.kt.web.page;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * 事前に生成した簡易HTMLでエラーをレスポンスする場合のPage.
+ * <p>
+ * JSPへのforwardやコンテナのエラーページを経由せず、<br>
+ * HTTPレスポンスコードごとに1度だけ生成したバイト列をそのまま出力する.<br>
+ * 生成後は変更されないため、複数スレッドから参照可能.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class StaticErrorPage implements Page {
+	/** HTTPレスポンスコードごとのインスタンス */
+	private static final ConcurrentMap<Integer, StaticErrorPage> CACHE = new ConcurrentHashMap<>();
+
+	/** コンテントタイプ */
+	private static final String CONTENT_TYPE = "text/html; charset=UTF-8";
+
+	/** HTTPレスポンスコード */
+	private final int httpResponseCode;
+
+	/** レスポンスボディ */
+	private final String html;
+
+	/** レスポンスボディ（UTF-8） */
+	private final byte[] body;
+
+	/**
+	 * 内部コンストラクタ.
+	 *
+	 * @param httpResponseCode
+	 *            HTTPレスポンスコード
+	 */
+	private StaticErrorPage(int httpResponseCode) {
+		this.httpResponseCode = httpResponseCode;
+		String title = httpResponseCode + " " + getReasonPhrase(httpResponseCode);
+		this.html = "<!DOCTYPE html>\n<html><head><meta charset=\"UTF-8\"><title>"
+				+ title + "</title></head><body><h1>" + title
+				+ "</h1></body></html>\n";
+		this.body = html.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * HTTPレスポンスコードに対応するインスタンスを取得する.
+	 *
+	 * @param httpResponseCode
+	 *            HTTPレスポンスコード.<br>
+	 *            HttpServletResponseクラスの定数で指定すること.
+	 * @return {@link StaticErrorPage}オブジェクト
+	 */
+	public static StaticErrorPage of(int httpResponseCode) {
+		StaticErrorPage page = CACHE.get(httpResponseCode);
+		if (page == null) {
+			page = new StaticErrorPage(httpResponseCode);
+			StaticErrorPage old = CACHE.putIfAbsent(httpResponseCode, page);
+			if (old != null) {
+				page = old;
+			}
+		}
+		return page;
+	}
+
+	/**
+	 * HTTPレスポンスコードの説明文を取得する.
+	 *
+	 * @param code
+	 *            HTTPレスポンスコード
+	 * @return 説明文
+	 */
+	private static String getReasonPhrase(int code) {
+		switch (code) {
+		case HttpServletResponse.SC_BAD_REQUEST:
+			return "Bad Request";
+		case HttpServletResponse.SC_UNAUTHORIZED:
+			return "Unauthorized";
+		case HttpServletResponse.SC_FORBIDDEN:
+			return "Forbidden";
+		case HttpServletResponse.SC_NOT_FOUND:
+			return "Not Found";
+		case HttpServletResponse.SC_METHOD_NOT_ALLOWED:
+			return "Method Not Allowed";
+		case HttpServletResponse.SC_CONFLICT:
+			return "Conflict";
+		case HttpServletResponse.SC_GONE:
+			return "Gone";
+		case HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE:
+			return "Payload Too Large";
+		case 429:
+			return "Too Many Requests";
+		case HttpServletResponse.SC_INTERNAL_SERVER_ERROR:
+			return "Internal Server Error";
+		case HttpServletResponse.SC_SERVICE_UNAVAILABLE:
+			return "Service Unavailable";
+		default:
+			return "Error";
+		}
+	}
+
+	/**
+	 * HTTPレスポンスコードを取得.
+	 *
+	 * @return HTTPレスポンスコード
+	 */
+	public int getHttpResponseCode() {
+		return httpResponseCode;
+	}
+
+	/**
+	 * レスポンスを出力する.
+	 * <p>
+	 * 出力途中のバッファは破棄してから出力する.<br>
+	 * 既にレスポンスが確定（コミット）している場合は、HTTPレスポンスコードを変更できないため出力しない.
+	 * </p>
+	 *
+	 * @param res
+	 *            HTTPレスポンス
+	 * @return 出力した場合はtrue、レスポンスが確定済みのため出力しなかった場合はfalse
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	public boolean respond(HttpServletResponse res) throws IOException {
+		if (res.isCommitted()) {
+			return false;
+		}
+		res.resetBuffer();
+		res.setStatus(httpResponseCode);
+		res.setContentType(CONTENT_TYPE);
+		ServletOutputStream out;
+		try {
+			out = res.getOutputStream();
+		} catch (IllegalStateException e) {
+			// 既にgetWriterが呼ばれている場合（文字コードは変更できないため長さは指定しない）
+			res.getWriter().write(html);
+			return true;
+		}
+		res.setContentLength(body.length);
+		out.write(body);
+		return true;
+	}
+}
@@ -0,0 +1,119 @@
+package jp.kt.web.page;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.ReadableByteChannel;
+
+import jp.kt.internet.MimeType;
+
+/**
+ * {@link InputStream} もしくは {@link ReadableByteChannel}
+ * の内容をストリーミングでレスポンスするPage実装クラス.
+ * <p>
+ * 入力元はダウンロード実行時に取得され、送信後にcloseされる.<br>
+ * データサイズが分かっている場合は {@link #setContentLength(long)} を指定すること.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class StreamDownloadPage extends DownloadPage {
+	/** InputStreamの取得元 */
+	private final InputStreamSource streamSource;
+
+	/** ReadableByteChannelの取得元 */
+	private final ChannelSource channelSource;
+
+	/** データサイズ */
+	private long contentLength = -1;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param source
+	 *            {@link InputStream}の取得元
+	 */
+	public StreamDownloadPage(InputStreamSource source) {
+		this.streamSource = source;
+		this.channelSource = null;
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param source
+	 *            {@link ReadableByteChannel}の取得元
+	 */
+	public StreamDownloadPage(ChannelSource source) {
+		this.streamSource = null;
+		this.channelSource = source;
+	}
+
+	/**
+	 * データサイズを指定する.
+	 * <p>
+	 * 指定した場合はContent-Lengthヘッダが出力される.
+	 * </p>
+	 *
+	 * @param contentLength
+	 *            データサイズ（バイト）
+	 */
+	public void setContentLength(long contentLength) {
+		this.contentLength = contentLength;
+	}
+
+	@Override
+	String getDefaultContentType() {
+		return MimeType.getMimeType("bin");
+	}
+
+	@Override
+	long getContentLength() {
+		return contentLength;
+	}
+
+	@Override
+	void writeContent(OutputStream os) throws IOException {
+		if (streamSource != null) {
+			try (InputStream is = streamSource.open()) {
+				copy(is, os);
+			}
+		} else {
+			try (ReadableByteChannel channel = channelSource.open()) {
+				copy(channel, os);
+			}
+		}
+	}
+
+	/**
+	 * {@link InputStream}の取得元.
+	 *
+	 * @author tatsuya.kumon
+	 */
+	public interface InputStreamSource {
+		/**
+		 * {@link InputStream}を取得する.
+		 *
+		 * @return 送信するデータの {@link InputStream}
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		InputStream open() throws IOException;
+	}
+
+	/**
+	 * {@link ReadableByteChannel}の取得元.
+	 *
+	 * @author tatsuya.kumon
+	 */
+	public interface ChannelSource {
+		/**
+		 * {@link ReadableByteChannel}を取得する.
+		 *
+		 * @return 送信するデータの {@link ReadableByteChannel}
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		ReadableByteChannel open() throws IOException;
+	}
+}
@@ -0,0 +1,219 @@
+package jp.kt.web.page;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+
+import jp.kt.internet.MimeType;
+import jp.kt.prop.KtProperties;
+import jp.kt.web.BufferPool;
+
+/**
+ * テキストを逐次エンコードしながらレスポンスするPage実装クラス.
+ * <p>
+ * {@link TextDownloadPage}と異なり、テキスト全体をバイト配列に変換してから送信するのではなく、<br>
+ * 固定サイズのバッファでエンコードしながら送信するため、巨大なテキストでもメモリ使用量は一定.<br>
+ * テキストは{@link CharSequence}、{@link Reader}、{@link TextWriter}のいずれかで指定する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class TextStreamDownloadPage extends DownloadPage {
+	/** レスポンスするテキスト */
+	private final CharSequence text;
+
+	/** テキストの読み込み元 */
+	private final Reader reader;
+
+	/** テキストの書き込み処理 */
+	private final TextWriter textWriter;
+
+	/** 文字コード */
+	private final Charset charset;
+
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * デフォルト文字コードでの処理となります.
+	 * </p>
+	 *
+	 * @param text
+	 *            レスポンスするテキスト
+	 * @throws UnsupportedEncodingException
+	 *             指定されたエンコーディングがサポートされていない場合
+	 */
+	public TextStreamDownloadPage(CharSequence text)
+			throws UnsupportedEncodingException {
+		this(text, KtProperties.getInstance().getDefaultCharset());
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param text
+	 *            レスポンスするテキスト
+	 * @param charset
+	 *            文字コード
+	 * @throws UnsupportedEncodingException
+	 *             指定されたエンコーディングがサポートされていない場合
+	 */
+	public TextStreamDownloadPage(CharSequence text, String charset)
+			throws UnsupportedEncodingException {
+		this(text, null, null, charset);
+	}
+
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * デフォルト文字コードでの処理となります.<br>
+	 * {@link Reader}はダウンロード完了後（エラー時も含む）にcloseされます.
+	 * </p>
+	 *
+	 * @param reader
+	 *            レスポンスするテキストの読み込み元
+	 * @throws UnsupportedEncodingException
+	 *             指定されたエンコーディングがサポートされていない場合
+	 */
+	public TextStreamDownloadPage(Reader reader)
+			throws UnsupportedEncodingException {
+		this(reader, KtProperties.getInstance().getDefaultCharset());
+	}
+
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * {@link Reader}はダウンロード完了後（エラー時も含む）にcloseされます.
+	 * </p>
+	 *
+	 * @param reader
+	 *            レスポンスするテキストの読み込み元
+	 * @param charset
+	 *            文字コード
+	 * @throws UnsupportedEncodingException
+	 *             指定されたエンコーディングがサポートされていない場合
+	 */
+	public TextStreamDownloadPage(Reader reader, String charset)
+			throws UnsupportedEncodingException {
+		this(null, reader, null, charset);
+	}
+
+	/**
+	 * コンストラクタ.
+	 * <p>
+	 * デフォルト文字コードでの処理となります.
+	 * </p>
+	 *
+	 * @param textWriter
+	 *            レスポンスするテキストの書き込み処理
+	 * @throws UnsupportedEncodingException
+	 *             指定されたエンコーディングがサポートされていない場合
+	 */
+	public TextStreamDownloadPage(TextWriter textWriter)
+			throws UnsupportedEncodingException {
+		this(textWriter, KtProperties.getInstance().getDefaultCharset());
+	}
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param textWriter
+	 *            レスポンスするテキストの書き込み処理
+	 * @param charset
+	 *            文字コード
+	 * @throws UnsupportedEncodingException
+	 *             指定されたエンコーディングがサポートされていない場合
+	 */
+	public TextStreamDownloadPage(TextWriter textWriter, String charset)
+			throws UnsupportedEncodingException {
+		this(null, null, textWriter, charset);
+	}
+
+	/**
+	 * 内部コンストラクタ.
+	 *
+	 * @param text
+	 *            レスポンスするテキスト
+	 * @param reader
+	 *            テキストの読み込み元
+	 * @param textWriter
+	 *            テキストの書き込み処理
+	 * @param charset
+	 *            文字コード
+	 * @throws UnsupportedEncodingException
+	 *             指定されたエンコーディングがサポートされていない場合
+	 */
+	private TextStreamDownloadPage(CharSequence text, Reader reader,
+			TextWriter textWriter, String charset)
+			throws UnsupportedEncodingException {
+		this.text = text;
+		this.reader = reader;
+		this.textWriter = textWriter;
+		try {
+			this.charset = Charset.forName(charset);
+		} catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+			throw new UnsupportedEncodingException(charset);
+		}
+	}
+
+	@Override
+	String getDefaultContentType() {
+		return MimeType.getMimeType("html");
+	}
+
+	@Override
+	long getContentLength() {
+		return -1;
+	}
+
+	@Override
+	void writeContent(OutputStream os) throws IOException {
+		EncodingWriter writer = new EncodingWriter(os, charset);
+		if (text != null) {
+			writer.append(text);
+		} else if (reader != null) {
+			CharBuffer buffer = CharBuffer.allocate(BufferPool.BUFFER_SIZE / 8);
+			while (reader.read(buffer) != -1) {
+				buffer.flip();
+				writer.write(buffer.array(), 0, buffer.limit());
+				buffer.clear();
+			}
+		} else {
+			textWriter.write(writer);
+		}
+		writer.close();
+	}
+
+	@Override
+	void release() throws IOException {
+		if (reader != null) {
+			reader.close();
+		}
+	}
+
+	/**
+	 * テキストの書き込み処理.
+	 *
+	 * @author tatsuya.kumon
+	 */
+	public interface TextWriter {
+		/**
+		 * レスポンスするテキストを書き込む.
+		 * <p>
+		 * 書き込んだテキストは逐次エンコードされて送信される.<br>
+		 * 引数のWriterはcloseしないこと.
+		 * </p>
+		 *
+		 * @param writer
+		 *            書き込み先
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		void write(Writer writer) throws IOException;
+	}
+}
@@ -0,0 +1,105 @@
+package jp.kt.web.servlet;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.kt.web.WebProperties;
+
+/**
+ * 非同期モードのServletがメイン処理を実行するExecutor.
+ * <p>
+ * kt.core.web.async.virtual が有効で、JVMが仮想スレッドに対応している場合（Java 21以降）は<br>
+ * タスクごとに仮想スレッドを生成する.<br>
+ * それ以外の場合は kt.core.web.async.threads のスレッド数、
+ * kt.core.web.async.queue の待ち行列長のスレッドプールで実行する.<br>
+ * アプリケーション停止時は {@link WebLifecycleListener} から停止される.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class AsyncExecutor {
+	/**
+	 * 遅延生成のためのホルダー.
+	 */
+	private static final class Holder {
+		/** 唯一のインスタンス */
+		private static final ExecutorService INSTANCE = create();
+	}
+
+	/** Executorを生成済みかどうか（停止時に生成してしまわないためのもの） */
+	private static volatile boolean created;
+
+	private AsyncExecutor() {
+	}
+
+	/**
+	 * 共通のExecutorを取得する.
+	 *
+	 * @return {@link Executor}オブジェクト
+	 */
+	static Executor getDefault() {
+		return Holder.INSTANCE;
+	}
+
+	/**
+	 * 共通のExecutorを停止する.
+	 * <p>
+	 * 実行中のタスクには割り込み、待ち行列のタスクは実行しない.<br>
+	 * 停止後に登録されたタスクは {@link java.util.concurrent.RejectedExecutionException} となる.
+	 * </p>
+	 *
+	 * @return 停止したExecutor、一度も使用されていない場合はnull
+	 */
+	static ExecutorService shutdown() {
+		if (!created) {
+			return null;
+		}
+		ExecutorService executor = Holder.INSTANCE;
+		executor.shutdownNow();
+		return executor;
+	}
+
+	/**
+	 * 設定に従いExecutorを生成する.
+	 *
+	 * @return {@link ExecutorService}オブジェクト
+	 */
+	private static ExecutorService create() {
+		created = true;
+		if (WebProperties.getBoolean("kt.core.web.async.virtual", true)) {
+			try {
+				// Java 8でもコンパイルできるようリフレクションで呼び出す
+				Method m = Executors.class
+						.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) m.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				// 仮想スレッド非対応のJVMの場合はスレッドプールを使用
+			}
+		}
+		int threads = Math.max(1, WebProperties.getInt(
+				"kt.core.web.async.threads", 100));
+		int queue = Math.max(1, WebProperties.getInt(
+				"kt.core.web.async.queue", 1000));
+		final AtomicInteger counter = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queue),
+				new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "kt-async-"
+								+ counter.incrementAndGet());
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+}
@@ -1,26 +1,39 @@
 package jp.kt.web.servlet;
 
 import java.io.IOException;
-import java.lang.management.ManagementFactory;
-import java.lang.management.MemoryMXBean;
-import java.lang.management.MemoryUsage;
-import java.net.InetAddress;
+import java.io.Serializable;
 import java.net.SocketException;
 import java.net.URISyntaxException;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BooleanSupplier;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
 import javax.servlet.RequestDispatcher;
 import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
+import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
 
 import jp.kt.db.DbConnectManager;
 import jp.kt.exception.KtException;
@@ -29,12 +42,19 @@ import jp.kt.exception.KtWarningException;
 import jp.kt.logger.ApplicationLogger;
 import jp.kt.prop.KtProperties;
 import jp.kt.web.RequestHeader;
+import jp.kt.web.WebProperties;
 import jp.kt.web.device.Device;
+import jp.kt.web.log.AsyncLogger;
+import jp.kt.web.metrics.MetricsRegistry;
+import jp.kt.web.metrics.PhaseTimer;
+import jp.kt.web.metrics.RequestPhase;
+import jp.kt.web.metrics.ServletMetrics;
 import jp.kt.web.page.DownloadPage;
 import jp.kt.web.page.ForwardPage;
 import jp.kt.web.page.HttpCodePage;
 import jp.kt.web.page.Page;
 import jp.kt.web.page.RedirectPage;
+import jp.kt.web.page.StaticErrorPage;
 
 /**
  * 全ての基底Servlet.
@@ -45,14 +65,52 @@ public abstract class BaseServlet extends HttpServlet {
 	/** ログ出力クラス */
 	private ApplicationLogger logger;
 
-	/** サーバのホスト名 */
-	private static String serverHostName;
+	/** 計測値の記録先 */
+	private ServletMetrics metrics;
+
+	/** 許可するHTTPメソッド */
+	private Set<HttpMethod> permitMethods;
+
+	/** Allowヘッダの値 */
+	private String allowHeader;
+
+	/** 許可するHTTPメソッドに関する警告（初回リクエスト時にログ出力する） */
+	private String permitMethodsWarning;
+
+	/** 許可IPアドレスの判定クラスのキャッシュ */
+	private volatile IpMatcherCache ipMatcherCache;
+
+	/** 許可IPアドレスの判定クラスを再取得中かどうか */
+	private final AtomicBoolean ipMatcherRefreshing = new AtomicBoolean();
+
+	/** 直前に生成した許可IPアドレスの判定クラス（キャッシュしない場合に使用） */
+	private volatile CompiledIpList lastIpList;
 
 	/** 共通エラーページ */
 	private static final String ERROR_PAGE;
 
-	/** 整数値のフォーマット */
-	private static final DecimalFormat DECIMAL_FORMAT = new DecimalFormat();
+	/** 非同期モードで実行中のリクエストの中断フラグ */
+	private static final ThreadLocal<AtomicBoolean> ASYNC_CANCELLED = new ThreadLocal<AtomicBoolean>();
+
+	/** 同期モード用の中断判定（常にfalse） */
+	private static final BooleanSupplier NOT_CANCELLED = new BooleanSupplier() {
+		@Override
+		public boolean getAsBoolean() {
+			return false;
+		}
+	};
+
+	/** エラー時に事前生成した簡易HTMLをレスポンスするかどうか */
+	private static final boolean SIMPLE_ERROR_PAGE = WebProperties.getBoolean(
+			"kt.core.web.errorpage.simple", false);
+
+	/** ログイン判定結果を保持するセッション属性名（後ろにServletのクラス名を付加） */
+	private static final String LOGIN_CACHE_ATTRIBUTE = BaseServlet.class
+			.getName() + ".loginCache.";
+
+	/** ログインユーザ情報を保持するリクエスト属性名 */
+	private static final String LOGIN_PRINCIPAL_ATTRIBUTE = BaseServlet.class
+			.getName() + ".loginPrincipal";
 
 	static {
 		ERROR_PAGE = KtProperties.getInstance().getString(
@@ -61,6 +119,47 @@ public abstract class BaseServlet extends HttpServlet {
 
 	@Override
 	public final void init() throws ServletException {
+		metrics = MetricsRegistry.getInstance().getServletMetrics(getClass(),
+				getServletContext().getContextPath());
+		// サーバのホスト名は初期化時に解決しておく（最大待機時間を過ぎた場合は解決後に反映）
+		try {
+			ServerHostName.getInstance().await(
+					WebProperties.getLong("kt.core.web.server.hostname.timeout",
+							3000));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// 許可するHTTPメソッドは起動時に確定させる
+		permitMethods = EnumSet.noneOf(HttpMethod.class);
+		HttpMethod[] methods = getPermitHttpMethods();
+		if (methods != null) {
+			permitMethods.addAll(Arrays.asList(methods));
+		}
+		if (permitMethods.size() == HttpMethod.values().length) {
+			// HttpMethod.values()で全メソッドを指定した場合でも、TRACE、CONNECTは許可しない
+			permitMethods.remove(HttpMethod.TRACE);
+			permitMethods.remove(HttpMethod.CONNECT);
+		}
+		EnumSet<HttpMethod> extraMethods = EnumSet.copyOf(permitMethods);
+		extraMethods.removeAll(EnumSet.of(HttpMethod.GET, HttpMethod.POST,
+				HttpMethod.HEAD, HttpMethod.OPTIONS));
+		permitMethodsWarning = extraMethods.isEmpty() ? null
+				: "GET、POST、HEAD以外のHTTPメソッドが許可されています " + extraMethods;
+		StringBuilder allow = new StringBuilder();
+		for (HttpMethod hm : permitMethods) {
+			if (allow.length() > 0) {
+				allow.append(", ");
+			}
+			allow.append(hm.name());
+		}
+		if (!permitMethods.contains(HttpMethod.OPTIONS)) {
+			// OPTIONSは許可していなくても自動で応答する
+			if (allow.length() > 0) {
+				allow.append(", ");
+			}
+			allow.append(HttpMethod.OPTIONS.name());
+		}
+		allowHeader = allow.toString();
 	}
 
 	@Override
@@ -68,7 +167,8 @@ public abstract class BaseServlet extends HttpServlet {
 			throws ServletException, IOException {
 		Page page = null;
 		Connection con = null;
-		long start = System.nanoTime();
+		long acquiredAt = 0;
+		PhaseTimer timer = new PhaseTimer();
 		try {
 			// requestされる値の文字コードのセット
 			req.setCharacterEncoding(KtProperties.getInstance()
@@ -77,41 +177,53 @@ public abstract class BaseServlet extends HttpServlet {
 			String loggerName = getLoggerName(req);
 			if (logger == null) {
 				logger = new ApplicationLogger(loggerName, this.getClass());
-			}
-			// サーバのホスト名を取得
-			try {
-				if (serverHostName == null) {
-					serverHostName = InetAddress.getLocalHost().getHostName();
+				if (permitMethodsWarning != null) {
+					logger.warnLog("A067", permitMethodsWarning, null);
 				}
-			} catch (Exception e) {
-				serverHostName = "";
-				logger.errorLog("A062", "サーバのホスト名取得に失敗しました", e);
 			}
+			// サーバのホスト名取得に失敗していればログ出力（取得は初期化時にバックグラウンドで行う）
+			Exception hostNameFailure = ServerHostName.getInstance()
+					.takeFailure();
+			if (hostNameFailure != null) {
+				logger.errorLog("A062", "サーバのホスト名取得に失敗しました",
+						hostNameFailure);
+			}
+			timer.mark(RequestPhase.SETUP);
 			// クライアント情報とアクセスしてきたURLをログ出力
-			logger.infoLog("A001", createClientInfoText(req));
+			accessLog("A001", createClientInfoText(req));
 			// メモリ状況をログ出力
-			logger.infoLog("A057", createMemoryStatusText());
+			MemoryStatus memoryStatus = MemoryStatusSampler.getInstance()
+					.getStatus();
+			if (MemoryStatusSampler.getInstance().isLogTarget(memoryStatus)) {
+				accessLog("A057", createMemoryStatusText(memoryStatus));
+			}
+			timer.mark(RequestPhase.LOGGING);
 			// HTTPメソッド制限チェック
-			boolean isMethodError = true;
-			for (HttpMethod hm : this.getPermitHttpMethods()) {
-				if (hm.toString().equalsIgnoreCase(req.getMethod())) {
-					// OK
-					isMethodError = false;
-					break;
-				}
+			HttpMethod method = HttpMethod.of(req.getMethod());
+			if (method == null || !permitMethods.contains(method)) {
+				// 例外は発生させず、直接レスポンスする
+				page = createMethodNotAllowedPage(req, res, method);
+				timer.mark(RequestPhase.METHOD_CHECK);
+				finishRequest(req, res, page, timer);
+				return;
 			}
-			if (isMethodError) {
-				throw new KtWarningException("A002", req.getMethod()
-						+ "リクエストは許可していません");
+			timer.mark(RequestPhase.METHOD_CHECK);
+			// 非同期モードの場合は、以降の処理を別スレッドで実行
+			if (isAsyncMode() && req.isAsyncSupported()) {
+				startAsync(req, res, timer);
+				return;
 			}
 			// DBコネクション作成
-			if (useDbConnection()) {
-				con = DbConnectManager.createConnection(getDbJndiName());
-			}
+			con = openConnection();
+			acquiredAt = System.nanoTime();
+			timer.mark(RequestPhase.DB_ACQUIRE);
 			// IPアドレス制限チェック
 			checkIp(req, con);
+			timer.mark(RequestPhase.IP_CHECK);
 			// ログインチェック
-			if (isRequiredLogin() && !isLogin(req, res)) {
+			boolean isLoginError = isRequiredLogin() && !checkLogin(req, res);
+			timer.mark(RequestPhase.LOGIN_CHECK);
+			if (isLoginError) {
 				// 要ログインなのにログインしていなければ指定のページへ遷移する
 				page = getPageForNotLogin(req, res);
 			} else {
@@ -119,43 +231,226 @@ public abstract class BaseServlet extends HttpServlet {
 				// メイン処理実行
 				page = execute(req, res, con);
 			}
+			timer.mark(RequestPhase.EXECUTE);
 			// DBトランザクションのコミット
-			if (useDbConnection()) {
-				con.commit();
+			commit(con);
+			timer.mark(RequestPhase.COMMIT);
+		} catch (Exception | Error e) {
+			page = handleException(e, req, con);
+			timer.mark(RequestPhase.ERROR);
+		} finally {
+			// DBコネクションのclose
+			closeConnection(con, acquiredAt);
+			if (con != null) {
+				timer.mark(RequestPhase.DB_RELEASE);
 			}
-		} catch (KtHttpException e) {
+		}
+		finishRequest(req, res, page, timer);
+	}
+
+	/**
+	 * ページ遷移を行い、終了ログを出力する.
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param res
+	 *            HTTPレスポンス
+	 * @param page
+	 *            遷移ページを示す {@link Page}オブジェクト
+	 * @param timer
+	 *            計測中の {@link PhaseTimer}
+	 */
+	private void finishRequest(HttpServletRequest req, HttpServletResponse res,
+			Page page, PhaseTimer timer) {
+		// ページ遷移
+		dispatchPage(req, res, page, null);
+		recordPhases(page, timer);
+		// 終了ログ出力
+		outputEndLog(getSessionId(req), timer);
+	}
+
+	/**
+	 * 許可していないHTTPメソッドの場合のレスポンスを作成する.
+	 * <p>
+	 * OPTIONSリクエストを許可していない場合は、Allowヘッダのみを返す.<br>
+	 * それ以外は、Allowヘッダを付けて405を返す.
+	 * </p>
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param res
+	 *            HTTPレスポンス
+	 * @param method
+	 *            HTTPメソッド（該当なしの場合はnull）
+	 * @return 遷移ページを示す {@link Page}オブジェクト.<br>
+	 *         OPTIONSリクエストの場合はnull.
+	 */
+	private Page createMethodNotAllowedPage(HttpServletRequest req,
+			HttpServletResponse res, HttpMethod method) {
+		res.setHeader("Allow", allowHeader);
+		if (method == HttpMethod.OPTIONS) {
+			res.setContentLength(0);
+			return null;
+		}
+		if (ErrorLogThrottle.getInstance().acquire("A002") >= 0) {
+			logger.warnLog("A002", "[" + getSessionId(req) + "] "
+					+ req.getMethod() + "リクエストは許可していません", null);
+		}
+		if (SIMPLE_ERROR_PAGE) {
+			return StaticErrorPage.of(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+		}
+		return new HttpCodePage(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+	}
+
+	/**
+	 * ページ遷移までの各フェーズの処理時間を記録する.
+	 *
+	 * @param page
+	 *            遷移ページを示す {@link Page}オブジェクト
+	 * @param timer
+	 *            計測中の {@link PhaseTimer}
+	 */
+	private void recordPhases(Page page, PhaseTimer timer) {
+		timer.mark(RequestPhase.DISPATCH);
+		String pageType;
+		if (page == null) {
+			pageType = "None";
+		} else {
+			pageType = page.getClass().getSimpleName();
+			if (pageType.isEmpty()) {
+				// 無名クラスの場合
+				pageType = page.getClass().getName();
+			}
+		}
+		metrics.recordPhases(pageType, timer);
+	}
+
+	/**
+	 * 処理中に発生した例外から、レスポンスする {@link Page}を決定する.
+	 *
+	 * @param e
+	 *            発生した例外
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param con
+	 *            DB接続
+	 * @return 遷移ページを示す {@link Page}オブジェクト
+	 */
+	private Page handleException(Throwable e, HttpServletRequest req,
+			Connection con) {
+		if (e instanceof KtHttpException) {
 			// HTTPレスポンスコードを直接レスポンス
-			page = new HttpCodePage(e.getHttpResponseCode());
-		} catch (KtException e) {
+			int httpCode = ((KtHttpException) e).getHttpResponseCode();
+			if (SIMPLE_ERROR_PAGE) {
+				return StaticErrorPage.of(httpCode);
+			}
+			return new HttpCodePage(httpCode);
+		} else if (e instanceof KtException) {
 			// 共通エラー画面をレスポンス
-			page = exceptionOperation(e.getCode(), e, req, con);
-		} catch (SQLException e) {
+			return exceptionOperation(((KtException) e).getCode(), e, req, con);
+		} else if (e instanceof SQLException) {
 			// SQLException発生
-			page = exceptionOperation("A003", e, req, con);
-		} catch (Exception e) {
+			return exceptionOperation("A003", e, req, con);
+		} else if (e instanceof Exception) {
 			// その他のException発生
-			page = exceptionOperation("A004", e, req, con);
-		} catch (Error e) {
+			return exceptionOperation("A004", e, req, con);
+		} else {
 			// java.lang.Error発生
-			page = exceptionOperation("A005", e, req, con);
-		} finally {
-			// DBコネクションのclose
-			try {
-				if (useDbConnection() && con != null && !con.isClosed()) {
-					con.close();
+			return exceptionOperation("A005", e, req, con);
+		}
+	}
+
+	/**
+	 * DBコネクションを作成する.
+	 * <p>
+	 * {@link #isLazyDbConnection()} がtrueの場合は、初めて使用した時点で取得するプロキシを返す.
+	 * </p>
+	 *
+	 * @return DB接続.<br>
+	 *         DB接続しないServletの場合はnull.
+	 * @throws Exception
+	 *             DB接続に失敗した場合
+	 */
+	private Connection openConnection() throws Exception {
+		if (!useDbConnection()) {
+			return null;
+		}
+		if (isLazyDbConnection()) {
+			return LazyConnection.create(getDbJndiName(), metrics);
+		}
+		long start = System.nanoTime();
+		Connection con = DbConnectManager.createConnection(getDbJndiName());
+		metrics.recordConnectionAcquire(System.nanoTime() - start);
+		return con;
+	}
+
+	/**
+	 * DBトランザクションをコミットする.
+	 *
+	 * @param con
+	 *            DB接続
+	 * @throws SQLException
+	 *             コミットに失敗した場合
+	 */
+	private void commit(Connection con) throws SQLException {
+		if (!useDbConnection()) {
+			return;
+		}
+		if (!LazyConnection.isOpened(con)) {
+			// 一度も使用していない場合は何もしない
+			return;
+		}
+		long start = System.nanoTime();
+		con.commit();
+		metrics.recordCommit(System.nanoTime() - start);
+	}
+
+	/**
+	 * DBコネクションをcloseする.
+	 *
+	 * @param con
+	 *            DB接続
+	 * @param acquiredAt
+	 *            DB接続を取得した時刻（{@link System#nanoTime()}）
+	 */
+	private void closeConnection(Connection con, long acquiredAt) {
+		try {
+			if (useDbConnection() && con != null && !con.isClosed()) {
+				con.close();
+				if (!LazyConnection.isLazy(con)) {
+					// 遅延取得の場合は、実際に取得した時点からの時間をプロキシ側で記録済み
+					metrics.recordConnectionHold(System.nanoTime() - acquiredAt);
 				}
-			} catch (SQLException e2) {
-				logger.errorLog("A008", e2.getMessage(), e2);
 			}
+		} catch (SQLException e2) {
+			logger.errorLog("A008", e2.getMessage(), e2);
 		}
-		// ページ遷移
+		LazyConnection.record(con);
+	}
+
+	/**
+	 * ページ遷移を行う.
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param res
+	 *            HTTPレスポンス
+	 * @param page
+	 *            遷移ページを示す {@link Page}オブジェクト
+	 * @param ac
+	 *            非同期モードの場合は {@link AsyncContext}、同期モードの場合はnull
+	 * @return {@link AsyncContext#dispatch(ServletContext, String)}
+	 *         でforwardした場合はtrue
+	 */
+	private boolean dispatchPage(HttpServletRequest req,
+			HttpServletResponse res, Page page, AsyncContext ac) {
 		try {
 			// 遷移実行
 			if (page instanceof DownloadPage) {
 				// ダウンロードの場合
 				DownloadPage dPage = (DownloadPage) page;
 				// ダウンロード実行
-				dPage.download(res);
+				dPage.download(req, res);
 				// ページ遷移ログ
 				outputPageLog("response " + page.getClass().getName());
 			} else if (page instanceof ForwardPage) {
@@ -163,6 +458,12 @@ public abstract class BaseServlet extends HttpServlet {
 				String url = ((ForwardPage) page).getUrl();
 				// forwardの場合
 				ServletContext sc = getServletContext();
+				if (ac != null) {
+					// 非同期モードではコンテナのスレッドでforwardさせる
+					outputPageLog("forward to " + url);
+					ac.dispatch(sc, url);
+					return true;
+				}
 				RequestDispatcher rd = sc.getRequestDispatcher(url);
 				rd.forward(req, res);
 				// ページ遷移ログ
@@ -182,6 +483,17 @@ public abstract class BaseServlet extends HttpServlet {
 				int httpCode = ((HttpCodePage) page).getHttpResponseCode();
 				res.sendError(httpCode);
 				outputPageLog("response HTTP_ERROR:" + httpCode);
+			} else if (page instanceof StaticErrorPage) {
+				// 事前生成した簡易HTMLを返す場合
+				StaticErrorPage sPage = (StaticErrorPage) page;
+				if (sPage.respond(res)) {
+					outputPageLog("response HTTP_ERROR:"
+							+ sPage.getHttpResponseCode());
+				} else {
+					// 出力途中でエラーになった場合など
+					logger.warnLog("A009", "レスポンスが確定済みのため、HTTP_ERROR:"
+							+ sPage.getHttpResponseCode() + "を出力できませんでした", null);
+				}
 			}
 		} catch (SocketException e) {
 			// SocketExceptionはWARNでログ出力する
@@ -203,21 +515,363 @@ public abstract class BaseServlet extends HttpServlet {
 			// ログ出力
 			logger.errorLog("A011", e.getMessage(), e);
 		}
-		// 終了ログ出力
+		return false;
+	}
+
+	/**
+	 * 終了ログ出力.
+	 *
+	 * @param sessionId
+	 *            セッションID
+	 * @param timer
+	 *            計測中の {@link PhaseTimer}
+	 */
+	private void outputEndLog(String sessionId, PhaseTimer timer) {
 		StringBuilder endlog = new StringBuilder();
 		endlog.append("[");
-		endlog.append(getSessionId(req));
+		endlog.append(sessionId);
 		endlog.append("] BaseServlet end");
 		// 処理時間計測（ナノ秒）
-		long nanosec = System.nanoTime() - start;
+		long nanosec = System.nanoTime() - timer.getStart();
 		// ミリ秒に変換
 		long millisec = TimeUnit.NANOSECONDS.toMillis(nanosec);
-		// 3桁区切りにフォーマット
-		String timeStr = new DecimalFormat().format(millisec);
 		endlog.append(" [処理時間:");
-		endlog.append(timeStr);
+		// 3桁区切りにフォーマット
+		appendGrouped(endlog, millisec);
 		endlog.append("ms]");
-		logger.infoLog("A039", endlog.toString());
+		accessLog("A039", endlog.toString());
+	}
+
+	/**
+	 * 数値を3桁区切りで追加する.
+	 * <p>
+	 * リクエストごとに {@link java.text.DecimalFormat} を生成しないためのもの.
+	 * </p>
+	 *
+	 * @param sb
+	 *            追加先
+	 * @param value
+	 *            数値（0以上）
+	 */
+	private static void appendGrouped(StringBuilder sb, long value) {
+		String digits = Long.toString(value);
+		int len = digits.length();
+		for (int i = 0; i < len; i++) {
+			if (i > 0 && (len - i) % 3 == 0) {
+				sb.append(',');
+			}
+			sb.append(digits.charAt(i));
+		}
+	}
+
+	/**
+	 * 非同期モードで処理を開始する.
+	 * <p>
+	 * コンテナのスレッドは即座に解放し、DB接続以降の処理は
+	 * {@link #getAsyncExecutor()} のスレッドで実行する.
+	 * </p>
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param res
+	 *            HTTPレスポンス
+	 * @param timer
+	 *            計測中の {@link PhaseTimer}
+	 */
+	private void startAsync(HttpServletRequest req, HttpServletResponse res,
+			final PhaseTimer timer) {
+		final AsyncContext ac = req.startAsync(req, res);
+		final AtomicBoolean finished = new AtomicBoolean();
+		final AtomicBoolean cancelled = new AtomicBoolean();
+		long timeout = WebProperties.getLong("kt.core.web.async.timeout", -1);
+		if (timeout >= 0) {
+			ac.setTimeout(timeout);
+		}
+		final String sessionId = getSessionId(req);
+		ac.addListener(new AsyncListener() {
+			@Override
+			public void onTimeout(AsyncEvent event) throws IOException {
+				// 以降、処理スレッドはリクエスト・レスポンスを参照しない
+				cancelled.set(true);
+				if (!finished.compareAndSet(false, true)) {
+					return;
+				}
+				logger.warnLog("A065", "[" + sessionId + "] 非同期処理がタイムアウトしました",
+						event.getThrowable());
+				ServletResponse r = event.getSuppliedResponse();
+				if (r instanceof HttpServletResponse && !r.isCommitted()) {
+					((HttpServletResponse) r)
+							.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+				}
+				event.getAsyncContext().complete();
+				outputEndLog(sessionId, timer);
+			}
+
+			@Override
+			public void onError(AsyncEvent event) throws IOException {
+				// エラー時もコンテナが完了させるため、処理スレッドはリクエスト・レスポンスを参照しない
+				cancelled.set(true);
+				finished.set(true);
+				logger.warnLog("A009", event.getThrowable() != null ? event
+						.getThrowable().getMessage() : null, event
+						.getThrowable());
+			}
+
+			@Override
+			public void onComplete(AsyncEvent event) throws IOException {
+			}
+
+			@Override
+			public void onStartAsync(AsyncEvent event) throws IOException {
+			}
+		});
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				runAsync(ac, finished, cancelled, sessionId, timer);
+			}
+		};
+		try {
+			getAsyncExecutor().execute(task);
+		} catch (RejectedExecutionException e) {
+			// 実行できない場合は、このスレッドで実行する
+			logger.warnLog("A066", "[" + sessionId
+					+ "] 非同期実行が拒否されたため、同期実行します", e);
+			task.run();
+		}
+	}
+
+	/**
+	 * 非同期モードのメイン処理.
+	 * <p>
+	 * タイムアウトなどでコンテナがレスポンスを完了させた後は、<br>
+	 * リクエスト・レスポンスはコンテナに再利用されるため参照せず、DBトランザクションはロールバックする.
+	 * </p>
+	 *
+	 * @param ac
+	 *            {@link AsyncContext}
+	 * @param finished
+	 *            レスポンス済みフラグ（タイムアウトと競合しないためのもの）
+	 * @param cancelled
+	 *            中断フラグ（タイムアウト、エラー時にtrue）
+	 * @param sessionId
+	 *            セッションID
+	 * @param timer
+	 *            計測中の {@link PhaseTimer}
+	 */
+	private void runAsync(final AsyncContext ac, final AtomicBoolean finished,
+			final AtomicBoolean cancelled, final String sessionId,
+			final PhaseTimer timer) {
+		timer.mark(RequestPhase.ASYNC_WAIT);
+		final HttpServletRequest req;
+		final HttpServletResponse res;
+		try {
+			if (cancelled.get()) {
+				// 実行待ちの間にタイムアウトした
+				return;
+			}
+			req = (HttpServletRequest) ac.getRequest();
+			res = (HttpServletResponse) ac.getResponse();
+		} catch (IllegalStateException e) {
+			// 取得直前に完了した
+			return;
+		}
+		Connection con = null;
+		long acquiredAt = 0;
+		CompletionStage<Page> stage;
+		ASYNC_CANCELLED.set(cancelled);
+		try {
+			// DBコネクション作成
+			con = openConnection();
+			acquiredAt = System.nanoTime();
+			timer.mark(RequestPhase.DB_ACQUIRE);
+			// IPアドレス制限チェック
+			throwIfCancelled(cancelled);
+			checkIp(req, con);
+			timer.mark(RequestPhase.IP_CHECK);
+			// ログインチェック
+			throwIfCancelled(cancelled);
+			boolean isLoginError = isRequiredLogin() && !checkLogin(req, res);
+			timer.mark(RequestPhase.LOGIN_CHECK);
+			throwIfCancelled(cancelled);
+			if (isLoginError) {
+				// 要ログインなのにログインしていなければ指定のページへ遷移する
+				stage = CompletableFuture.completedFuture(getPageForNotLogin(
+						req, res));
+			} else {
+				// メイン処理実行
+				stage = executeAsync(req, res, con);
+			}
+		} catch (Exception | Error e) {
+			if (!finished.compareAndSet(false, true)) {
+				// タイムアウト済みのため、リクエスト・レスポンスは参照しない
+				abortAsync(con, acquiredAt, sessionId);
+				return;
+			}
+			Page page = handleException(e, req, con);
+			timer.mark(RequestPhase.ERROR);
+			closeConnection(con, acquiredAt);
+			if (con != null) {
+				timer.mark(RequestPhase.DB_RELEASE);
+			}
+			completeAsync(ac, page, sessionId, timer);
+			return;
+		} finally {
+			ASYNC_CANCELLED.remove();
+		}
+		final Connection asyncCon = con;
+		final long asyncAcquiredAt = acquiredAt;
+		stage.whenComplete(new BiConsumer<Page, Throwable>() {
+			@Override
+			public void accept(Page page, Throwable e) {
+				timer.mark(RequestPhase.EXECUTE);
+				// コミット前にレスポンス権を確保し、タイムアウト後のコミットを防ぐ
+				if (!finished.compareAndSet(false, true)) {
+					abortAsync(asyncCon, asyncAcquiredAt, sessionId);
+					return;
+				}
+				try {
+					if (e == null) {
+						// DBトランザクションのコミット
+						commit(asyncCon);
+						timer.mark(RequestPhase.COMMIT);
+					} else {
+						if (e instanceof CompletionException
+								&& e.getCause() != null) {
+							e = e.getCause();
+						}
+						page = handleException(e, req, asyncCon);
+						timer.mark(RequestPhase.ERROR);
+					}
+				} catch (Exception | Error e2) {
+					page = handleException(e2, req, asyncCon);
+					timer.mark(RequestPhase.ERROR);
+				} finally {
+					// DBコネクションのclose
+					closeConnection(asyncCon, asyncAcquiredAt);
+					if (asyncCon != null) {
+						timer.mark(RequestPhase.DB_RELEASE);
+					}
+				}
+				completeAsync(ac, page, sessionId, timer);
+			}
+		});
+	}
+
+	/**
+	 * 中断されていれば例外を発生させる.
+	 *
+	 * @param cancelled
+	 *            中断フラグ
+	 */
+	private static void throwIfCancelled(AtomicBoolean cancelled) {
+		if (cancelled.get()) {
+			throw new KtException("A065", "非同期処理がタイムアウトしたため中断します");
+		}
+	}
+
+	/**
+	 * タイムアウト後に処理が終わった場合に、DBトランザクションをロールバックしてDB接続をcloseする.
+	 * <p>
+	 * レスポンスは完了済みのため、リクエスト・レスポンスは参照しない.
+	 * </p>
+	 *
+	 * @param con
+	 *            DB接続
+	 * @param acquiredAt
+	 *            DB接続の取得日時（ナノ秒）
+	 * @param sessionId
+	 *            セッションID
+	 */
+	private void abortAsync(Connection con, long acquiredAt, String sessionId) {
+		try {
+			if (useDbConnection() && con != null && !con.isClosed()) {
+				rollback(con);
+			}
+		} catch (SQLException e) {
+			logger.errorLog("A007", "[" + sessionId + "] " + e.getMessage(), e);
+		}
+		closeConnection(con, acquiredAt);
+		logger.warnLog("A065", "[" + sessionId
+				+ "] 非同期処理がタイムアウト後に終了したため、ロールバックしました", null);
+	}
+
+	/**
+	 * 非同期モードのページ遷移を行い、非同期処理を完了する.
+	 * <p>
+	 * 呼び出し前にレスポンス済みフラグを確保しておくこと.
+	 * </p>
+	 *
+	 * @param ac
+	 *            {@link AsyncContext}
+	 * @param page
+	 *            遷移ページを示す {@link Page}オブジェクト
+	 * @param sessionId
+	 *            セッションID
+	 * @param timer
+	 *            計測中の {@link PhaseTimer}
+	 */
+	private void completeAsync(AsyncContext ac, Page page, String sessionId,
+			PhaseTimer timer) {
+		boolean dispatched = false;
+		try {
+			// ページ遷移
+			dispatched = dispatchPage((HttpServletRequest) ac.getRequest(),
+					(HttpServletResponse) ac.getResponse(), page, ac);
+			recordPhases(page, timer);
+		} finally {
+			// 終了ログ出力
+			outputEndLog(sessionId, timer);
+			if (!dispatched) {
+				try {
+					ac.complete();
+				} catch (IllegalStateException e) {
+					// 既にエラーなどで完了している場合
+					logger.warnLog("A009", e.getMessage(), e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * 非同期モードで実行中のリクエストがタイムアウトしたかを判定するオブジェクトを返す.
+	 * <p>
+	 * タイムアウト、もしくはエラーでコンテナがレスポンスを完了させた場合にtrueを返す.<br>
+	 * trueになった後はリクエスト・レスポンスがコンテナに再利用されるため、参照しないこと.<br>
+	 * {@link #execute(HttpServletRequest, HttpServletResponse, Connection)} や
+	 * {@link #executeAsync(HttpServletRequest, HttpServletResponse, Connection)}
+	 * の呼び出しスレッドで取得し、<br>
+	 * 時間のかかる処理の合間に確認すること.<br>
+	 * 別スレッドで処理を続ける場合は、取得したオブジェクトを引き渡すこと.<br>
+	 * 同期モードでは常にfalseを返す.
+	 * </p>
+	 *
+	 * @return タイムアウトした場合にtrueを返す {@link BooleanSupplier}
+	 */
+	protected final BooleanSupplier getAsyncCancellation() {
+		final AtomicBoolean cancelled = ASYNC_CANCELLED.get();
+		if (cancelled == null) {
+			return NOT_CANCELLED;
+		}
+		return new BooleanSupplier() {
+			@Override
+			public boolean getAsBoolean() {
+				return cancelled.get();
+			}
+		};
+	}
+
+	/**
+	 * 非同期モードで実行中のリクエストがタイムアウトしたかを判定する.
+	 * <p>
+	 * {@link #getAsyncCancellation()} の呼び出しスレッドでの簡易版.
+	 * </p>
+	 *
+	 * @return タイムアウトした場合はtrue
+	 */
+	protected final boolean isAsyncTimedOut() {
+		AtomicBoolean cancelled = ASYNC_CANCELLED.get();
+		return cancelled != null && cancelled.get();
 	}
 
 	/**
@@ -227,7 +881,7 @@ public abstract class BaseServlet extends HttpServlet {
 	 *         取得できなかった場合は空文字.
 	 */
 	protected final String getServerHostName() {
-		return serverHostName;
+		return ServerHostName.getInstance().get();
 	}
 
 	/**
@@ -238,10 +892,25 @@ public abstract class BaseServlet extends HttpServlet {
 	 */
 	private void outputPageLog(String message) {
 		if (isOutputPageLog()) {
-			logger.infoLog("A042", message);
+			accessLog("A042", message);
 		}
 	}
 
+	/**
+	 * アクセスログ出力.
+	 * <p>
+	 * kt.core.web.log.async が有効な場合は、バックグラウンドスレッドで出力する.
+	 * </p>
+	 *
+	 * @param code
+	 *            ログコード
+	 * @param message
+	 *            出力メッセージ
+	 */
+	private void accessLog(String code, String message) {
+		AsyncLogger.getInstance().infoLog(logger, code, message);
+	}
+
 	/**
 	 * ページ遷移先をログ出力するかの判定.
 	 * <p>
@@ -271,16 +940,22 @@ public abstract class BaseServlet extends HttpServlet {
 			HttpServletRequest req, Connection con) {
 		// リクエストに対するユニークキーを出力
 		String sessionId = getSessionId(req);
-		// ログ出力
-		if (e instanceof KtWarningException || e instanceof SocketException) {
-			// WarningException、SocketExceptionなら
-			// WARNINGレベルでログ出力
-			logger.warnLog(errorCode, "[" + sessionId + "] " + e.getMessage(),
-					e);
-		} else {
-			// それ以外のExceptionならERRORレベルでログ出力
-			logger.errorLog(errorCode, "[" + sessionId + "] " + e.getMessage(),
-					e);
+		// ログ出力（同一エラーコードが続く場合は間引く）
+		long suppressed = ErrorLogThrottle.getInstance().acquire(errorCode);
+		if (suppressed >= 0) {
+			String msg = "[" + sessionId + "] " + e.getMessage();
+			if (suppressed > 0) {
+				msg += " (同一エラーコードのログを" + suppressed + "件抑止)";
+			}
+			if (e instanceof KtWarningException
+					|| e instanceof SocketException) {
+				// WarningException、SocketExceptionなら
+				// WARNINGレベルでログ出力
+				logger.warnLog(errorCode, msg, e);
+			} else {
+				// それ以外のExceptionならERRORレベルでログ出力
+				logger.errorLog(errorCode, msg, e);
+			}
 		}
 		Page page = null;
 		try {
@@ -288,7 +963,7 @@ public abstract class BaseServlet extends HttpServlet {
 			page = createErrorPage(errorCode, e, req);
 			// DBトランザクションのロールバック
 			if (useDbConnection() && con != null && !con.isClosed()) {
-				con.rollback();
+				rollback(con);
 			}
 		} catch (Exception e2) {
 			logger.errorLog("A007", "[" + sessionId + "] " + e2.getMessage(),
@@ -297,10 +972,30 @@ public abstract class BaseServlet extends HttpServlet {
 		return page;
 	}
 
+	/**
+	 * DBトランザクションをロールバックする.
+	 *
+	 * @param con
+	 *            DB接続
+	 * @throws SQLException
+	 *             ロールバックに失敗した場合
+	 */
+	private void rollback(Connection con) throws SQLException {
+		if (!LazyConnection.isOpened(con)) {
+			// 一度も使用していない場合は何もしない
+			return;
+		}
+		long start = System.nanoTime();
+		con.rollback();
+		metrics.recordRollback(System.nanoTime() - start);
+	}
+
 	/**
 	 * エラーページ遷移用のPage作成.
 	 * <p>
-	 * 各Servletは必要に応じてこのメソッドをオーバーライドすること.
+	 * 各Servletは必要に応じてこのメソッドをオーバーライドすること.<br>
+	 * kt.core.web.errorpage.simple がtrueの場合は、JSPへforwardせず
+	 * {@link StaticErrorPage}（500）を返す.
 	 *
 	 * @param errorCode
 	 *            エラーコード
@@ -314,6 +1009,10 @@ public abstract class BaseServlet extends HttpServlet {
 	 */
 	protected Page createErrorPage(String errorCode, Throwable e,
 			HttpServletRequest req) throws URISyntaxException {
+		if (SIMPLE_ERROR_PAGE) {
+			return StaticErrorPage
+					.of(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
 		// 原因Throwableも含めてListにする
 		List<Throwable> tList = new ArrayList<Throwable>();
 		while (true) {
@@ -332,16 +1031,83 @@ public abstract class BaseServlet extends HttpServlet {
 		return page;
 	}
 
+	/**
+	 * 非同期モードで実行するServletかどうかを返す.
+	 * <p>
+	 * デフォルトはfalse（同期モード）.<br>
+	 * trueを返す場合は、web.xmlもしくは@WebServletで async-supported を有効にすること.<br>
+	 * （無効な場合は同期モードで実行される）<br>
+	 * 非同期モードでは、DB接続以降の処理を {@link #getAsyncExecutor()}
+	 * のスレッドで実行し、<br>
+	 * コンテナのスレッドはDB待ちなどで占有されない.<br>
+	 * forwardは {@link AsyncContext#dispatch(ServletContext, String)}
+	 * で行われるため、途中のFilterも async-supported にすること.
+	 * </p>
+	 *
+	 * @return 非同期モードの場合はtrue
+	 */
+	protected boolean isAsyncMode() {
+		return false;
+	}
+
+	/**
+	 * 非同期モードでメイン処理を実行するExecutorを返す.
+	 * <p>
+	 * デフォルトは kt.core.web.async.* の設定に従う共通のExecutor.<br>
+	 * Servlet単位で分けたい場合はオーバーライドする.
+	 * </p>
+	 *
+	 * @return {@link Executor}オブジェクト
+	 */
+	protected Executor getAsyncExecutor() {
+		return AsyncExecutor.getDefault();
+	}
+
+	/**
+	 * 非同期モードのメイン処理.
+	 * <p>
+	 * デフォルトは {@link #execute(HttpServletRequest, HttpServletResponse, Connection)}
+	 * を呼び出す.<br>
+	 * 外部サービスの呼び出しなどをノンブロッキングで行う場合はオーバーライドし、<br>
+	 * 完了時に遷移ページを返す {@link CompletionStage} を返すこと.<br>
+	 * DBトランザクションのコミット・ロールバック、DB接続のcloseは完了後に行われる.
+	 * </p>
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param res
+	 *            HTTPレスポンス
+	 * @param con
+	 *            DB接続
+	 * @return 遷移ページを示す {@link Page}オブジェクトの {@link CompletionStage}
+	 * @throws Exception
+	 *             処理中に例外発生した場合
+	 */
+	protected CompletionStage<Page> executeAsync(HttpServletRequest req,
+			HttpServletResponse res, Connection con) throws Exception {
+		return CompletableFuture.completedFuture(execute(req, res, con));
+	}
+
 	/**
 	 * 許可するHTTPメソッドを返す.
 	 * <p>
-	 * デフォルトは全メソッド使用可となっているため、制限したい場合はオーバーライドする.
+	 * デフォルトはGET、POST、HEADが使用可となっているため、変更したい場合はオーバーライドする.<br>
+	 * Servletの初期化時に1度だけ呼び出される.<br>
+	 * 許可していないメソッドの場合は405を返す.<br>
+	 * OPTIONSを含めない場合、OPTIONSリクエストにはAllowヘッダのみを自動で返す.<br>
+	 * GET、POST、HEAD、OPTIONS以外を許可する場合は、初回リクエスト時に警告ログを出力する.<br>
+	 * <br>
+	 * 【注意】{@link HttpMethod#values()}
+	 * は、以前はGET、POST、HEADのみだったが、現在はPUT、DELETEなども含む.<br>
+	 * values()を返すと、それらも許可される（TRACE、CONNECTは全メソッドを指定した場合は除外する）.<br>
+	 * 従来と同じ動作にする場合は、このメソッドをオーバーライドしないか、GET、POST、HEADを個別に指定すること.
 	 *
 	 * @return 許可するHTTPメソッド群
 	 */
 	protected HttpMethod[] getPermitHttpMethods() {
-		// デフォルトは全メソッド使用可
-		return HttpMethod.values();
+		// デフォルトは従来の全メソッド（GET、POST、HEAD）使用可
+		return new HttpMethod[] { HttpMethod.GET, HttpMethod.POST,
+				HttpMethod.HEAD };
 	}
 
 	/**
@@ -351,6 +1117,43 @@ public abstract class BaseServlet extends HttpServlet {
 	 */
 	protected abstract boolean useDbConnection();
 
+	/**
+	 * DB接続を遅延取得するかどうかを返す.
+	 * <p>
+	 * デフォルトはfalse（リクエスト開始時に取得）.<br>
+	 * trueを返す場合は、{@link #execute(HttpServletRequest, HttpServletResponse, Connection)}
+	 * などで<br>
+	 * 初めて{@link Connection}を使用した時点でコネクションプールから取得する.<br>
+	 * 一度も使用しなかった場合は、コミット・ロールバック・closeも行われない.
+	 * </p>
+	 *
+	 * @return 遅延取得する場合はtrue
+	 */
+	protected boolean isLazyDbConnection() {
+		return false;
+	}
+
+	/**
+	 * DB接続を遅延取得したリクエスト数を返す.
+	 *
+	 * @return リクエスト数
+	 */
+	public static long getLazyDbConnectionCount() {
+		return LazyConnection.getRequestCount();
+	}
+
+	/**
+	 * DB接続を遅延取得し、一度もDB接続を使用しなかったリクエスト数を返す.
+	 * <p>
+	 * コネクションプールから取得せずに済んだリクエスト数となる.
+	 * </p>
+	 *
+	 * @return リクエスト数
+	 */
+	public static long getUnusedDbConnectionCount() {
+		return LazyConnection.getUnusedCount();
+	}
+
 	/**
 	 * DB接続先のJNDI名を取得する.
 	 * <p>
@@ -420,6 +1223,201 @@ public abstract class BaseServlet extends HttpServlet {
 		return true;
 	}
 
+	/**
+	 * ログイン判定結果をセッションにキャッシュする秒数を返す.
+	 * <p>
+	 * デフォルトは0（キャッシュせず、毎回
+	 * {@link #isLogin(HttpServletRequest, HttpServletResponse)} を呼び出す）.<br>
+	 * 1以上を返す場合、ログイン状態と判定された結果をその秒数セッションに保持し、<br>
+	 * 期限内は {@link #isLogin(HttpServletRequest, HttpServletResponse)}
+	 * を呼び出さない.<br>
+	 * そのため、isLogin内でリクエスト属性の設定などの副作用がある場合は、1以上を返してはならない.<br>
+	 * メイン処理でログインユーザの情報が必要な場合は、
+	 * {@link #createLoginPrincipal(HttpServletRequest, HttpServletResponse)}
+	 * で生成し、<br>
+	 * {@link #getLoginPrincipal(HttpServletRequest)} で取得すること（判定結果と共にキャッシュされる）.<br>
+	 * ログアウト時や権限変更時は {@link #invalidateLoginCache(HttpServletRequest)}
+	 * を呼び出すこと.
+	 * </p>
+	 *
+	 * @return キャッシュする秒数
+	 */
+	protected long getLoginCacheSeconds() {
+		return 0;
+	}
+
+	/**
+	 * ログイン状態と判定された場合に、ログインユーザの情報を生成する.
+	 * <p>
+	 * {@link #isLogin(HttpServletRequest, HttpServletResponse)}
+	 * がtrueを返した直後に呼び出され、<br>
+	 * 戻り値はメイン処理などから {@link #getLoginPrincipal(HttpServletRequest)} で取得できる.<br>
+	 * {@link #getLoginCacheSeconds()} が1以上の場合は判定結果と共にセッションに保持され、<br>
+	 * 期限内はisLoginと共に呼び出されない.<br>
+	 * デフォルトはnullを返す.
+	 * </p>
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param res
+	 *            HTTPレスポンス
+	 * @return ログインユーザの情報（セッションに保持するため {@link Serializable} であること）
+	 * @throws Exception
+	 *             処理中に例外発生した場合
+	 */
+	protected Serializable createLoginPrincipal(HttpServletRequest req,
+			HttpServletResponse res) throws Exception {
+		return null;
+	}
+
+	/**
+	 * ログインユーザの情報を取得する.
+	 * <p>
+	 * {@link #createLoginPrincipal(HttpServletRequest, HttpServletResponse)}
+	 * で生成したもの、<br>
+	 * もしくはキャッシュしていたものを返す.
+	 * </p>
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @return ログインユーザの情報.<br>
+	 *         ログイン判定前、もしくは生成していない場合はnull.
+	 */
+	protected final Serializable getLoginPrincipal(HttpServletRequest req) {
+		return (Serializable) req.getAttribute(LOGIN_PRINCIPAL_ATTRIBUTE);
+	}
+
+	/**
+	 * ログイン判定結果のキャッシュを破棄する.
+	 * <p>
+	 * 全Servletのキャッシュが対象となる.<br>
+	 * BaseServletを継承していないログアウト処理などからも呼び出せる.
+	 * </p>
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 */
+	public static void invalidateLoginCache(HttpServletRequest req) {
+		HttpSession session = req.getSession(false);
+		if (session == null) {
+			return;
+		}
+		try {
+			for (String name : Collections.list(session.getAttributeNames())) {
+				if (name.startsWith(LOGIN_CACHE_ATTRIBUTE)) {
+					session.removeAttribute(name);
+				}
+			}
+		} catch (IllegalStateException e) {
+			// 既に無効化されたセッション
+		}
+	}
+
+	/**
+	 * キャッシュを考慮したログイン判定.
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param res
+	 *            HTTPレスポンス
+	 * @return ログイン状態の場合はtrue
+	 * @throws Exception
+	 *             処理中に例外発生した場合
+	 */
+	private boolean checkLogin(HttpServletRequest req, HttpServletResponse res)
+			throws Exception {
+		long cacheSeconds = getLoginCacheSeconds();
+		if (cacheSeconds <= 0) {
+			if (!isLogin(req, res)) {
+				return false;
+			}
+			setLoginPrincipal(req, createLoginPrincipal(req, res));
+			return true;
+		}
+		String attributeName = LOGIN_CACHE_ATTRIBUTE + getClass().getName();
+		HttpSession session = req.getSession(false);
+		if (session != null) {
+			Object cache = session.getAttribute(attributeName);
+			if (cache instanceof LoginCache
+					&& ((LoginCache) cache).isValid(System.currentTimeMillis())) {
+				metrics.recordLoginCache(true);
+				setLoginPrincipal(req, ((LoginCache) cache).principal);
+				return true;
+			}
+		}
+		metrics.recordLoginCache(false);
+		boolean isLogin = isLogin(req, res);
+		if (isLogin) {
+			Serializable principal = createLoginPrincipal(req, res);
+			setLoginPrincipal(req, principal);
+			// ログイン状態の場合のみ保持する（isLogin内でセッションが作られる場合もある）
+			session = req.getSession(false);
+			if (session != null) {
+				session.setAttribute(attributeName, new LoginCache(
+						System.currentTimeMillis()
+								+ TimeUnit.SECONDS.toMillis(cacheSeconds),
+						principal));
+			}
+		}
+		return isLogin;
+	}
+
+	/**
+	 * ログインユーザの情報をリクエストに保持する.
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param principal
+	 *            ログインユーザの情報
+	 */
+	private static void setLoginPrincipal(HttpServletRequest req,
+			Serializable principal) {
+		if (principal != null) {
+			req.setAttribute(LOGIN_PRINCIPAL_ATTRIBUTE, principal);
+		}
+	}
+
+	/**
+	 * セッションに保持するログイン判定結果.
+	 * <p>
+	 * セッションのレプリケーションなどで別サーバに移る場合も考慮して、期限は時刻で持つ.
+	 * </p>
+	 */
+	private static final class LoginCache implements Serializable {
+		/** シリアルバージョンUID */
+		private static final long serialVersionUID = 1L;
+
+		/** 有効期限（エポックミリ秒） */
+		private final long expiresAt;
+
+		/** ログインユーザの情報 */
+		private final Serializable principal;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param expiresAt
+		 *            有効期限（エポックミリ秒）
+		 * @param principal
+		 *            ログインユーザの情報
+		 */
+		LoginCache(long expiresAt, Serializable principal) {
+			this.expiresAt = expiresAt;
+			this.principal = principal;
+		}
+
+		/**
+		 * 有効期限内かどうか.
+		 *
+		 * @param now
+		 *            現在時刻（エポックミリ秒）
+		 * @return 有効期限内の場合はtrue
+		 */
+		boolean isValid(long now) {
+			return now < expiresAt;
+		}
+	}
+
 	/**
 	 * 要ログインなのにログインしていない場合の遷移先を返す.
 	 * <p>
@@ -462,12 +1460,12 @@ public abstract class BaseServlet extends HttpServlet {
 	private void checkIp(HttpServletRequest req, Connection con)
 			throws Exception {
 		// 許可されたIPアドレス群が1件以上ある場合のみチェックする
-		List<String> ipList = getPermitIpList(req, con);
-		if (ipList != null && ipList.size() >= 1) {
+		IpMatcher matcher = getPermitIpMatcher(req, con);
+		if (matcher != null && !matcher.isEmpty()) {
 			// 接続元IPアドレス
 			String ipAddress = getClientIpAddress(req);
 			// 許可されたIPアドレスで無い場合は、Exception
-			if (!ipList.contains(ipAddress)) {
+			if (!matcher.matches(ipAddress)) {
 				throw new KtException("B038", "ご利用のIPアドレスからは接続が許可されていません ["
 						+ ipAddress + "]");
 			}
@@ -493,6 +1491,159 @@ public abstract class BaseServlet extends HttpServlet {
 		return null;
 	}
 
+	/**
+	 * 許可されたIPアドレスの判定クラスを取得する.
+	 * <p>
+	 * デフォルトは {@link #getPermitIpList(HttpServletRequest, Connection)}
+	 * の結果から生成する.<br>
+	 * IPアドレス群にはCIDR表記（192.168.0.0/24、2001:db8::/32 など）も指定できる.<br>
+	 * {@link #getPermitIpCacheSeconds()} が1以上の場合は、生成結果をその秒数キャッシュし、<br>
+	 * 期限切れ後は1リクエストのみが再取得する（その間、他のリクエストは古い結果で判定する）.<br>
+	 * キャッシュしない場合も、IPアドレス群の内容が直前と同じであれば、生成済みのものを再利用する.<br>
+	 * 独自の判定を行う場合はオーバーライドする.
+	 * </p>
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param con
+	 *            DB接続
+	 * @return {@link IpMatcher}オブジェクト.<br>
+	 *         IP制限しない場合はnull.
+	 * @throws Exception
+	 *             処理中に例外発生した場合
+	 */
+	protected IpMatcher getPermitIpMatcher(HttpServletRequest req,
+			Connection con) throws Exception {
+		long cacheSeconds = getPermitIpCacheSeconds();
+		if (cacheSeconds <= 0) {
+			return compilePermitIpList(getPermitIpList(req, con));
+		}
+		IpMatcherCache cache = ipMatcherCache;
+		long now = System.nanoTime();
+		if (cache != null
+				&& (now - cache.expiresAt < 0 || !ipMatcherRefreshing
+						.compareAndSet(false, true))) {
+			// 期限内、もしくは他のリクエストが再取得中
+			return cache.matcher;
+		}
+		try {
+			IpMatcher matcher = IpMatcher.compile(getPermitIpList(req, con));
+			ipMatcherCache = new IpMatcherCache(matcher, now
+					+ TimeUnit.SECONDS.toNanos(cacheSeconds));
+			return matcher;
+		} finally {
+			if (cache != null) {
+				ipMatcherRefreshing.set(false);
+			}
+		}
+	}
+
+	/**
+	 * 許可されたIPアドレス群から判定クラスを生成する.
+	 * <p>
+	 * 直前と同じ内容の場合は、生成済みのものを返す.
+	 * </p>
+	 *
+	 * @param list
+	 *            許可されたIPアドレス群
+	 * @return {@link IpMatcher}オブジェクト.<br>
+	 *         IPアドレス群がnull、もしくは空の場合はnull.
+	 */
+	private IpMatcher compilePermitIpList(List<String> list) {
+		if (list == null || list.isEmpty()) {
+			return null;
+		}
+		int hash = list.hashCode();
+		CompiledIpList last = lastIpList;
+		if (last != null && last.hash == hash && last.entries.equals(list)) {
+			return last.matcher;
+		}
+		// 呼び出し元でListが変更されても判定できるように、コピーを保持する
+		List<String> entries = new ArrayList<String>(list);
+		IpMatcher matcher = IpMatcher.compile(entries);
+		lastIpList = new CompiledIpList(entries, hash, matcher);
+		return matcher;
+	}
+
+	/**
+	 * 許可されたIPアドレスの判定クラスをキャッシュする秒数を返す.
+	 * <p>
+	 * デフォルトは0（キャッシュしない）.<br>
+	 * 許可IPアドレス群がリクエストによらない場合のみ、オーバーライドして1以上を返すこと.
+	 * </p>
+	 *
+	 * @return キャッシュする秒数
+	 */
+	protected long getPermitIpCacheSeconds() {
+		return 0;
+	}
+
+	/**
+	 * 許可されたIPアドレスの判定クラスを即時に破棄する.
+	 * <p>
+	 * 次のリクエストで {@link #getPermitIpList(HttpServletRequest, Connection)}
+	 * から再生成される.
+	 * </p>
+	 */
+	protected final void clearPermitIpCache() {
+		ipMatcherCache = null;
+		lastIpList = null;
+	}
+
+	/**
+	 * 直前に生成した許可IPアドレスの判定クラス.
+	 */
+	private static final class CompiledIpList {
+		/** 生成元のIPアドレス群 */
+		private final List<String> entries;
+
+		/** 生成元のIPアドレス群のハッシュ値 */
+		private final int hash;
+
+		/** 判定クラス */
+		private final IpMatcher matcher;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param entries
+		 *            生成元のIPアドレス群
+		 * @param hash
+		 *            生成元のIPアドレス群のハッシュ値
+		 * @param matcher
+		 *            判定クラス
+		 */
+		CompiledIpList(List<String> entries, int hash, IpMatcher matcher) {
+			this.entries = entries;
+			this.hash = hash;
+			this.matcher = matcher;
+		}
+	}
+
+	/**
+	 * キャッシュした許可IPアドレスの判定クラス.
+	 */
+	private static final class IpMatcherCache {
+		/** 判定クラス */
+		private final IpMatcher matcher;
+
+		/** 有効期限（{@link System#nanoTime()}） */
+		private final long expiresAt;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param matcher
+		 *            判定クラス
+		 * @param expiresAt
+		 *            有効期限（{@link System#nanoTime()}）
+		 */
+		IpMatcherCache(IpMatcher matcher, long expiresAt) {
+			this.matcher = matcher;
+			this.expiresAt = expiresAt;
+		}
+	}
+
 	/**
 	 * web.xmlからコンテキストパラメータ（context-paramタグの値）を取得する.
 	 *
@@ -527,7 +1678,7 @@ public abstract class BaseServlet extends HttpServlet {
 		log.append("] ");
 		// 端末区分を出力
 		log.append("[type]");
-		Device device = Device.getInstance(req, logger);
+		Device device = getDevice(req);
 		log.append(device.getClass().getSimpleName());
 		log.append(" ");
 		// アクセスしてきたメソッドを出力
@@ -558,35 +1709,34 @@ public abstract class BaseServlet extends HttpServlet {
 		return log.toString();
 	}
 
+	/**
+	 * アクセス端末区分を取得する.
+	 * <p>
+	 * 同一リクエスト内ではユーザエージェントの解析は1回のみ行われ、<br>
+	 * カスタムタグなどと同じ{@link Device}オブジェクトが共有される.
+	 * </p>
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @return {@link Device}オブジェクト
+	 */
+	protected final Device getDevice(HttpServletRequest req) {
+		return Device.getInstance(req, logger);
+	}
+
 	/**
 	 * ヒープメモリの使用状況をログ出力するためのメッセージ生成.
 	 *
+	 * @param status
+	 *            ヒープメモリ使用状況
 	 * @return ログ出力用のメッセージ
 	 */
-	private String createMemoryStatusText() {
-		MemoryMXBean mbean = ManagementFactory.getMemoryMXBean();
-		MemoryUsage heapUsage = mbean.getHeapMemoryUsage();
-		long init = heapUsage.getInit();
-		long used = heapUsage.getUsed();
-		long committed = heapUsage.getCommitted();
-		long max = heapUsage.getMax();
+	private String createMemoryStatusText(MemoryStatus status) {
 		StringBuilder log = new StringBuilder();
 		log.append("[");
-		log.append(serverHostName);
+		log.append(getServerHostName());
 		log.append("] ");
-		log.append("メモリ状況 [init=");
-		log.append(DECIMAL_FORMAT.format(init));
-		log.append("] [used=");
-		log.append(DECIMAL_FORMAT.format(used));
-		log.append("(");
-		log.append(used * 100 / max);
-		log.append("%)] [committed=");
-		log.append(DECIMAL_FORMAT.format(committed));
-		log.append("(");
-		log.append(committed * 100 / max);
-		log.append("%)] [max=");
-		log.append(DECIMAL_FORMAT.format(max));
-		log.append("]");
+		log.append(status.toString());
 		return log.toString();
 	}
 
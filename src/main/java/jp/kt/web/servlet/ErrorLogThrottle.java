@@ -0,0 +1,102 @@
+package jp.kt.web.servlet;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.kt.web.WebProperties;
+
+/**
+ * エラーコードごとにログ出力を間引くクラス.
+ * <p>
+ * kt.core.web.error.log.throttle.interval（ミリ秒）の間に、<br>
+ * 同一エラーコードのログを kt.core.web.error.log.throttle.count 件まで出力し、以降は抑止する.<br>
+ * 抑止した件数は、次に出力するログに付加する.<br>
+ * 間隔に0以下を指定した場合は間引かない.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class ErrorLogThrottle {
+	/** 唯一のインスタンス */
+	private static final ErrorLogThrottle INSTANCE = new ErrorLogThrottle();
+
+	/** 判定間隔（ミリ秒） */
+	private final long intervalMillis;
+
+	/** 判定間隔ごとの最大出力件数 */
+	private final int limit;
+
+	/** エラーコードごとの出力状況 */
+	private final ConcurrentMap<String, Window> windows = new ConcurrentHashMap<>();
+
+	/**
+	 * 内部コンストラクタ.
+	 */
+	private ErrorLogThrottle() {
+		this.intervalMillis = WebProperties.getLong(
+				"kt.core.web.error.log.throttle.interval", 0);
+		this.limit = WebProperties.getInt("kt.core.web.error.log.throttle.count",
+				10);
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link ErrorLogThrottle}オブジェクト
+	 */
+	static ErrorLogThrottle getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * ログを出力してよいか判定する.
+	 *
+	 * @param errorCode
+	 *            エラーコード
+	 * @return 出力する場合は、前回の出力以降に抑止した件数.<br>
+	 *         抑止する場合は-1.
+	 */
+	long acquire(String errorCode) {
+		if (intervalMillis <= 0 || errorCode == null) {
+			return 0;
+		}
+		Window w = windows.get(errorCode);
+		if (w == null) {
+			w = new Window();
+			Window old = windows.putIfAbsent(errorCode, w);
+			if (old != null) {
+				w = old;
+			}
+		}
+		long now = System.currentTimeMillis();
+		if (now - w.start >= intervalMillis) {
+			synchronized (w) {
+				if (now - w.start >= intervalMillis) {
+					w.count.set(0);
+					w.start = now;
+				}
+			}
+		}
+		if (w.count.incrementAndGet() <= limit) {
+			return w.suppressed.getAndSet(0);
+		}
+		w.suppressed.incrementAndGet();
+		return -1;
+	}
+
+	/**
+	 * エラーコードごとの出力状況.
+	 */
+	private static final class Window {
+		/** 判定間隔の開始日時（ミリ秒） */
+		volatile long start;
+
+		/** 判定間隔内の出力件数 */
+		final AtomicInteger count = new AtomicInteger();
+
+		/** 抑止した件数 */
+		final AtomicLong suppressed = new AtomicLong();
+	}
+}
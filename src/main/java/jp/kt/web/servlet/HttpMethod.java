@@ -1,7 +1,14 @@
 package jp.kt.web.servlet;
 
+import java.util.Locale;
+
 /**
  * HTTPメソッド.
+ * <p>
+ * 以前はGET、POST、HEADのみだったため、{@link #values()}
+ * を許可メソッドとしている場合は注意すること.<br>
+ * 詳細は {@link BaseServlet#getPermitHttpMethods()} を参照.
+ * </p>
  * 
  * @author tatsuya.kumon
  */
@@ -13,5 +20,64 @@ public enum HttpMethod {
 	POST,
 
 	/** HEADリクエスト */
-	HEAD;
+	HEAD,
+
+	/** PUTリクエスト */
+	PUT,
+
+	/** DELETEリクエスト */
+	DELETE,
+
+	/** PATCHリクエスト */
+	PATCH,
+
+	/** OPTIONSリクエスト */
+	OPTIONS,
+
+	/** TRACEリクエスト */
+	TRACE,
+
+	/** CONNECTリクエスト */
+	CONNECT;
+
+	/**
+	 * メソッド名から取得する.
+	 * <p>
+	 * 大文字小文字は区別しない.
+	 * </p>
+	 *
+	 * @param method
+	 *            メソッド名
+	 * @return {@link HttpMethod}.<br>
+	 *         該当なしの場合はnull.
+	 */
+	public static HttpMethod of(String method) {
+		if (method == null) {
+			return null;
+		}
+		switch (method) {
+		case "GET":
+			return GET;
+		case "POST":
+			return POST;
+		case "HEAD":
+			return HEAD;
+		case "PUT":
+			return PUT;
+		case "DELETE":
+			return DELETE;
+		case "PATCH":
+			return PATCH;
+		case "OPTIONS":
+			return OPTIONS;
+		case "TRACE":
+			return TRACE;
+		case "CONNECT":
+			return CONNECT;
+		default:
+			// 小文字が含まれる場合は大文字にして再判定
+			String upper = method.toUpperCase(Locale.ENGLISH);
+			return upper.equals(method) ? null : of(upper);
+		}
+	}
 }
@@ -0,0 +1,402 @@
+package jp.kt.web.servlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 許可IPアドレスの判定クラス.
+ * <p>
+ * IPv4、IPv6のアドレス、およびCIDR表記（192.168.0.0/24、2001:db8::/32 など）を<br>
+ * 128ビットのアドレス範囲に変換し、ソート・統合した配列を二分探索して判定する.<br>
+ * IPv4はIPv4射影アドレス（::ffff:0:0/96）として扱う.<br>
+ * アドレスとして解釈できない値は、従来通り文字列の完全一致で判定する.<br>
+ * 生成後は変更されないため、複数スレッドから参照可能.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class IpMatcher {
+	/** IPv4射影アドレスの上位64ビット */
+	private static final long IPV4_MAPPED_HI = 0L;
+
+	/** IPv4射影アドレスの下位64ビットのプレフィックス（::ffff:0:0） */
+	private static final long IPV4_MAPPED_LO = 0xffffL << 32;
+
+	/** 範囲の開始（上位64ビット） */
+	private final long[] startHi;
+
+	/** 範囲の開始（下位64ビット） */
+	private final long[] startLo;
+
+	/** 範囲の終了（上位64ビット） */
+	private final long[] endHi;
+
+	/** 範囲の終了（下位64ビット） */
+	private final long[] endLo;
+
+	/** アドレスとして解釈できなかった値 */
+	private final Set<String> literals;
+
+	/**
+	 * 内部コンストラクタ.
+	 *
+	 * @param ranges
+	 *            ソート・統合済みの範囲
+	 * @param literals
+	 *            アドレスとして解釈できなかった値
+	 */
+	private IpMatcher(List<long[]> ranges, Set<String> literals) {
+		int size = ranges.size();
+		this.startHi = new long[size];
+		this.startLo = new long[size];
+		this.endHi = new long[size];
+		this.endLo = new long[size];
+		for (int i = 0; i < size; i++) {
+			long[] r = ranges.get(i);
+			startHi[i] = r[0];
+			startLo[i] = r[1];
+			endHi[i] = r[2];
+			endLo[i] = r[3];
+		}
+		this.literals = literals;
+	}
+
+	/**
+	 * 許可IPアドレス群から生成する.
+	 *
+	 * @param entries
+	 *            IPアドレス、もしくはCIDR表記の文字列群
+	 * @return {@link IpMatcher}オブジェクト
+	 */
+	public static IpMatcher compile(Collection<String> entries) {
+		List<long[]> ranges = new ArrayList<>();
+		Set<String> literals = new HashSet<>();
+		if (entries != null) {
+			for (String entry : entries) {
+				if (entry == null) {
+					continue;
+				}
+				long[] range = parseRange(entry.trim());
+				if (range == null) {
+					literals.add(entry);
+				} else {
+					ranges.add(range);
+				}
+			}
+		}
+		// 開始アドレス順にソートし、重複・隣接する範囲を統合する
+		Collections.sort(ranges, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] o1, long[] o2) {
+				return compare128(o1[0], o1[1], o2[0], o2[1]);
+			}
+		});
+		List<long[]> merged = new ArrayList<>();
+		for (long[] r : ranges) {
+			if (!merged.isEmpty()) {
+				long[] last = merged.get(merged.size() - 1);
+				// 直前の範囲の終了+1以下から始まる場合は統合
+				boolean adjacent = last[2] == -1L && last[3] == -1L;
+				if (!adjacent) {
+					long nextLo = last[3] + 1;
+					long nextHi = nextLo == 0 ? last[2] + 1 : last[2];
+					adjacent = compare128(r[0], r[1], nextHi, nextLo) <= 0;
+				}
+				if (adjacent) {
+					if (compare128(r[2], r[3], last[2], last[3]) > 0) {
+						last[2] = r[2];
+						last[3] = r[3];
+					}
+					continue;
+				}
+			}
+			merged.add(r.clone());
+		}
+		return new IpMatcher(merged, literals);
+	}
+
+	/**
+	 * 判定対象が1件もないかどうか.
+	 *
+	 * @return 1件もない場合はtrue
+	 */
+	public boolean isEmpty() {
+		return startHi.length == 0 && literals.isEmpty();
+	}
+
+	/**
+	 * 許可されたIPアドレスかどうかを判定する.
+	 *
+	 * @param ipAddress
+	 *            IPアドレス
+	 * @return 許可されている場合はtrue
+	 */
+	public boolean matches(String ipAddress) {
+		if (ipAddress == null) {
+			return false;
+		}
+		long[] address = parseAddress(ipAddress.trim());
+		if (address != null && startHi.length > 0) {
+			long hi = address[0];
+			long lo = address[1];
+			// 開始アドレスが対象以下の最後の範囲を二分探索
+			int low = 0;
+			int high = startHi.length - 1;
+			int found = -1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				if (compare128(startHi[mid], startLo[mid], hi, lo) <= 0) {
+					found = mid;
+					low = mid + 1;
+				} else {
+					high = mid - 1;
+				}
+			}
+			if (found >= 0
+					&& compare128(hi, lo, endHi[found], endLo[found]) <= 0) {
+				return true;
+			}
+		}
+		return literals.contains(ipAddress);
+	}
+
+	/**
+	 * 128ビットの符号なし整数を比較する.
+	 *
+	 * @param hi1
+	 *            値1の上位64ビット
+	 * @param lo1
+	 *            値1の下位64ビット
+	 * @param hi2
+	 *            値2の上位64ビット
+	 * @param lo2
+	 *            値2の下位64ビット
+	 * @return 値1が小さい場合は負、等しい場合は0、大きい場合は正
+	 */
+	private static int compare128(long hi1, long lo1, long hi2, long lo2) {
+		int c = Long.compare(hi1 + Long.MIN_VALUE, hi2 + Long.MIN_VALUE);
+		if (c != 0) {
+			return c;
+		}
+		return Long.compare(lo1 + Long.MIN_VALUE, lo2 + Long.MIN_VALUE);
+	}
+
+	/**
+	 * IPアドレス、もしくはCIDR表記を範囲に変換する.
+	 *
+	 * @param entry
+	 *            IPアドレス、もしくはCIDR表記
+	 * @return 開始上位、開始下位、終了上位、終了下位の配列.<br>
+	 *         解釈できない場合はnull.
+	 */
+	private static long[] parseRange(String entry) {
+		int slash = entry.indexOf('/');
+		String addressPart = slash < 0 ? entry : entry.substring(0, slash);
+		long[] address = parseAddress(addressPart);
+		if (address == null) {
+			return null;
+		}
+		int prefix = 128;
+		if (slash >= 0) {
+			int bits = parseDecimal(entry.substring(slash + 1), 128);
+			if (bits < 0) {
+				return null;
+			}
+			if (addressPart.indexOf(':') < 0) {
+				// IPv4のプレフィックス長は射影アドレスの下位32ビットに対するもの
+				if (bits > 32) {
+					return null;
+				}
+				bits += 96;
+			}
+			prefix = bits;
+		}
+		long maskHi = prefix >= 64 ? -1L : (prefix == 0 ? 0 : -1L << (64 - prefix));
+		long maskLo = prefix <= 64 ? 0 : (prefix == 128 ? -1L
+				: -1L << (128 - prefix));
+		return new long[] { address[0] & maskHi, address[1] & maskLo,
+				address[0] | ~maskHi, address[1] | ~maskLo };
+	}
+
+	/**
+	 * IPアドレスを128ビットの値に変換する.
+	 *
+	 * @param s
+	 *            IPアドレス
+	 * @return 上位64ビット、下位64ビットの配列.<br>
+	 *         解釈できない場合はnull.
+	 */
+	static long[] parseAddress(String s) {
+		if (s.isEmpty()) {
+			return null;
+		}
+		if (s.indexOf(':') < 0) {
+			long v4 = parseIpv4(s);
+			if (v4 < 0) {
+				return null;
+			}
+			return new long[] { IPV4_MAPPED_HI, IPV4_MAPPED_LO | v4 };
+		}
+		return parseIpv6(s);
+	}
+
+	/**
+	 * IPv4アドレスを32ビットの値に変換する.
+	 *
+	 * @param s
+	 *            IPv4アドレス（ドット区切り10進数4つ）
+	 * @return 32ビットの値.<br>
+	 *         解釈できない場合は-1.
+	 */
+	private static long parseIpv4(String s) {
+		long value = 0;
+		int parts = 0;
+		int begin = 0;
+		while (begin <= s.length()) {
+			int dot = s.indexOf('.', begin);
+			int end = dot < 0 ? s.length() : dot;
+			int octet = parseDecimal(s.substring(begin, end), 255);
+			if (octet < 0 || ++parts > 4) {
+				return -1;
+			}
+			value = (value << 8) | octet;
+			if (dot < 0) {
+				break;
+			}
+			begin = dot + 1;
+		}
+		return parts == 4 ? value : -1;
+	}
+
+	/**
+	 * IPv6アドレスを128ビットの値に変換する.
+	 *
+	 * @param s
+	 *            IPv6アドレス（「::」による省略、末尾のIPv4表記、[]、ゾーンIDも可）
+	 * @return 上位64ビット、下位64ビットの配列.<br>
+	 *         解釈できない場合はnull.
+	 */
+	private static long[] parseIpv6(String s) {
+		if (s.startsWith("[") && s.endsWith("]")) {
+			s = s.substring(1, s.length() - 1);
+		}
+		int zone = s.indexOf('%');
+		if (zone >= 0) {
+			s = s.substring(0, zone);
+		}
+		int[] groups = new int[8];
+		int count = 0;
+		int compressAt = -1;
+		int i = 0;
+		int len = s.length();
+		if (s.startsWith("::")) {
+			compressAt = 0;
+			i = 2;
+			if (len == 2) {
+				return new long[] { 0, 0 };
+			}
+		} else if (s.startsWith(":")) {
+			return null;
+		}
+		while (i < len) {
+			int colon = s.indexOf(':', i);
+			int end = colon < 0 ? len : colon;
+			String token = s.substring(i, end);
+			if (colon < 0 && token.indexOf('.') >= 0) {
+				// 末尾のIPv4表記
+				long v4 = parseIpv4(token);
+				if (v4 < 0 || count > 6) {
+					return null;
+				}
+				groups[count++] = (int) (v4 >>> 16);
+				groups[count++] = (int) (v4 & 0xffff);
+				break;
+			}
+			if (token.isEmpty() || token.length() > 4 || count >= 8) {
+				return null;
+			}
+			int group = 0;
+			for (int j = 0; j < token.length(); j++) {
+				int d = Character.digit(token.charAt(j), 16);
+				if (d < 0) {
+					return null;
+				}
+				group = (group << 4) | d;
+			}
+			groups[count++] = group;
+			if (colon < 0) {
+				break;
+			}
+			if (colon + 1 < len && s.charAt(colon + 1) == ':') {
+				// 「::」による省略
+				if (compressAt >= 0) {
+					return null;
+				}
+				compressAt = count;
+				i = colon + 2;
+			} else if (colon + 1 == len) {
+				// 末尾が「:」1つ
+				return null;
+			} else {
+				i = colon + 1;
+			}
+		}
+		if (compressAt >= 0) {
+			if (count >= 8) {
+				return null;
+			}
+			// 省略された0のグループを補う
+			int tail = count - compressAt;
+			int[] expanded = new int[8];
+			System.arraycopy(groups, 0, expanded, 0, compressAt);
+			System.arraycopy(groups, compressAt, expanded, 8 - tail, tail);
+			groups = expanded;
+		} else if (count != 8) {
+			return null;
+		}
+		long hi = 0;
+		long lo = 0;
+		for (int g = 0; g < 4; g++) {
+			hi = (hi << 16) | groups[g];
+			lo = (lo << 16) | groups[g + 4];
+		}
+		return new long[] { hi, lo };
+	}
+
+	/**
+	 * 10進数の文字列を数値に変換する.
+	 *
+	 * @param s
+	 *            文字列
+	 * @param max
+	 *            最大値
+	 * @return 数値.<br>
+	 *         数字以外を含む場合、空の場合、最大値を超える場合は-1.
+	 */
+	private static int parseDecimal(String s, int max) {
+		if (s.isEmpty() || s.length() > 3) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value > max ? -1 : value;
+	}
+
+	@Override
+	public String toString() {
+		return "IpMatcher [ranges=" + startHi.length + ", literals="
+				+ Arrays.toString(literals.toArray()) + "]";
+	}
+}
@@ -0,0 +1,201 @@
+package jp.kt.web.servlet;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.kt.db.DbConnectManager;
+import jp.kt.web.metrics.ServletMetrics;
+
+/**
+ * 初めて使用された時点でDB接続を取得する {@link Connection} のプロキシ.
+ * <p>
+ * 接続を取得するまでは、commit、rollback、closeは何もしない.<br>
+ * それ以外のメソッドが呼ばれた時点でコネクションプールから取得し、以降は委譲する.<br>
+ * 取得待ち時間と保持時間（取得からcloseまで）は {@link ServletMetrics} に記録する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class LazyConnection implements InvocationHandler {
+	/** 遅延取得の対象となったリクエスト数 */
+	private static final AtomicLong REQUEST_COUNT = new AtomicLong();
+
+	/** 一度もDB接続を取得しなかったリクエスト数 */
+	private static final AtomicLong UNUSED_COUNT = new AtomicLong();
+
+	/** DB接続先のJNDI名 */
+	private final String jndiName;
+
+	/** 計測値の記録先 */
+	private final ServletMetrics metrics;
+
+	/** DB接続を取得した時刻（{@link System#nanoTime()}） */
+	private long openedAt;
+
+	/** 実際のDB接続（未取得の場合はnull） */
+	private Connection target;
+
+	/** close済みフラグ */
+	private boolean closed;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param jndiName
+	 *            DB接続先のJNDI名
+	 * @param metrics
+	 *            計測値の記録先
+	 */
+	private LazyConnection(String jndiName, ServletMetrics metrics) {
+		this.jndiName = jndiName;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * 遅延取得する {@link Connection} を生成する.
+	 *
+	 * @param jndiName
+	 *            DB接続先のJNDI名
+	 * @param metrics
+	 *            計測値の記録先
+	 * @return {@link Connection}のプロキシ
+	 */
+	static Connection create(String jndiName, ServletMetrics metrics) {
+		REQUEST_COUNT.incrementAndGet();
+		return (Connection) Proxy.newProxyInstance(
+				LazyConnection.class.getClassLoader(),
+				new Class<?>[] { Connection.class }, new LazyConnection(
+						jndiName, metrics));
+	}
+
+	/**
+	 * 遅延取得する {@link Connection} であれば、その {@link LazyConnection} を取得する.
+	 *
+	 * @param con
+	 *            DB接続
+	 * @return {@link LazyConnection}オブジェクト.<br>
+	 *         遅延取得するものでない場合はnull.
+	 */
+	private static LazyConnection getHandler(Connection con) {
+		if (con == null || !Proxy.isProxyClass(con.getClass())) {
+			return null;
+		}
+		InvocationHandler handler = Proxy.getInvocationHandler(con);
+		if (handler instanceof LazyConnection) {
+			return (LazyConnection) handler;
+		}
+		return null;
+	}
+
+	/**
+	 * 遅延取得する {@link Connection} かどうか.
+	 *
+	 * @param con
+	 *            DB接続
+	 * @return 遅延取得するものの場合はtrue
+	 */
+	static boolean isLazy(Connection con) {
+		return getHandler(con) != null;
+	}
+
+	/**
+	 * 実際にDB接続を取得済みかどうか.
+	 *
+	 * @param con
+	 *            DB接続
+	 * @return 取得済みの場合はtrue.<br>
+	 *         遅延取得するものでない場合は常にtrue.
+	 */
+	static boolean isOpened(Connection con) {
+		LazyConnection handler = getHandler(con);
+		return handler == null || handler.target != null;
+	}
+
+	/**
+	 * リクエスト終了時に、DB接続を取得したかどうかを集計する.
+	 *
+	 * @param con
+	 *            DB接続
+	 */
+	static void record(Connection con) {
+		LazyConnection handler = getHandler(con);
+		if (handler != null && handler.target == null) {
+			UNUSED_COUNT.incrementAndGet();
+		}
+	}
+
+	/**
+	 * 遅延取得の対象となったリクエスト数を取得する.
+	 *
+	 * @return リクエスト数
+	 */
+	static long getRequestCount() {
+		return REQUEST_COUNT.get();
+	}
+
+	/**
+	 * 一度もDB接続を取得しなかったリクエスト数を取得する.
+	 *
+	 * @return リクエスト数
+	 */
+	static long getUnusedCount() {
+		return UNUSED_COUNT.get();
+	}
+
+	@Override
+	public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+		String name = method.getName();
+		int argCount = args == null ? 0 : args.length;
+		if (target == null) {
+			/*
+			 * 未取得の状態で処理できるメソッド
+			 */
+			if (name.equals("close") && argCount == 0) {
+				closed = true;
+				return null;
+			} else if (name.equals("isClosed") && argCount == 0) {
+				return closed;
+			} else if ((name.equals("commit") || name.equals("rollback"))
+					&& argCount == 0) {
+				// 何も実行していないので、確定・取消するものはない
+				return null;
+			} else if (name.equals("equals") && argCount == 1) {
+				return proxy == args[0];
+			} else if (name.equals("hashCode") && argCount == 0) {
+				return System.identityHashCode(proxy);
+			} else if (name.equals("toString") && argCount == 0) {
+				return "LazyConnection [" + jndiName + "] (未取得)";
+			}
+			if (closed) {
+				throw new SQLException("DB接続はcloseされています");
+			}
+			// DB接続を取得
+			long start = System.nanoTime();
+			try {
+				target = DbConnectManager.createConnection(jndiName);
+			} catch (SQLException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new SQLException("DB接続の取得に失敗しました [" + jndiName + "]", e);
+			}
+			openedAt = System.nanoTime();
+			metrics.recordConnectionAcquire(openedAt - start);
+		}
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			throw e.getCause();
+		} finally {
+			if (name.equals("close") && argCount == 0 && !closed) {
+				closed = true;
+				metrics.recordConnectionHold(System.nanoTime() - openedAt);
+			}
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package jp.kt.web.servlet;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.text.DecimalFormat;
+
+/**
+ * ヒープメモリ使用状況のスナップショット.
+ * <p>
+ * 生成後は変更されないため、複数スレッドから参照可能.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class MemoryStatus {
+	/** 初期サイズ */
+	private final long init;
+
+	/** 使用サイズ */
+	private final long used;
+
+	/** コミット済みサイズ */
+	private final long committed;
+
+	/** 最大サイズ */
+	private final long max;
+
+	/** GC回数の合計 */
+	private final long gcCount;
+
+	/** GC時間の合計（ミリ秒） */
+	private final long gcTime;
+
+	/** 取得日時（ミリ秒） */
+	private final long timestamp;
+
+	/** ログ出力用テキスト */
+	private final String text;
+
+	/**
+	 * 内部コンストラクタ.
+	 *
+	 * @param heapUsage
+	 *            ヒープメモリ使用状況
+	 * @param gcCount
+	 *            GC回数の合計
+	 * @param gcTime
+	 *            GC時間の合計（ミリ秒）
+	 * @param format
+	 *            数値のフォーマット
+	 */
+	private MemoryStatus(MemoryUsage heapUsage, long gcCount, long gcTime,
+			DecimalFormat format) {
+		this.init = heapUsage.getInit();
+		this.used = heapUsage.getUsed();
+		this.committed = heapUsage.getCommitted();
+		this.max = heapUsage.getMax();
+		this.gcCount = gcCount;
+		this.gcTime = gcTime;
+		this.timestamp = System.currentTimeMillis();
+		StringBuilder log = new StringBuilder();
+		log.append("メモリ状況 [init=");
+		log.append(format.format(init));
+		log.append("] [used=");
+		log.append(format.format(used));
+		log.append("(");
+		log.append(getUsedPercent());
+		log.append("%)] [committed=");
+		log.append(format.format(committed));
+		log.append("(");
+		log.append(toPercent(committed));
+		log.append("%)] [max=");
+		log.append(format.format(max));
+		log.append("] [gc=");
+		log.append(format.format(gcCount));
+		log.append("回 ");
+		log.append(format.format(gcTime));
+		log.append("ms]");
+		this.text = log.toString();
+	}
+
+	/**
+	 * 現在のヒープメモリ使用状況を取得する.
+	 *
+	 * @param format
+	 *            数値のフォーマット.<br>
+	 *            呼び出し元スレッド専用のものを渡すこと.
+	 * @return {@link MemoryStatus}オブジェクト
+	 */
+	static MemoryStatus capture(DecimalFormat format) {
+		long count = 0;
+		long time = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory
+				.getGarbageCollectorMXBeans()) {
+			// 取得できない場合は-1が返るので加算しない
+			if (gc.getCollectionCount() > 0) {
+				count += gc.getCollectionCount();
+			}
+			if (gc.getCollectionTime() > 0) {
+				time += gc.getCollectionTime();
+			}
+		}
+		return new MemoryStatus(ManagementFactory.getMemoryMXBean()
+				.getHeapMemoryUsage(), count, time, format);
+	}
+
+	/**
+	 * 最大サイズに対する割合を求める.
+	 *
+	 * @param size
+	 *            サイズ
+	 * @return 割合（%）.<br>
+	 *         最大サイズが未定義の場合は0.
+	 */
+	private long toPercent(long size) {
+		if (max <= 0) {
+			return 0;
+		}
+		return size * 100 / max;
+	}
+
+	/**
+	 * 初期サイズを取得する.
+	 *
+	 * @return 初期サイズ（バイト）
+	 */
+	public long getInit() {
+		return init;
+	}
+
+	/**
+	 * 使用サイズを取得する.
+	 *
+	 * @return 使用サイズ（バイト）
+	 */
+	public long getUsed() {
+		return used;
+	}
+
+	/**
+	 * 最大サイズに対する使用サイズの割合を取得する.
+	 *
+	 * @return 使用率（%）
+	 */
+	public long getUsedPercent() {
+		return toPercent(used);
+	}
+
+	/**
+	 * コミット済みサイズを取得する.
+	 *
+	 * @return コミット済みサイズ（バイト）
+	 */
+	public long getCommitted() {
+		return committed;
+	}
+
+	/**
+	 * 最大サイズを取得する.
+	 *
+	 * @return 最大サイズ（バイト）
+	 */
+	public long getMax() {
+		return max;
+	}
+
+	/**
+	 * 全GarbageCollectorのGC回数の合計を取得する.
+	 *
+	 * @return GC回数
+	 */
+	public long getGcCount() {
+		return gcCount;
+	}
+
+	/**
+	 * 全GarbageCollectorのGC時間の合計を取得する.
+	 *
+	 * @return GC時間（ミリ秒）
+	 */
+	public long getGcTime() {
+		return gcTime;
+	}
+
+	/**
+	 * 取得日時を取得する.
+	 *
+	 * @return 取得日時（エポックミリ秒）
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	@Override
+	public String toString() {
+		return text;
+	}
+}
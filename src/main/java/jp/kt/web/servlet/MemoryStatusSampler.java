@@ -0,0 +1,136 @@
+package jp.kt.web.servlet;
+
+import java.text.DecimalFormat;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.kt.web.WebProperties;
+
+/**
+ * ヒープメモリ使用状況を定期的に取得するクラス.
+ * <p>
+ * バックグラウンドスレッドが kt.core.web.memory.sample.interval（ミリ秒）間隔で
+ * {@link MemoryStatus}を更新し、<br>
+ * リクエスト処理スレッドは最新のスナップショットを参照するのみとする.<br>
+ * 間隔に0以下を指定した場合は、参照のたびに取得する.<br>
+ * 取得スレッドはアプリケーション停止時に {@link WebLifecycleListener} が停止する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public final class MemoryStatusSampler {
+	/** 唯一のインスタンス */
+	private static final MemoryStatusSampler INSTANCE = new MemoryStatusSampler();
+
+	/** 取得間隔（ミリ秒） */
+	private final long intervalMillis;
+
+	/** ログ出力するリクエスト間隔 */
+	private final int logInterval;
+
+	/** 常にログ出力する使用率（%） */
+	private final int logThreshold;
+
+	/** 取得スレッド専用の数値フォーマット */
+	private final DecimalFormat format = new DecimalFormat();
+
+	/** リクエスト数のカウンタ */
+	private final AtomicLong requestCounter = new AtomicLong();
+
+	/** 最新のスナップショット */
+	private volatile MemoryStatus current;
+
+	/** 取得スレッド（都度取得の場合はnull） */
+	private final ScheduledExecutorService executor;
+
+	/**
+	 * 内部コンストラクタ.
+	 */
+	private MemoryStatusSampler() {
+		this.intervalMillis = WebProperties.getLong(
+				"kt.core.web.memory.sample.interval", 1000);
+		this.logInterval = WebProperties.getInt(
+				"kt.core.web.memory.log.interval", 1);
+		this.logThreshold = WebProperties.getInt(
+				"kt.core.web.memory.log.threshold", 0);
+		if (intervalMillis > 0) {
+			this.current = MemoryStatus.capture(format);
+			this.executor = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread t = new Thread(r, "kt-memory-sampler");
+							t.setDaemon(true);
+							return t;
+						}
+					});
+			executor.scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					current = MemoryStatus.capture(format);
+				}
+			}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		} else {
+			this.executor = null;
+		}
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link MemoryStatusSampler}オブジェクト
+	 */
+	public static MemoryStatusSampler getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * 最新のヒープメモリ使用状況を取得する.
+	 *
+	 * @return {@link MemoryStatus}オブジェクト
+	 */
+	public MemoryStatus getStatus() {
+		if (intervalMillis <= 0) {
+			// 都度取得（DecimalFormatはスレッドセーフでないため都度生成）
+			return MemoryStatus.capture(new DecimalFormat());
+		}
+		return current;
+	}
+
+	/**
+	 * 取得スレッドを停止する.
+	 * <p>
+	 * アプリケーション停止時に {@link WebLifecycleListener} から呼び出される.<br>
+	 * 停止後は最後に取得したスナップショットを返し続ける.
+	 * </p>
+	 */
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * 今回のリクエストでメモリ状況をログ出力するか判定する.
+	 * <p>
+	 * kt.core.web.memory.log.interval のリクエスト数ごと、<br>
+	 * もしくは使用率が kt.core.web.memory.log.threshold 以上の場合に出力する.
+	 * </p>
+	 *
+	 * @param status
+	 *            ヒープメモリ使用状況
+	 * @return ログ出力する場合はtrue
+	 */
+	boolean isLogTarget(MemoryStatus status) {
+		if (logThreshold > 0 && status.getUsedPercent() >= logThreshold) {
+			return true;
+		}
+		if (logInterval <= 0) {
+			return false;
+		}
+		return requestCounter.getAndIncrement() % logInterval == 0;
+	}
+}
@@ -0,0 +1,126 @@
+package jp.kt.web.servlet;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jp.kt.web.WebProperties;
+
+/**
+ * サーバのホスト名を保持するクラス.
+ * <p>
+ * kt.core.web.server.hostname が指定されている場合はその値を使用する.<br>
+ * 指定されていない場合はバックグラウンドスレッドで名前解決を行い、<br>
+ * リクエスト処理スレッドがDNSの応答を待つことはない.<br>
+ * 名前解決に失敗した場合は、環境変数 HOSTNAME、COMPUTERNAME の値を使用する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class ServerHostName {
+	/** 唯一のインスタンス */
+	private static final ServerHostName INSTANCE = new ServerHostName();
+
+	/** ホスト名（確定するまでは空文字） */
+	private volatile String hostName = "";
+
+	/** 確定待ち */
+	private final CountDownLatch resolved = new CountDownLatch(1);
+
+	/** 未通知の名前解決エラー */
+	private final AtomicReference<Exception> failure = new AtomicReference<>();
+
+	/**
+	 * 内部コンストラクタ.
+	 */
+	private ServerHostName() {
+		String override = WebProperties.getString(
+				"kt.core.web.server.hostname", "");
+		if (!override.isEmpty()) {
+			this.hostName = override;
+			resolved.countDown();
+			return;
+		}
+		Thread t = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				resolve();
+			}
+		}, "kt-hostname-resolver");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	/**
+	 * インスタンスを取得する.
+	 *
+	 * @return {@link ServerHostName}オブジェクト
+	 */
+	static ServerHostName getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * 名前解決を行う.
+	 */
+	private void resolve() {
+		try {
+			hostName = InetAddress.getLocalHost().getHostName();
+		} catch (Exception e) {
+			failure.set(e);
+			String env = System.getenv("HOSTNAME");
+			if (env == null) {
+				env = System.getenv("COMPUTERNAME");
+			}
+			if (env != null) {
+				hostName = env;
+			}
+		} finally {
+			resolved.countDown();
+		}
+	}
+
+	/**
+	 * ホスト名が確定するまで待機する.
+	 * <p>
+	 * Servletの初期化時に呼び出すもので、リクエスト処理中は呼び出さないこと.
+	 * </p>
+	 *
+	 * @param timeoutMillis
+	 *            最大待機時間（ミリ秒）
+	 * @throws InterruptedException
+	 *             待機中に割り込まれた場合
+	 */
+	void await(long timeoutMillis) throws InterruptedException {
+		if (timeoutMillis > 0) {
+			resolved.await(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * ホスト名を取得する.
+	 *
+	 * @return ホスト名.<br>
+	 *         確定していない、もしくは取得できなかった場合は空文字.
+	 */
+	String get() {
+		return hostName;
+	}
+
+	/**
+	 * 名前解決エラーを取得する.
+	 * <p>
+	 * ログ出力が1回で済むよう、取得したエラーはクリアされる.
+	 * </p>
+	 *
+	 * @return 未通知の名前解決エラー.<br>
+	 *         ない場合はnull.
+	 */
+	Exception takeFailure() {
+		if (failure.get() == null) {
+			return null;
+		}
+		return failure.getAndSet(null);
+	}
+}
@@ -0,0 +1,51 @@
+package jp.kt.web.servlet;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+import javax.servlet.annotation.WebListener;
+
+import jp.kt.web.log.AsyncLogger;
+import jp.kt.web.metrics.MetricsRegistry;
+
+/**
+ * アプリケーションの停止時に、バックグラウンドで動作している処理を停止するListener.
+ * <p>
+ * &#064;WebListenerにより自動で登録される.<br>
+ * web.xmlで metadata-complete="true" を指定している場合は、web.xmlに登録すること.<br>
+ * 停止しない場合、スレッドがWebアプリケーションのクラスローダを参照し続けてしまう.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+@WebListener
+public class WebLifecycleListener implements ServletContextListener {
+	@Override
+	public void contextInitialized(ServletContextEvent sce) {
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent sce) {
+		// 非同期モードのServletの実行スレッドを停止（停止中のログも出力できるよう先に停止）
+		ExecutorService async = AsyncExecutor.shutdown();
+		if (async != null) {
+			try {
+				async.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		// 未出力のログを出力して、ログ出力スレッドを停止
+		try {
+			AsyncLogger.getInstance().shutdown();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		// メモリ状況の取得スレッドを停止
+		MemoryStatusSampler.getInstance().shutdown();
+		// JMXに登録した計測値の登録解除
+		MetricsRegistry.getInstance().unregisterAll();
+	}
+}
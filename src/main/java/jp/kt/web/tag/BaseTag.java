@@ -4,49 +4,86 @@ import java.io.IOException;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.jsp.JspException;
-import javax.servlet.jsp.JspWriter;
 import javax.servlet.jsp.tagext.BodyTagSupport;
 
 import jp.kt.web.device.Device;
 
 /**
  * 全カスタムタグの基底クラス.
+ * <p>
+ * 各タグは {@link #render(Appendable)} でページの出力先へ直接書き込む.<br>
+ * タグ全体を1つの文字列として組み立てないため、一覧画面などでの中間文字列の生成を抑えられる.<br>
+ * コンテナはタグハンドラを再利用する際、前回と同じ属性値のsetterを呼び出さない場合があるため、<br>
+ * 出力後も属性値は保持し、{@link #release()} でのみ {@link #reset()} で初期状態に戻す.<br>
+ * そのため、各setterは不正な値を指定された場合も前回の値を残さないこと.
+ * </p>
  * 
  * @author tatsuya.kumon
  */
 abstract class BaseTag extends BodyTagSupport {
 	@Override
 	public int doEndTag() throws JspException {
-		String tagText = createTag();
-		write(tagText);
+		try {
+			render(pageContext.getOut());
+		} catch (IOException e) {
+			throw new JspException(e.getMessage());
+		}
 		return EVAL_PAGE;
 	}
 
+	@Override
+	public void release() {
+		reset();
+		super.release();
+	}
+
 	/**
-	 * タグ作成.
-	 * 
-	 * @return タグテキスト
+	 * 属性値を初期状態に戻す.
+	 * <p>
+	 * 属性を持つタグはオーバーライドし、全ての属性値を初期値に戻すこと.<br>
+	 * 内部で再利用するバッファなどは破棄せずに空にする.
+	 * </p>
 	 */
-	protected abstract String createTag();
+	protected void reset() {
+	}
 
 	/**
 	 * タグ出力.
+	 * <p>
+	 * 属性値やテキストは必要に応じてエスケープしながら出力先へ直接書き込むこと.
+	 * </p>
 	 * 
-	 * @param text
-	 *            タグテキスト
-	 * @throws JspException
+	 * @param out
+	 *            出力先
+	 * @throws IOException
+	 *             出力に失敗した場合
 	 */
-	private void write(String text) throws JspException {
-		JspWriter writer = pageContext.getOut();
+	protected abstract void render(Appendable out) throws IOException;
+
+	/**
+	 * タグ作成.
+	 * <p>
+	 * {@link #render(Appendable)} の出力を文字列として取得する.
+	 * </p>
+	 * 
+	 * @return タグテキスト
+	 */
+	protected String createTag() {
+		StringBuilder tag = new StringBuilder();
 		try {
-			writer.print(text);
+			render(tag);
 		} catch (IOException e) {
-			throw new JspException(e.getMessage());
+			// StringBuilderへの出力では発生しない
+			throw new IllegalStateException(e);
 		}
+		return tag.toString();
 	}
 
 	/**
 	 * アクセス端末区分を取得する.
+	 * <p>
+	 * 解析結果はリクエスト属性に保持されるため、同一リクエスト内では再解析しない.
+	 * </p>
 	 * 
 	 * @return {@link Device}オブジェクト
 	 */
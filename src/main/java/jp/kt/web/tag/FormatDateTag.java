@@ -1,55 +1,153 @@
 package jp.kt.web.tag;
 
+import java.io.IOException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 
 /**
- * Dateオブジェクトをフォーマットして表示するためのタグクラス.
+ * 日時をフォーマットして表示するためのタグクラス.
+ * <p>
+ * {@link Date}、{@link Calendar}、および java.time の日時
+ * （{@link java.time.LocalDate}、{@link java.time.LocalDateTime}、{@link Instant}
+ * など）を指定できる.<br>
+ * {@link Date}、{@link Calendar} は従来通り {@link java.text.SimpleDateFormat}
+ * のパターンでフォーマットし、<br>
+ * java.time の日時は {@link DateTimeFormatter} のパターンでフォーマットする
+ * （「u」「S」など、同じ文字でも意味が異なるものがあるため）.<br>
+ * フォーマッタはパターンごとに {@link FormatterRegistry} で共有、もしくはスレッドごとに保持する.
+ * </p>
  *
  * @author tatsuya.kumon
  */
 public final class FormatDateTag extends BaseTag {
-	/** Date値 */
-	private Date value;
+	/** 日時 */
+	private Object value;
 
 	/** フォーマットパターン */
 	private String pattern;
 
-	private static final String EMPTY = "";
-
 	/**
-	 * タグ作成.
+	 * タグ出力.
 	 */
-	protected String createTag() {
+	@Override
+	protected void render(Appendable out) throws IOException {
 
 		if (value == null) {
-			return EMPTY;
+			return;
+		}
+
+		// 日時をフォーマットして出力する
+		Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+		if (value instanceof Date) {
+			// 従来通りSimpleDateFormatのパターンでフォーマット
+			out.append(FormatterRegistry.getSimpleDateFormat(pattern, locale)
+					.format((Date) value));
+			return;
+		} else if (value instanceof Calendar) {
+			out.append(formatCalendar((Calendar) value, locale));
+			return;
+		}
+		DateTimeFormatter formatter = FormatterRegistry.getDateTimeFormatter(
+				pattern, locale);
+		if (formatter != null) {
+			formatter.formatTo(toTemporal(value), out);
+		} else {
+			// DateTimeFormatterで解釈できないパターンはSimpleDateFormatでフォーマット
+			out.append(FormatterRegistry.getSimpleDateFormat(pattern, locale)
+					.format(toDate(value)));
 		}
+	}
+
+	/**
+	 * {@link Calendar} をそのタイムゾーンでフォーマットする.
+	 *
+	 * @param cal
+	 *            日時
+	 * @param locale
+	 *            ロケール
+	 * @return フォーマットした文字列
+	 */
+	private String formatCalendar(Calendar cal, Locale locale) {
+		SimpleDateFormat format = FormatterRegistry.getSimpleDateFormat(
+				pattern, locale);
+		// スレッドごとに保持しているため、タイムゾーンは元に戻しておく
+		TimeZone original = format.getTimeZone();
+		format.setTimeZone(cal.getTimeZone());
+		try {
+			return format.format(cal.getTime());
+		} finally {
+			format.setTimeZone(original);
+		}
+	}
+
+	@Override
+	protected void reset() {
+		value = null;
+		pattern = null;
+	}
 
-		// Dateオブジェクトをフォーマットする
-		SimpleDateFormat format = new SimpleDateFormat(pattern);
-		String dateText = format.format(value);
-		// タグを返す
-		return dateText;
+	/**
+	 * 日時を {@link TemporalAccessor} に変換する.
+	 *
+	 * @param value
+	 *            日時
+	 * @return {@link TemporalAccessor}オブジェクト
+	 */
+	private static TemporalAccessor toTemporal(Object value) {
+		if (value instanceof Instant) {
+			return ((Instant) value).atZone(ZoneId.systemDefault());
+		} else if (value instanceof TemporalAccessor) {
+			return (TemporalAccessor) value;
+		}
+		throw new IllegalArgumentException("日時として扱えない型です ["
+				+ value.getClass().getName() + "]");
+	}
+
+	/**
+	 * 日時を {@link Date} に変換する.
+	 *
+	 * @param value
+	 *            日時
+	 * @return {@link Date}オブジェクト
+	 */
+	private static Date toDate(Object value) {
+		if (value instanceof Instant) {
+			return Date.from((Instant) value);
+		} else if (value instanceof TemporalAccessor) {
+			return Date.from(ZonedDateTime.from((TemporalAccessor) value)
+					.toInstant());
+		}
+		throw new IllegalArgumentException("日時として扱えない型です ["
+				+ value.getClass().getName() + "]");
 	}
 
 	/**
 	 * フォーマットをセット.
 	 *
 	 * @param pattern
-	 *            フォーマット
+	 *            フォーマット.<br>
+	 *            {@link Date}、{@link Calendar} の場合は {@link SimpleDateFormat}、<br>
+	 *            java.time の日時の場合は {@link DateTimeFormatter} のパターン.
 	 */
 	public void setPattern(String pattern) {
 		this.pattern = pattern;
 	}
 
 	/**
-	 * Date値をセット.
+	 * 日時をセット.
 	 *
 	 * @param value
-	 *            Data値
+	 *            {@link Date}、{@link Calendar}、もしくは java.time の日時
 	 */
-	public void setValue(Date value) {
+	public void setValue(Object value) {
 		this.value = value;
 	}
 }
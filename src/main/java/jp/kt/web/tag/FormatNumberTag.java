@@ -1,33 +1,69 @@
 package jp.kt.web.tag;
 
-import java.text.DecimalFormat;
-
-import jp.kt.tool.Validator;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.FieldPosition;
+import java.util.Locale;
 
 /**
  * 数値をフォーマットして表示するためのタグクラス.
+ * <p>
+ * long値のほか、{@link BigDecimal} などの {@link Number}、数値の文字列を指定できる.<br>
+ * フォーマッタはパターンごとに {@link FormatterRegistry} でスレッドごとに保持する.
+ * </p>
  *
  * @author tatsuya.kumon
  */
 public final class FormatNumberTag extends BaseTag {
 	/** 数値 */
-	private long value;
+	private Object value;
 
 	/** パターン */
 	private String pattern;
 
+	/** フォーマット結果のバッファ（タグハンドラの再利用時も使い回す） */
+	private final StringBuffer buffer = new StringBuffer();
+
+	/** フォーマット時のフィールド位置（使用しない） */
+	private final FieldPosition fieldPosition = new FieldPosition(0);
+
+	/**
+	 * タグ出力.
+	 */
+	@Override
+	protected void render(Appendable out) throws IOException {
+		// 数値をフォーマットして出力する
+		buffer.setLength(0);
+		FormatterRegistry.getDecimalFormat(pattern,
+				Locale.getDefault(Locale.Category.FORMAT)).format(
+				toNumber(value), buffer, fieldPosition);
+		out.append(buffer);
+	}
+
+	@Override
+	protected void reset() {
+		value = null;
+		pattern = null;
+		buffer.setLength(0);
+	}
+
 	/**
-	 * タグ作成.
+	 * 数値を {@link Number} に変換する.
+	 *
+	 * @param value
+	 *            数値
+	 * @return {@link Number}オブジェクト
 	 */
-	protected String createTag() {
-		// 数値をフォーマットする
-		DecimalFormat format = new DecimalFormat();
-		if (!Validator.isEmpty(pattern)) {
-			format = new DecimalFormat(pattern);
+	private static Number toNumber(Object value) {
+		if (value instanceof Number) {
+			return (Number) value;
+		}
+		if (value == null) {
+			// long値のみ指定できた頃と同様に、未指定は0として扱う
+			return 0L;
 		}
-		String dateText = format.format(value);
-		// タグを返す
-		return dateText;
+		String text = value.toString().trim();
+		return text.isEmpty() ? 0L : new BigDecimal(text);
 	}
 
 	/**
@@ -44,9 +80,9 @@ public final class FormatNumberTag extends BaseTag {
 	 * 数値をセット.
 	 *
 	 * @param value
-	 *            数値
+	 *            数値（{@link Number}、もしくは数値の文字列）
 	 */
-	public void setValue(long value) {
+	public void setValue(Object value) {
 		this.value = value;
 	}
 }
@@ -0,0 +1,171 @@
+package jp.kt.web.tag;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+import java.text.SimpleDateFormat;
+import java.time.format.DateTimeFormatter;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * フォーマットパターンごとのフォーマッタを保持するクラス.
+ * <p>
+ * java.time の日付は不変な {@link DateTimeFormatter} をパターン、ロケールごとに共有する.<br>
+ * {@link java.util.Date} などの従来の日付、および {@link DateTimeFormatter}
+ * で解釈できないパターンは、<br>
+ * スレッドごとの {@link SimpleDateFormat} を使用する.<br>
+ * 数値はスレッドセーフでない {@link DecimalFormat} をスレッドごとに保持する.<br>
+ * スレッドごとの保持にはJDKのクラスのみを使用する（スレッドプールのスレッドが
+ * Webアプリケーションのクラスローダを参照し続けないようにするため）.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class FormatterRegistry {
+	/** 共有するフォーマッタの最大数 */
+	private static final int MAX_SHARED = 1000;
+
+	/** スレッドごとに保持するフォーマッタの最大数（超える場合は全て破棄して作り直す） */
+	private static final int MAX_PER_THREAD = 64;
+
+	/** 日付のフォーマッタ */
+	private static final ConcurrentMap<String, DateTimeFormatter> DATE_FORMATTERS = new ConcurrentHashMap<>();
+
+	/** DateTimeFormatterで解釈できない日付のパターン */
+	private static final ConcurrentMap<String, Boolean> LEGACY_DATE_PATTERNS = new ConcurrentHashMap<>();
+
+	/** スレッドごとのSimpleDateFormat */
+	private static final ThreadLocal<Map<String, SimpleDateFormat>> SIMPLE_DATE_FORMATS = new ThreadLocal<Map<String, SimpleDateFormat>>() {
+		@Override
+		protected Map<String, SimpleDateFormat> initialValue() {
+			return new HashMap<>();
+		}
+	};
+
+	/** スレッドごとのDecimalFormat */
+	private static final ThreadLocal<Map<String, DecimalFormat>> DECIMAL_FORMATS = new ThreadLocal<Map<String, DecimalFormat>>() {
+		@Override
+		protected Map<String, DecimalFormat> initialValue() {
+			return new HashMap<>();
+		}
+	};
+
+	/**
+	 * インスタンス化禁止.
+	 */
+	private FormatterRegistry() {
+	}
+
+	/**
+	 * パターンとロケールからキーを作成する.
+	 *
+	 * @param pattern
+	 *            フォーマットパターン
+	 * @param locale
+	 *            ロケール
+	 * @return キー
+	 */
+	private static String key(String pattern, Locale locale) {
+		return locale.toLanguageTag() + '\u0000' + pattern;
+	}
+
+	/**
+	 * 日付のフォーマッタを取得する.
+	 *
+	 * @param pattern
+	 *            フォーマットパターン
+	 * @param locale
+	 *            ロケール
+	 * @return {@link DateTimeFormatter}オブジェクト.<br>
+	 *         {@link DateTimeFormatter} で解釈できないパターンの場合はnull.
+	 */
+	static DateTimeFormatter getDateTimeFormatter(String pattern, Locale locale) {
+		String key = key(pattern, locale);
+		DateTimeFormatter formatter = DATE_FORMATTERS.get(key);
+		if (formatter != null || LEGACY_DATE_PATTERNS.containsKey(key)) {
+			return formatter;
+		}
+		try {
+			formatter = DateTimeFormatter.ofPattern(pattern, locale);
+		} catch (IllegalArgumentException e) {
+			if (LEGACY_DATE_PATTERNS.size() < MAX_SHARED) {
+				LEGACY_DATE_PATTERNS.put(key, Boolean.TRUE);
+			}
+			return null;
+		}
+		if (DATE_FORMATTERS.size() < MAX_SHARED) {
+			DATE_FORMATTERS.putIfAbsent(key, formatter);
+		}
+		return formatter;
+	}
+
+	/**
+	 * 呼び出し元スレッド専用の {@link SimpleDateFormat} を取得する.
+	 *
+	 * @param pattern
+	 *            フォーマットパターン
+	 * @param locale
+	 *            ロケール
+	 * @return {@link SimpleDateFormat}オブジェクト
+	 */
+	static SimpleDateFormat getSimpleDateFormat(String pattern, Locale locale) {
+		Map<String, SimpleDateFormat> map = SIMPLE_DATE_FORMATS.get();
+		String key = key(pattern, locale);
+		SimpleDateFormat format = map.get(key);
+		if (format == null) {
+			format = new SimpleDateFormat(pattern, locale);
+			putPerThread(map, key, format);
+		}
+		return format;
+	}
+
+	/**
+	 * 呼び出し元スレッド専用の {@link DecimalFormat} を取得する.
+	 *
+	 * @param pattern
+	 *            フォーマットパターン.<br>
+	 *            空の場合はロケールのデフォルトのフォーマット.
+	 * @param locale
+	 *            ロケール
+	 * @return {@link DecimalFormat}オブジェクト
+	 */
+	static DecimalFormat getDecimalFormat(String pattern, Locale locale) {
+		Map<String, DecimalFormat> map = DECIMAL_FORMATS.get();
+		String key = key(pattern == null ? "" : pattern, locale);
+		DecimalFormat format = map.get(key);
+		if (format == null) {
+			format = (DecimalFormat) NumberFormat.getNumberInstance(locale);
+			if (pattern != null && !pattern.isEmpty()) {
+				format.applyPattern(pattern);
+			}
+			putPerThread(map, key, format);
+		}
+		return format;
+	}
+
+	/**
+	 * スレッドごとのMapに格納する.
+	 * <p>
+	 * 最大数に達している場合は、全て破棄してから格納する.
+	 * </p>
+	 *
+	 * @param map
+	 *            スレッドごとのMap
+	 * @param key
+	 *            キー
+	 * @param format
+	 *            フォーマッタ
+	 * @param <V>
+	 *            フォーマッタの型
+	 */
+	private static <V> void putPerThread(Map<String, V> map, String key,
+			V format) {
+		if (map.size() >= MAX_PER_THREAD) {
+			map.clear();
+		}
+		map.put(key, format);
+	}
+}
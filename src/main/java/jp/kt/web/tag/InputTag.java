@@ -1,17 +1,15 @@
 package jp.kt.web.tag;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 import jp.kt.exception.KtException;
 import jp.kt.tool.Validator;
-import jp.kt.web.device.Android;
 import jp.kt.web.device.Device;
 import jp.kt.web.device.Ipad;
 import jp.kt.web.device.Iphone;
 
-import org.apache.taglibs.standard.tag.common.core.Util;
-
 /**
  * inputタグクラス.
  * <p>
@@ -23,6 +21,10 @@ import org.apache.taglibs.standard.tag.common.core.Util;
  * ・tel（スマホ専用）<br>
  * ・number（スマホ専用）<br>
  * ・search（スマホ専用）<br>
+ * ・date（スマホ専用）<br>
+ * ・datetime-local（スマホ専用）<br>
+ * ・range（スマホ専用）<br>
+ * ・color（スマホ専用）<br>
  * ・hidden<br>
  * ・password<br>
  * ・checkbox<br>
@@ -32,6 +34,8 @@ import org.apache.taglibs.standard.tag.common.core.Util;
  * ・image<br>
  * ・reset<br>
  * ・button<br>
+ * スマホ専用のタイプは、Androidではtextに変換して出力する.<br>
+ * colorは、iPhone/iPadでもtextに変換して出力する.<br>
  * <br>
  * ◆name属性（必須）：パラメータ名<br>
  * <br>
@@ -63,7 +67,7 @@ import org.apache.taglibs.standard.tag.common.core.Util;
  * <th style="width:200px;">size属性&nbsp;/&nbsp;maxlength属性</th>
  * </tr>
  * <tr>
- * <td rowspan="7">入力系</td>
+ * <td rowspan="11">入力系</td>
  * <td>text</td>
  * <td style="text-align:center;"><span style="font-size:20pt;">×</span>（使えません）</td>
  * <td style="text-align:center;"><span
@@ -106,6 +110,26 @@ import org.apache.taglibs.standard.tag.common.core.Util;
  * style="font-size:20pt; color:red;">○</span></td>
  * </tr>
  * <tr>
+ * <td>date（スマホ専用）</td>
+ * <td style="text-align:center;"><span style="font-size:20pt;">×</span>（使えません）</td>
+ * <td style="text-align:center;"><span style="font-size:20pt;">×</span>（使えません）</td>
+ * </tr>
+ * <tr>
+ * <td>datetime-local（スマホ専用）</td>
+ * <td style="text-align:center;"><span style="font-size:20pt;">×</span>（使えません）</td>
+ * <td style="text-align:center;"><span style="font-size:20pt;">×</span>（使えません）</td>
+ * </tr>
+ * <tr>
+ * <td>range（スマホ専用）</td>
+ * <td style="text-align:center;"><span style="font-size:20pt;">×</span>（使えません）</td>
+ * <td style="text-align:center;"><span style="font-size:20pt;">×</span>（使えません）</td>
+ * </tr>
+ * <tr>
+ * <td>color（スマホ専用）</td>
+ * <td style="text-align:center;"><span style="font-size:20pt;">×</span>（使えません）</td>
+ * <td style="text-align:center;"><span style="font-size:20pt;">×</span>（使えません）</td>
+ * </tr>
+ * <tr>
  * <td rowspan="2">チェック系</td>
  * <td>checkbox</td>
  * <td style="text-align:center;"><span
@@ -155,53 +179,8 @@ import org.apache.taglibs.standard.tag.common.core.Util;
  * @author tatsuya.kumon
  */
 public final class InputTag extends BaseTag {
-	/** タイプ：text */
-	private static final String TYPE_TEXT = "text";
-
-	/** タイプ：password */
-	private static final String TYPE_PASSWORD = "password";
-
-	/** タイプ：email */
-	private static final String TYPE_EMAIL = "email";
-
-	/** タイプ：url */
-	private static final String TYPE_URL = "url";
-
-	/** タイプ：tel */
-	private static final String TYPE_TEL = "tel";
-
-	/** タイプ：number */
-	private static final String TYPE_NUMBER = "number";
-
-	/** タイプ：search */
-	private static final String TYPE_SEARCH = "search";
-
-	/** タイプ：hidden */
-	private static final String TYPE_HIDDEN = "hidden";
-
-	/** タイプ：checkbox */
-	private static final String TYPE_CHECKBOX = "checkbox";
-
-	/** タイプ：radio */
-	private static final String TYPE_RADIO = "radio";
-
-	/** タイプ：submit */
-	private static final String TYPE_SUBMIT = "submit";
-
-	/** タイプ：button */
-	private static final String TYPE_BUTTON = "button";
-
-	/** タイプ：file */
-	private static final String TYPE_FILE = "file";
-
-	/** タイプ：image */
-	private static final String TYPE_IMAGE = "image";
-
-	/** タイプ：reset */
-	private static final String TYPE_RESET = "reset";
-
 	/** type属性 */
-	private String type;
+	private InputType type;
 
 	/** パラメータ名 */
 	private String name;
@@ -216,7 +195,7 @@ public final class InputTag extends BaseTag {
 	private String maxlength;
 
 	/** チェック済みの値 */
-	private List<String> checkedValueList;
+	private final Set<String> checkedValues = new HashSet<String>();
 
 	/** onclickのjavascript記述 */
 	private String onclick;
@@ -234,93 +213,84 @@ public final class InputTag extends BaseTag {
 	private String style;
 
 	@Override
-	protected String createTag() {
-		StringBuilder tag = new StringBuilder();
-		tag.append("<input");
+	protected void render(Appendable out) throws IOException {
+		// 端末が非対応のタイプは代替タイプに変換する
+		// （タグハンドラは別の端末からのリクエストでも再利用されるため、出力時に変換する）
+		Device device = super.getDevice();
+		InputType type = this.type.resolve(device);
+		out.append("<input");
 		// type
-		tag.append(" type=\"");
-		tag.append(type);
-		tag.append("\"");
+		XmlEscape.appendAttribute(out, "type", type.getValue());
 		// name
 		if (!Validator.isEmpty(name)) {
-			tag.append(" name=\"");
-			tag.append(name);
-			tag.append("\"");
+			XmlEscape.appendAttribute(out, "name", name);
 		}
 		// value
 		if (!Validator.isEmpty(value)) {
-			tag.append(" value=\"");
-			tag.append(value);
-			tag.append("\"");
+			XmlEscape.appendAttribute(out, "value", value);
 		}
 		// checked（checkbox/radioのみ）
-		if (type.equals(TYPE_CHECKBOX) || type.equals(TYPE_RADIO)) {
+		if (type.isCheckable()) {
 			// パラメータ値とチェック済みの値が等しければcheckedを出力
-			if (value != null && checkedValueList != null) {
-				if (checkedValueList.contains(value)) {
-					tag.append(" checked=\"checked\"");
+			if (value != null && !checkedValues.isEmpty()) {
+				if (checkedValues.contains(value)) {
+					out.append(" checked=\"checked\"");
 				}
 			}
 		}
 		// size（text/password/email/url/tel/number/searchのみ）
 		// maxlength（text/password/email/url/tel/number/searchのみ）
-		if (type.equals(TYPE_TEXT) || type.equals(TYPE_PASSWORD)
-				|| type.equals(TYPE_EMAIL) || type.equals(TYPE_URL)
-				|| type.equals(TYPE_TEL) || type.equals(TYPE_NUMBER)
-				|| type.equals(TYPE_SEARCH)) {
+		if (type.isSized()) {
 			if (!Validator.isEmpty(size)) {
-				tag.append(" size=\"");
-				tag.append(size);
-				tag.append("\"");
+				XmlEscape.appendAttribute(out, "size", size);
 			}
 			if (!Validator.isEmpty(maxlength)) {
-				tag.append(" maxlength=\"");
-				tag.append(maxlength);
-				tag.append("\"");
+				XmlEscape.appendAttribute(out, "maxlength", maxlength);
 			}
 		}
 		// id
 		if (!Validator.isEmpty(id)) {
-			tag.append(" id=\"");
-			tag.append(id);
-			tag.append("\"");
+			XmlEscape.appendAttribute(out, "id", id);
 		}
 		// class
 		if (!Validator.isEmpty(styleClass)) {
-			tag.append(" class=\"");
-			tag.append(styleClass);
-			tag.append("\"");
+			XmlEscape.appendAttribute(out, "class", styleClass);
 		}
 		// style
 		if (!Validator.isEmpty(style)) {
-			tag.append(" style=\"");
-			tag.append(style);
-			tag.append("\"");
+			XmlEscape.appendAttribute(out, "style", style);
 		}
 		// onclick
 		if (!Validator.isEmpty(onclick)) {
-			tag.append(" onclick=\"");
-			tag.append(onclick);
-			tag.append("\"");
+			XmlEscape.appendAttribute(out, "onclick", onclick);
 		}
 		// onkeyup
 		if (!Validator.isEmpty(onkeyup)) {
-			tag.append(" onkeyup=\"");
-			tag.append(onkeyup);
-			tag.append("\"");
+			XmlEscape.appendAttribute(out, "onkeyup", onkeyup);
 		}
 		// autocapitalize（iPhone/iPadのみ）
-		if (type.equals(TYPE_TEXT) || type.equals(TYPE_EMAIL)
-				|| type.equals(TYPE_URL) || type.endsWith(TYPE_SEARCH)) {
+		if (type.isCapitalizable()) {
 			// text/email/url/searchの場合、iPhone/iPadでは先頭大文字にならないようにする
-			Device device = super.getDevice();
 			if (device instanceof Iphone || device instanceof Ipad) {
-				tag.append(" autocapitalize=\"off\"");
+				out.append(" autocapitalize=\"off\"");
 			}
 		}
-		tag.append(">");
-		// タグを返す
-		return tag.toString();
+		out.append('>');
+	}
+
+	@Override
+	protected void reset() {
+		type = null;
+		name = null;
+		value = null;
+		size = null;
+		maxlength = null;
+		checkedValues.clear();
+		onclick = null;
+		onkeyup = null;
+		id = null;
+		styleClass = null;
+		style = null;
 	}
 
 	/**
@@ -330,27 +300,11 @@ public final class InputTag extends BaseTag {
 	 *            タイプ
 	 */
 	public void setType(String type) {
-		// 小文字変換
-		String t = type.toLowerCase();
-		// タイプ設定
-		if (t.equals(TYPE_EMAIL) || t.equals(TYPE_URL) || t.equals(TYPE_TEL)
-				|| t.equals(TYPE_NUMBER) || t.endsWith(TYPE_SEARCH)) {
-			// email/url/tel/number/searchの場合、Androidでは非対応なのでtextに変換する
-			Device device = super.getDevice();
-			if (device instanceof Android) {
-				t = TYPE_TEXT;
-			}
-		} else if (t.equals(TYPE_TEXT) || t.equals(TYPE_HIDDEN)
-				|| t.equals(TYPE_PASSWORD) || t.equals(TYPE_CHECKBOX)
-				|| t.equals(TYPE_RADIO) || t.equals(TYPE_FILE)
-				|| t.equals(TYPE_SUBMIT) || t.equals(TYPE_IMAGE)
-				|| t.equals(TYPE_RESET) || t.equals(TYPE_BUTTON)) {
-			// その他対応しているtype
-		} else {
+		InputType t = InputType.of(type);
+		if (t == null) {
 			// zooカスタムタグとしては非対応（未確認）のtypeの場合はException
-			throw new KtException("A041", "非対応のtypeです [" + t + "]");
+			throw new KtException("A041", "非対応のtypeです [" + type + "]");
 		}
-		// クラス変数にセット
 		this.type = t;
 	}
 
@@ -361,27 +315,28 @@ public final class InputTag extends BaseTag {
 	 *            チェック済みにする値
 	 */
 	public void setCheckedValue(Object checkedValue) {
+		// タグハンドラの再利用時も同じSetを使い回す
+		this.checkedValues.clear();
 		if (checkedValue == null) {
 			return;
 		}
-		this.checkedValueList = new ArrayList<String>();
 		if (checkedValue instanceof Iterable<?>) {
 			// List指定の場合
 			for (Object o : (Iterable<?>) checkedValue) {
 				if (o != null) {
-					this.checkedValueList.add(Util.escapeXml(o.toString()));
+					this.checkedValues.add(o.toString());
 				}
 			}
 		} else if (checkedValue instanceof Object[]) {
 			// 配列指定の場合
 			for (Object o : (Object[]) checkedValue) {
 				if (o != null) {
-					this.checkedValueList.add(Util.escapeXml(o.toString()));
+					this.checkedValues.add(o.toString());
 				}
 			}
 		} else {
 			// その他のオブジェクトの場合（Stringなど）
-			this.checkedValueList.add(Util.escapeXml(checkedValue.toString()));
+			this.checkedValues.add(checkedValue.toString());
 		}
 	}
 
@@ -392,7 +347,7 @@ public final class InputTag extends BaseTag {
 	 *            項目名
 	 */
 	public void setName(String name) {
-		this.name = Util.escapeXml(name);
+		this.name = name;
 	}
 
 	/**
@@ -402,7 +357,7 @@ public final class InputTag extends BaseTag {
 	 *            値
 	 */
 	public void setValue(String value) {
-		this.value = Util.escapeXml(value);
+		this.value = value;
 	}
 
 	/**
@@ -412,10 +367,12 @@ public final class InputTag extends BaseTag {
 	 *            サイズ
 	 */
 	public void setSize(String size) {
-		// 0より大きい整数値の場合のみセットする
+		// 0より大きい整数値の場合のみセットする（タグハンドラの再利用時に前回の値を残さない）
 		if (!Validator.isEmpty(size) && Validator.isInt(size)
 				&& Integer.parseInt(size) > 0) {
 			this.size = size;
+		} else {
+			this.size = null;
 		}
 	}
 
@@ -426,10 +383,12 @@ public final class InputTag extends BaseTag {
 	 *            最大長
 	 */
 	public void setMaxlength(String maxlength) {
-		// 0より大きい整数値の場合のみセットする
+		// 0より大きい整数値の場合のみセットする（タグハンドラの再利用時に前回の値を残さない）
 		if (!Validator.isEmpty(maxlength) && Validator.isInt(maxlength)
 				&& Integer.parseInt(maxlength) > 0) {
 			this.maxlength = maxlength;
+		} else {
+			this.maxlength = null;
 		}
 	}
 
@@ -440,7 +399,7 @@ public final class InputTag extends BaseTag {
 	 *            onclick属性値
 	 */
 	public void setOnclick(String onclick) {
-		this.onclick = Util.escapeXml(onclick);
+		this.onclick = onclick;
 	}
 
 	/**
@@ -450,12 +409,12 @@ public final class InputTag extends BaseTag {
 	 *            onkeyup属性値
 	 */
 	public void setOnkeyup(String onkeyup) {
-		this.onkeyup = Util.escapeXml(onkeyup);
+		this.onkeyup = onkeyup;
 	}
 
 	@Override
 	public void setId(String id) {
-		this.id = Util.escapeXml(id);
+		this.id = id;
 	}
 
 	/**
@@ -465,7 +424,7 @@ public final class InputTag extends BaseTag {
 	 *            class属性値
 	 */
 	public void setStyleClass(String styleClass) {
-		this.styleClass = Util.escapeXml(styleClass);
+		this.styleClass = styleClass;
 	}
 
 	/**
@@ -475,6 +434,6 @@ public final class InputTag extends BaseTag {
 	 *            style属性値
 	 */
 	public void setStyle(String style) {
-		this.style = Util.escapeXml(style);
+		this.style = style;
 	}
 }
@@ -0,0 +1,240 @@
+package jp.kt.web.tag;
+
+import java.util.Locale;
+
+import jp.kt.web.device.Android;
+import jp.kt.web.device.Device;
+import jp.kt.web.device.Ipad;
+import jp.kt.web.device.Iphone;
+
+/**
+ * {@link InputTag} で指定可能なinputタイプ.
+ * <p>
+ * タイプごとに、出力できる属性や端末ごとの代替タイプを保持する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+enum InputType {
+	/** text */
+	TEXT("text", Flag.SIZED | Flag.CAPITALIZABLE),
+
+	/** password */
+	PASSWORD("password", Flag.SIZED),
+
+	/** email（スマホ専用） */
+	EMAIL("email", Flag.SIZED | Flag.CAPITALIZABLE | Flag.SMARTPHONE_ONLY),
+
+	/** url（スマホ専用） */
+	URL("url", Flag.SIZED | Flag.CAPITALIZABLE | Flag.SMARTPHONE_ONLY),
+
+	/** tel（スマホ専用） */
+	TEL("tel", Flag.SIZED | Flag.SMARTPHONE_ONLY),
+
+	/** number（スマホ専用） */
+	NUMBER("number", Flag.SIZED | Flag.SMARTPHONE_ONLY),
+
+	/** search（スマホ専用） */
+	SEARCH("search", Flag.SIZED | Flag.CAPITALIZABLE | Flag.SMARTPHONE_ONLY),
+
+	/** date（スマホ専用） */
+	DATE("date", Flag.SMARTPHONE_ONLY),
+
+	/** datetime-local（スマホ専用） */
+	DATETIME_LOCAL("datetime-local", Flag.SMARTPHONE_ONLY),
+
+	/** range（スマホ専用） */
+	RANGE("range", Flag.SMARTPHONE_ONLY),
+
+	/** color（スマホ専用、iPhone/iPadも非対応） */
+	COLOR("color", Flag.SMARTPHONE_ONLY | Flag.UNSUPPORTED_IOS),
+
+	/** hidden */
+	HIDDEN("hidden", 0),
+
+	/** checkbox */
+	CHECKBOX("checkbox", Flag.CHECKABLE),
+
+	/** radio */
+	RADIO("radio", Flag.CHECKABLE),
+
+	/** file */
+	FILE("file", 0),
+
+	/** submit */
+	SUBMIT("submit", 0),
+
+	/** image */
+	IMAGE("image", 0),
+
+	/** reset */
+	RESET("reset", 0),
+
+	/** button */
+	BUTTON("button", 0);
+
+	/** type属性値 */
+	private final String value;
+
+	/** 特性 */
+	private final int flags;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param value
+	 *            type属性値
+	 * @param flags
+	 *            特性（{@link Flag}の組み合わせ）
+	 */
+	private InputType(String value, int flags) {
+		this.value = value;
+		this.flags = flags;
+	}
+
+	/**
+	 * type属性値から取得する.
+	 * <p>
+	 * 大文字小文字は区別しない.
+	 * </p>
+	 *
+	 * @param type
+	 *            type属性値
+	 * @return {@link InputType}.<br>
+	 *         該当なしの場合はnull.
+	 */
+	static InputType of(String type) {
+		if (type == null) {
+			return null;
+		}
+		switch (type.toLowerCase(Locale.ENGLISH)) {
+		case "text":
+			return TEXT;
+		case "password":
+			return PASSWORD;
+		case "email":
+			return EMAIL;
+		case "url":
+			return URL;
+		case "tel":
+			return TEL;
+		case "number":
+			return NUMBER;
+		case "search":
+			return SEARCH;
+		case "date":
+			return DATE;
+		case "datetime-local":
+			return DATETIME_LOCAL;
+		case "range":
+			return RANGE;
+		case "color":
+			return COLOR;
+		case "hidden":
+			return HIDDEN;
+		case "checkbox":
+			return CHECKBOX;
+		case "radio":
+			return RADIO;
+		case "file":
+			return FILE;
+		case "submit":
+			return SUBMIT;
+		case "image":
+			return IMAGE;
+		case "reset":
+			return RESET;
+		case "button":
+			return BUTTON;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * アクセス端末で使用するタイプを取得する.
+	 * <p>
+	 * スマホ専用のタイプはAndroidでは非対応なので、textに変換する.<br>
+	 * colorはiPhone/iPadでも非対応なので、textに変換する.
+	 * </p>
+	 *
+	 * @param device
+	 *            アクセス端末区分
+	 * @return 使用するタイプ
+	 */
+	InputType resolve(Device device) {
+		if (isSmartphoneOnly() && device instanceof Android) {
+			return TEXT;
+		}
+		if ((flags & Flag.UNSUPPORTED_IOS) != 0
+				&& (device instanceof Iphone || device instanceof Ipad)) {
+			return TEXT;
+		}
+		return this;
+	}
+
+	/**
+	 * type属性値を取得する.
+	 *
+	 * @return type属性値
+	 */
+	String getValue() {
+		return value;
+	}
+
+	/**
+	 * checkedを出力するタイプかどうか.
+	 *
+	 * @return checkbox/radioの場合はtrue
+	 */
+	boolean isCheckable() {
+		return (flags & Flag.CHECKABLE) != 0;
+	}
+
+	/**
+	 * size/maxlengthを出力するタイプかどうか.
+	 *
+	 * @return text/password/email/url/tel/number/searchの場合はtrue
+	 */
+	boolean isSized() {
+		return (flags & Flag.SIZED) != 0;
+	}
+
+	/**
+	 * iPhone/iPadで先頭大文字を抑止するタイプかどうか.
+	 *
+	 * @return text/email/url/searchの場合はtrue
+	 */
+	boolean isCapitalizable() {
+		return (flags & Flag.CAPITALIZABLE) != 0;
+	}
+
+	/**
+	 * スマホ専用のタイプかどうか.
+	 *
+	 * @return スマホ専用の場合はtrue
+	 */
+	boolean isSmartphoneOnly() {
+		return (flags & Flag.SMARTPHONE_ONLY) != 0;
+	}
+
+	/**
+	 * タイプの特性.
+	 */
+	private static final class Flag {
+		/** checkedを出力する */
+		static final int CHECKABLE = 1;
+
+		/** size/maxlengthを出力する */
+		static final int SIZED = 1 << 1;
+
+		/** iPhone/iPadで先頭大文字を抑止する */
+		static final int CAPITALIZABLE = 1 << 2;
+
+		/** スマホ専用（Androidではtextに変換） */
+		static final int SMARTPHONE_ONLY = 1 << 3;
+
+		/** iPhone/iPadではtextに変換 */
+		static final int UNSUPPORTED_IOS = 1 << 4;
+	}
+}
@@ -1,6 +1,6 @@
 package jp.kt.web.tag;
 
-import org.apache.taglibs.standard.tag.common.core.Util;
+import java.io.IOException;
 
 /**
  * selectタグ内のoptionタグにselectedを表示するためのタグクラス.
@@ -18,24 +18,27 @@ public final class OptionTag extends BaseTag {
 	private String displayText;
 
 	/**
-	 * タグ作成.
+	 * タグ出力.
 	 */
-	protected String createTag() {
-		StringBuilder tag = new StringBuilder();
-		tag.append("<option value=\"");
-		tag.append(value);
-		tag.append("\"");
+	@Override
+	protected void render(Appendable out) throws IOException {
+		XmlEscape.appendAttribute(out.append("<option"), "value", value);
 		// optionタグの値と選択済みの値が等しければselectedを出力
 		if (value != null && selectedValue != null
 				&& value.equals(selectedValue)) {
-			tag.append(" selected");
+			out.append(" selected");
 		}
-		tag.append(">");
+		out.append('>');
 		// 表示テキスト出力
-		tag.append(displayText);
-		tag.append("</option>");
-		// タグを返す
-		return tag.toString();
+		XmlEscape.append(out, displayText);
+		out.append("</option>");
+	}
+
+	@Override
+	protected void reset() {
+		value = null;
+		selectedValue = null;
+		displayText = null;
 	}
 
 	/**
@@ -45,7 +48,7 @@ public final class OptionTag extends BaseTag {
 	 *            選択済みの値
 	 */
 	public void setSelectedValue(String selectedValue) {
-		this.selectedValue = Util.escapeXml(selectedValue);
+		this.selectedValue = selectedValue;
 	}
 
 	/**
@@ -55,7 +58,7 @@ public final class OptionTag extends BaseTag {
 	 *            値
 	 */
 	public void setValue(String value) {
-		this.value = Util.escapeXml(value);
+		this.value = value;
 	}
 
 	/**
@@ -65,6 +68,6 @@ public final class OptionTag extends BaseTag {
 	 *            表示文字列
 	 */
 	public void setDisplayText(String displayText) {
-		this.displayText = Util.escapeXml(displayText);
+		this.displayText = displayText;
 	}
 }
@@ -1,7 +1,6 @@
 package jp.kt.web.tag;
 
-import jp.kt.tool.HtmlUtil;
-import jp.kt.tool.StringUtil;
+import java.io.IOException;
 
 /**
  * テキスト出力タグクラス.
@@ -9,6 +8,8 @@ import jp.kt.tool.StringUtil;
  * 下記の機能を提供する.<br>
  * ・HTML表示のためのエスケープ<br>
  * ・改行コードを＜br＞タグへ変換<br>
+ * ・全角カナを半角カナへ変換<br>
+ * ・指定バイト数でカット（カットした場合は末尾に「...」を付加）<br>
  * </p>
  *
  * @author tatsuya.kumon
@@ -46,39 +47,22 @@ public final class OutTag extends BaseTag {
 	private Integer cutByte = null;
 
 	/**
-	 * タグ作成.
+	 * タグ出力.
 	 */
-	protected String createTag() {
-		String out = new String(value);
-		// エスケープ処理
-		if (escapeXml) {
-			// HTML特殊文字をエスケープする
-			out = HtmlUtil.escape(out);
-		}
-		// 改行コードを<br>タグに変換
-		if (convertBR) {
-			out = HtmlUtil.replaceLineToBrtag(out);
-		}
-		// 全角文字を半角文字へ変換
-		if (zenToHan) {
-			out = StringUtil.zenToHan(out);
-		}
-		// 指定バイト数でカットする
-		if (cutByte != null) {
-			try {
-				int beforeLength = out.length();
-				out = StringUtil.cutString(out, cutByte);
-				int afterLength = out.length();
-				// カットされたら後ろに文字を付加する
-				if (beforeLength > afterLength) {
-					out = out + "...";
-				}
-			} catch (Exception e) {
-				// Exceptionが出たらカットしないで処理続行
-			}
-		}
-		// タグを返す
-		return out;
+	@Override
+	protected void render(Appendable out) throws IOException {
+		// エスケープ、改行コードの<br>タグ変換、全角カナの半角カナ変換、指定バイト数でのカットを1パスで行う
+		TextTransformer.write(out, value, escapeXml, convertBR, zenToHan,
+				cutByte != null ? cutByte : -1);
+	}
+
+	@Override
+	protected void reset() {
+		value = null;
+		escapeXml = true;
+		convertBR = false;
+		zenToHan = false;
+		cutByte = null;
 	}
 
 	/**
@@ -0,0 +1,315 @@
+package jp.kt.web.tag;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import jp.kt.prop.KtProperties;
+
+/**
+ * {@link OutTag} のテキスト変換を1パスで行うクラス.
+ * <p>
+ * HTMLエスケープ、改行コードの＜br＞タグ変換、全角カナの半角カナ変換、指定バイト数でのカットを<br>
+ * 1文字ずつ判定しながら出力先へ直接書き込む.<br>
+ * 変換対象の文字を含まない区間は、元の文字列のまま出力する.<br>
+ * <br>
+ * バイト数は変換前の表示文字（半角カナ変換後）を kt.core.default.charset で数える.<br>
+ * <br>
+ * 従来の {@link jp.kt.tool.HtmlUtil#escape(String)}、
+ * {@link jp.kt.tool.HtmlUtil#replaceLineToBrtag(String)}、
+ * {@link jp.kt.tool.StringUtil#zenToHan(String)}、
+ * {@link jp.kt.tool.StringUtil#cutString(String, int)} を順に適用した結果と下記が異なる.<br>
+ * ・「"」「'」は他のタグと同じく「&amp;#034;」「&amp;#039;」で出力する（ブラウザでの表示は同じ）.<br>
+ * ・半角カナ変換の対象は、カタカナ（ァ～ヶ）と「。」「「」「」」「、」「・」「ー」「゛」「゜」のみ.<br>
+ * 　半角の存在しない「ヮ」「ヰ」「ヱ」「ヵ」「ヶ」は「ﾜ」「ｲ」「ｴ」「ｶ」「ｹ」、「ヴ」は「ｳﾞ」とする.<br>
+ * ・カットのバイト数はエスケープ前の表示文字で数えるため、文字参照や＜br＞タグの途中ではカットしない.<br>
+ * 　改行コードはCRLFも含め元の文字のバイト数で数える.<br>
+ * ・サロゲートペア、および半角カナ変換後の濁音・半濁音（「ｶﾞ」など）は分割しない.<br>
+ * ・Shift_JIS系では、表現できない文字（サロゲートペアを含む）も全角1文字の2バイトとして数える.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class TextTransformer {
+	/** 改行コードの変換後のタグ */
+	private static final String BR_TAG = "<br>";
+
+	/** カットした場合に付加する文字列 */
+	private static final String CUT_SUFFIX = "...";
+
+	/** 全角カナ（ァ～ヶ）に対応する半角カナ */
+	private static final String[] HALF_KANA = {
+			"ｧ", "ｱ", "ｨ", "ｲ", "ｩ", "ｳ", "ｪ", "ｴ", "ｫ", "ｵ",
+			"ｶ", "ｶﾞ", "ｷ", "ｷﾞ", "ｸ", "ｸﾞ", "ｹ", "ｹﾞ", "ｺ", "ｺﾞ",
+			"ｻ", "ｻﾞ", "ｼ", "ｼﾞ", "ｽ", "ｽﾞ", "ｾ", "ｾﾞ", "ｿ", "ｿﾞ",
+			"ﾀ", "ﾀﾞ", "ﾁ", "ﾁﾞ", "ｯ", "ﾂ", "ﾂﾞ", "ﾃ", "ﾃﾞ", "ﾄ",
+			"ﾄﾞ", "ﾅ", "ﾆ", "ﾇ", "ﾈ", "ﾉ", "ﾊ", "ﾊﾞ", "ﾊﾟ", "ﾋ",
+			"ﾋﾞ", "ﾋﾟ", "ﾌ", "ﾌﾞ", "ﾌﾟ", "ﾍ", "ﾍﾞ", "ﾍﾟ", "ﾎ", "ﾎﾞ",
+			"ﾎﾟ", "ﾏ", "ﾐ", "ﾑ", "ﾒ", "ﾓ", "ｬ", "ﾔ", "ｭ", "ﾕ",
+			"ｮ", "ﾖ", "ﾗ", "ﾘ", "ﾙ", "ﾚ", "ﾛ", "ﾜ", "ﾜ", "ｲ",
+			"ｴ", "ｦ", "ﾝ", "ｳﾞ", "ｶ", "ｹ" };
+
+	/** 半角カナ変換表の先頭の文字 */
+	private static final char HALF_KANA_FIRST = 'ァ';
+
+	/** 半角カナ変換表の最後の文字 */
+	private static final char HALF_KANA_LAST = 'ヶ';
+
+	/** バイト数の数え方：UTF-8 */
+	private static final int WIDTH_UTF8 = 0;
+
+	/** バイト数の数え方：Shift_JIS系 */
+	private static final int WIDTH_SJIS = 1;
+
+	/** バイト数の数え方：その他の文字コード */
+	private static final int WIDTH_OTHER = 2;
+
+	/** バイト数を数える文字コード（kt.core.default.charset） */
+	private static volatile Charset defaultCharset;
+
+	/**
+	 * インスタンス化禁止.
+	 */
+	private TextTransformer() {
+	}
+
+	/**
+	 * テキストを変換しながら出力する.
+	 *
+	 * @param out
+	 *            出力先
+	 * @param s
+	 *            テキスト
+	 * @param escapeXml
+	 *            HTML特殊文字をエスケープする場合はtrue
+	 * @param convertBR
+	 *            改行コードを＜br＞タグに変換する場合はtrue
+	 * @param zenToHan
+	 *            全角カナを半角カナに変換する場合はtrue
+	 * @param cutByte
+	 *            カットするバイト数.<br>
+	 *            0未満の場合はカットしない.
+	 * @throws IOException
+	 *             出力に失敗した場合
+	 */
+	static void write(Appendable out, String s, boolean escapeXml,
+			boolean convertBR, boolean zenToHan, int cutByte)
+			throws IOException {
+		write(out, s, escapeXml, convertBR, zenToHan, cutByte,
+				cutByte >= 0 ? getDefaultCharset() : null);
+	}
+
+	/**
+	 * バイト数を数える文字コードを指定して、テキストを変換しながら出力する.
+	 *
+	 * @param out
+	 *            出力先
+	 * @param s
+	 *            テキスト
+	 * @param escapeXml
+	 *            HTML特殊文字をエスケープする場合はtrue
+	 * @param convertBR
+	 *            改行コードを＜br＞タグに変換する場合はtrue
+	 * @param zenToHan
+	 *            全角カナを半角カナに変換する場合はtrue
+	 * @param cutByte
+	 *            カットするバイト数.<br>
+	 *            0未満の場合はカットしない.
+	 * @param charset
+	 *            バイト数を数える文字コード
+	 * @throws IOException
+	 *             出力に失敗した場合
+	 */
+	static void write(Appendable out, String s, boolean escapeXml,
+			boolean convertBR, boolean zenToHan, int cutByte, Charset charset)
+			throws IOException {
+		if (s == null) {
+			return;
+		}
+		int length = s.length();
+		int widthType = cutByte >= 0 ? widthTypeOf(charset) : WIDTH_OTHER;
+		// 元の文字列のまま出力していない区間の先頭
+		int start = 0;
+		long bytes = 0;
+		boolean cut = false;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			// 置換する文字列（nullの場合はそのまま）
+			String replacement = null;
+			// 表示文字が変わる場合はtrue（半角カナ変換）
+			boolean displayChanged = false;
+			// 元の文字列で何文字分を処理するか
+			int consumed = 1;
+			if (convertBR && (c == '\r' || c == '\n')) {
+				replacement = BR_TAG;
+				if (c == '\r' && i + 1 < length && s.charAt(i + 1) == '\n') {
+					consumed = 2;
+				}
+			} else if (escapeXml && c <= '>') {
+				replacement = XmlEscape.escapeOf(c);
+			} else if (zenToHan && c >= '、' && c <= 'ー') {
+				replacement = toHalfKana(c);
+				displayChanged = replacement != null;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length
+					&& Character.isLowSurrogate(s.charAt(i + 1))) {
+				consumed = 2;
+			}
+			if (cutByte >= 0) {
+				// 表示文字としてのバイト数を加算
+				if (displayChanged) {
+					bytes += byteLength(replacement, 0, replacement.length(),
+							charset, widthType);
+				} else {
+					bytes += byteLength(s, i, i + consumed, charset, widthType);
+				}
+				if (bytes > cutByte) {
+					cut = true;
+					length = i;
+					break;
+				}
+			}
+			if (replacement != null) {
+				if (start < i) {
+					out.append(s, start, i);
+				}
+				out.append(replacement);
+				start = i + consumed;
+			}
+			i += consumed - 1;
+		}
+		if (start == 0 && length == s.length()) {
+			// 変換もカットもない場合はそのまま出力
+			out.append(s);
+		} else if (start < length) {
+			out.append(s, start, length);
+		}
+		if (cut) {
+			out.append(CUT_SUFFIX);
+		}
+	}
+
+	/**
+	 * 全角カナを半角カナに変換する.
+	 *
+	 * @param c
+	 *            文字
+	 * @return 半角カナ.<br>
+	 *         変換対象外の場合はnull.
+	 */
+	private static String toHalfKana(char c) {
+		if (c >= HALF_KANA_FIRST && c <= HALF_KANA_LAST) {
+			return HALF_KANA[c - HALF_KANA_FIRST];
+		}
+		switch (c) {
+		case '。':
+			return "｡";
+		case '「':
+			return "｢";
+		case '」':
+			return "｣";
+		case '、':
+			return "､";
+		case '・':
+			return "･";
+		case 'ー':
+			return "ｰ";
+		case '゛':
+			return "ﾞ";
+		case '゜':
+			return "ﾟ";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * バイト数を数える文字コードを取得する.
+	 *
+	 * @return kt.core.default.charset の文字コード
+	 */
+	private static Charset getDefaultCharset() {
+		Charset cs = defaultCharset;
+		if (cs == null) {
+			cs = Charset.forName(KtProperties.getInstance()
+					.getDefaultCharset());
+			defaultCharset = cs;
+		}
+		return cs;
+	}
+
+	/**
+	 * 文字コードに応じたバイト数の数え方を取得する.
+	 *
+	 * @param charset
+	 *            文字コード
+	 * @return バイト数の数え方
+	 */
+	private static int widthTypeOf(Charset charset) {
+		if (charset.equals(StandardCharsets.UTF_8)) {
+			return WIDTH_UTF8;
+		}
+		String name = charset.name();
+		if ("Shift_JIS".equals(name) || "windows-31j".equals(name)) {
+			return WIDTH_SJIS;
+		}
+		return WIDTH_OTHER;
+	}
+
+	/**
+	 * 文字列のバイト数を求める.
+	 *
+	 * @param s
+	 *            文字列
+	 * @param begin
+	 *            開始位置
+	 * @param end
+	 *            終了位置
+	 * @param charset
+	 *            文字コード
+	 * @param widthType
+	 *            バイト数の数え方
+	 * @return バイト数
+	 */
+	private static int byteLength(String s, int begin, int end,
+			Charset charset, int widthType) {
+		int total = 0;
+		for (int i = begin; i < end; i++) {
+			char c = s.charAt(i);
+			switch (widthType) {
+			case WIDTH_UTF8:
+				if (c < 0x80) {
+					total += 1;
+				} else if (c < 0x800) {
+					total += 2;
+				} else if (Character.isSurrogate(c)) {
+					// サロゲートペアは2文字で4バイト
+					total += 2;
+				} else {
+					total += 3;
+				}
+				break;
+			case WIDTH_SJIS:
+				if (c < 0x80 || (c >= '｡' && c <= 'ﾟ')
+						|| Character.isSurrogate(c)) {
+					// サロゲートペアは2文字で全角1文字分
+					total += 1;
+				} else {
+					total += 2;
+				}
+				break;
+			default:
+				if (c < 0x80) {
+					total += 1;
+				} else if (Character.isHighSurrogate(c) && i + 1 < end) {
+					// サロゲートペアはまとめて数える
+					total += s.substring(i, i + 2).getBytes(charset).length;
+					i++;
+				} else {
+					total += String.valueOf(c).getBytes(charset).length;
+				}
+				break;
+			}
+		}
+		return total;
+	}
+}
@@ -1,5 +1,7 @@
 package jp.kt.web.tag;
 
+import java.io.IOException;
+
 import javax.servlet.http.HttpServletRequest;
 
 /**
@@ -11,23 +13,25 @@ public final class UriTag extends BaseTag {
 	private String value;
 
 	/**
-	 * タグ作成.
+	 * タグ出力.
 	 */
-	protected String createTag() {
-		// 半角スラッシュから始まっていない場合はそのまま返す
+	@Override
+	protected void render(Appendable out) throws IOException {
+		// 半角スラッシュから始まっていない場合はそのまま出力する
 		boolean startsWithSlash = value.startsWith("/");
-		// URLエンコード
-		StringBuilder outUri = new StringBuilder();
 		if (startsWithSlash) {
 			// 半角スラッシュから始まっている場合、コンテキストパスを付加
 			HttpServletRequest req = (HttpServletRequest) pageContext
 					.getRequest();
-			String contextPath = req.getContextPath();
-			outUri.append(contextPath);
+			out.append(req.getContextPath());
 		}
-		outUri.append(value);
 		// URIを出力する
-		return outUri.toString();
+		out.append(value);
+	}
+
+	@Override
+	protected void reset() {
+		value = null;
 	}
 
 	/**
@@ -0,0 +1,107 @@
+package jp.kt.web.tag;
+
+import java.io.IOException;
+
+/**
+ * HTML特殊文字をエスケープしながら出力するクラス.
+ * <p>
+ * エスケープ結果は {@link org.apache.taglibs.standard.tag.common.core.Util#escapeXml(String)}
+ * と同じだが、<br>
+ * 中間文字列を作らず、エスケープ不要な区間はそのまま出力先へ書き込む.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class XmlEscape {
+	/**
+	 * インスタンス化禁止.
+	 */
+	private XmlEscape() {
+	}
+
+	/**
+	 * 文字のエスケープ表現を取得する.
+	 *
+	 * @param c
+	 *            文字
+	 * @return エスケープ表現.<br>
+	 *         エスケープ不要の場合はnull.
+	 */
+	static String escapeOf(char c) {
+		switch (c) {
+		case '&':
+			return "&amp;";
+		case '<':
+			return "&lt;";
+		case '>':
+			return "&gt;";
+		case '"':
+			return "&#034;";
+		case '\'':
+			return "&#039;";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * エスケープして出力する.
+	 *
+	 * @param out
+	 *            出力先
+	 * @param s
+	 *            文字列（nullの場合は何も出力しない）
+	 * @throws IOException
+	 *             出力に失敗した場合
+	 */
+	static void append(Appendable out, CharSequence s) throws IOException {
+		if (s == null) {
+			return;
+		}
+		int start = 0;
+		int length = s.length();
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c > '>') {
+				continue;
+			}
+			String escaped = escapeOf(c);
+			if (escaped != null) {
+				if (start < i) {
+					out.append(s, start, i);
+				}
+				out.append(escaped);
+				start = i + 1;
+			}
+		}
+		if (start == 0) {
+			out.append(s);
+		} else if (start < length) {
+			out.append(s, start, length);
+		}
+	}
+
+	/**
+	 * 値をエスケープして属性を出力する.
+	 * <p>
+	 * 「 name="value"」の形式で出力する.
+	 * </p>
+	 *
+	 * @param out
+	 *            出力先
+	 * @param name
+	 *            属性名
+	 * @param value
+	 *            属性値
+	 * @throws IOException
+	 *             出力に失敗した場合
+	 */
+	static void appendAttribute(Appendable out, String name, String value)
+			throws IOException {
+		out.append(' ');
+		out.append(name);
+		out.append("=\"");
+		append(out, value);
+		out.append('"');
+	}
+}
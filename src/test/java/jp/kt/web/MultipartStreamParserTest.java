@@ -0,0 +1,277 @@
+package jp.kt.web;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.http.HttpServletRequest;
+
+import jp.kt.exception.KtException;
+
+import org.junit.Test;
+
+/**
+ * {@link MultipartStreamParser}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class MultipartStreamParserTest {
+	/** boundary */
+	private static final String BOUNDARY = "----KtTestBoundary7MA4YWxk";
+
+	/**
+	 * 区切り文字列が読み込みの境目をまたぐ場合.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void boundarySplitAcrossReads() throws Exception {
+		byte[] body = body(new String[] { "a", "first" }, new String[] { "b",
+				"second value" });
+		// 1バイトずつから区切り文字列の長さを超えるまで、読み込み単位を変えて確認
+		for (int chunk = 1; chunk <= BOUNDARY.length() + 8; chunk++) {
+			List<String> values = parse(body, chunk, -1, false);
+			assertEquals("chunk=" + chunk, Arrays.asList("a=first",
+					"b=second value"), values);
+		}
+	}
+
+	/**
+	 * 区切り文字列の直前にCRLFを含む値の場合.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void crlfBeforeBoundary() throws Exception {
+		byte[] body = body(new String[] { "a", "line1\r\n" }, new String[] {
+				"b", "\r\n\r\n" }, new String[] { "c", "\r\n--" });
+		for (int chunk : new int[] { 1, 3, 7, 1024 }) {
+			List<String> values = parse(body, chunk, -1, false);
+			assertEquals("chunk=" + chunk, Arrays.asList("a=line1\r\n",
+					"b=\r\n\r\n", "c=\r\n--"), values);
+		}
+	}
+
+	/**
+	 * 1パートの最大バイト数を超えた場合.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void maxPartSize() throws Exception {
+		byte[] body = body(new String[] { "a", "12345" }, new String[] { "b",
+				"1234567890" });
+		// 上限ちょうどは読み込める
+		assertEquals(Arrays.asList("a=12345"), parse(
+				body(new String[] { "a", "12345" }), 2, 5, false));
+		try {
+			parse(body, 2, 5, false);
+			fail("上限を超えたパートが読み込めてしまった");
+		} catch (KtException e) {
+			assertEquals("A064", e.getCode());
+		}
+	}
+
+	/**
+	 * 1バイトずつ読み込んでも内容が一致すること.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void readByteByByte() throws Exception {
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			large.append((char) ('a' + i % 26));
+			if (i % 100 == 99) {
+				large.append("\r\n-");
+			}
+		}
+		byte[] body = body(new String[] { "big", large.toString() });
+		assertEquals(Arrays.asList("big=" + large), parse(body, 4096, -1,
+				true));
+	}
+
+	/**
+	 * 読み込まれなかったパートが読み捨てられること.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void unreadPartIsSkipped() throws Exception {
+		byte[] body = body(new String[] { "a", "skipped" }, new String[] {
+				"b", "read" });
+		final List<String> names = new ArrayList<String>();
+		final ByteArrayOutputStream last = new ByteArrayOutputStream();
+		new MultipartStreamParser(request(body, 5)).parse(new PartHandler() {
+			@Override
+			public void handle(StreamPart part) throws Exception {
+				names.add(part.getName());
+				if ("b".equals(part.getName())) {
+					copy(part.getInputStream(), last, false);
+				}
+			}
+		});
+		assertEquals(Arrays.asList("a", "b"), names);
+		assertArrayEquals("read".getBytes(StandardCharsets.UTF_8),
+				last.toByteArray());
+	}
+
+	/**
+	 * 解析して「名前=値」のリストにする.
+	 *
+	 * @param body
+	 *            リクエストボディ
+	 * @param chunk
+	 *            1回の読み込みで返す最大バイト数
+	 * @param maxPartSize
+	 *            1パートの最大バイト数
+	 * @param byteByByte
+	 *            1バイトずつ読み込む場合はtrue
+	 * @return 「名前=値」のリスト
+	 * @throws Exception
+	 *             解析に失敗した場合
+	 */
+	private static List<String> parse(byte[] body, int chunk,
+			long maxPartSize, final boolean byteByByte) throws Exception {
+		final List<String> values = new ArrayList<String>();
+		MultipartStreamParser parser = new MultipartStreamParser(request(
+				body, chunk));
+		parser.setMaxPartSize(maxPartSize);
+		parser.parse(new PartHandler() {
+			@Override
+			public void handle(StreamPart part) throws Exception {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				copy(part.getInputStream(), out, byteByByte);
+				values.add(part.getName() + "="
+						+ new String(out.toByteArray(), StandardCharsets.UTF_8));
+			}
+		});
+		return values;
+	}
+
+	/**
+	 * ストリームの内容をコピーする.
+	 *
+	 * @param in
+	 *            入力
+	 * @param out
+	 *            出力
+	 * @param byteByByte
+	 *            1バイトずつ読み込む場合はtrue
+	 * @throws IOException
+	 *             入出力エラーが発生した場合
+	 */
+	private static void copy(InputStream in, ByteArrayOutputStream out,
+			boolean byteByByte) throws IOException {
+		if (byteByByte) {
+			int b;
+			while ((b = in.read()) >= 0) {
+				out.write(b);
+			}
+			return;
+		}
+		byte[] buf = new byte[37];
+		int n;
+		while ((n = in.read(buf)) >= 0) {
+			out.write(buf, 0, n);
+		}
+	}
+
+	/**
+	 * multipart/form-dataのボディを作成する.
+	 *
+	 * @param fields
+	 *            名前と値の組
+	 * @return ボディ
+	 */
+	private static byte[] body(String[]... fields) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("preamble\r\n");
+		for (String[] field : fields) {
+			sb.append("--").append(BOUNDARY).append("\r\n");
+			sb.append("Content-Disposition: form-data; name=\"")
+					.append(field[0]).append("\"\r\n\r\n");
+			sb.append(field[1]).append("\r\n");
+		}
+		sb.append("--").append(BOUNDARY).append("--\r\nepilogue");
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * リクエストを作成する.
+	 *
+	 * @param body
+	 *            リクエストボディ
+	 * @param chunk
+	 *            1回の読み込みで返す最大バイト数
+	 * @return HTTPリクエスト
+	 */
+	private static HttpServletRequest request(byte[] body, final int chunk) {
+		final ByteArrayInputStream in = new ByteArrayInputStream(body);
+		final ServletInputStream sis = new ServletInputStream() {
+			@Override
+			public int read() throws IOException {
+				return in.read();
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return in.read(b, off, Math.min(len, chunk));
+			}
+
+			@Override
+			public boolean isFinished() {
+				return in.available() == 0;
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setReadListener(ReadListener readListener) {
+				throw new UnsupportedOperationException();
+			}
+		};
+		return (HttpServletRequest) Proxy.newProxyInstance(
+				MultipartStreamParserTest.class.getClassLoader(),
+				new Class<?>[] { HttpServletRequest.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						switch (method.getName()) {
+						case "getContentType":
+							return "multipart/form-data; boundary=" + BOUNDARY;
+						case "getCharacterEncoding":
+							return "UTF-8";
+						case "getInputStream":
+							return sis;
+						default:
+							throw new UnsupportedOperationException(method
+									.getName());
+						}
+					}
+				});
+	}
+}
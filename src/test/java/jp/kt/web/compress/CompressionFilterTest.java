@@ -0,0 +1,526 @@
+package jp.kt.web.compress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+
+/**
+ * {@link CompressionFilter}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class CompressionFilterTest {
+	/** 圧縮の閾値（デフォルト）、およびWriterのバッファサイズを超える本文 */
+	private static final String LARGE = repeat("<tr><td>main page</td></tr>\n",
+			400);
+
+	/**
+	 * 閾値を超えて圧縮を開始した後に、errorPageへforwardした場合.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void forwardAfterThreshold() throws Exception {
+		FakeResponse res = new FakeResponse();
+		filter(res, new Body() {
+			@Override
+			public void write(HttpServletResponse res) throws IOException {
+				res.setContentType("text/html; charset=UTF-8");
+				PrintWriter out = res.getWriter();
+				out.print(LARGE);
+				// JSPのerrorPageへのforwardと同様にバッファを破棄して出力し直す
+				res.resetBuffer();
+				out = res.getWriter();
+				out.print("<p>エラー</p>");
+			}
+		});
+		assertEquals("gzip", res.headers.get("content-encoding"));
+		assertEquals("<p>エラー</p>", gunzip(res.body.toByteArray()));
+	}
+
+	/**
+	 * 閾値を超えて圧縮を開始した後に、getOutputStreamでバッファを破棄した場合.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void resetBufferWithOutputStream() throws Exception {
+		FakeResponse res = new FakeResponse();
+		filter(res, new Body() {
+			@Override
+			public void write(HttpServletResponse res) throws IOException {
+				res.setContentType("text/plain");
+				ServletOutputStream out = res.getOutputStream();
+				out.write(LARGE.getBytes(StandardCharsets.UTF_8));
+				res.resetBuffer();
+				out.write("retry".getBytes(StandardCharsets.UTF_8));
+			}
+		});
+		assertEquals("gzip", res.headers.get("content-encoding"));
+		assertEquals("retry", gunzip(res.body.toByteArray()));
+	}
+
+	/**
+	 * 圧縮を開始した後にresetした場合は、圧縮するかの判定からやり直す.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void resetAfterThreshold() throws Exception {
+		FakeResponse res = new FakeResponse();
+		filter(res, new Body() {
+			@Override
+			public void write(HttpServletResponse res) throws IOException {
+				res.setContentType("text/html; charset=UTF-8");
+				res.getWriter().print(LARGE);
+				res.reset();
+				res.setContentType("text/html; charset=UTF-8");
+				res.getWriter().print("small");
+			}
+		});
+		// 閾値未満のため圧縮しない
+		assertNull(res.headers.get("content-encoding"));
+		assertEquals("small", new String(res.body.toByteArray(),
+				StandardCharsets.UTF_8));
+
+		final FakeResponse res2 = new FakeResponse();
+		filter(res2, new Body() {
+			@Override
+			public void write(HttpServletResponse res) throws IOException {
+				res.setContentType("text/html; charset=UTF-8");
+				res.getWriter().print(LARGE);
+				res.reset();
+				res.setContentType("text/html; charset=UTF-8");
+				res.getWriter().print(LARGE);
+			}
+		});
+		// ヘッダを付け直して圧縮する
+		assertEquals("gzip", res2.headers.get("content-encoding"));
+		assertEquals(LARGE, gunzip(res2.body.toByteArray()));
+	}
+
+	/**
+	 * 確定済みのレスポンスは破棄できない.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void resetBufferAfterCommit() throws Exception {
+		FakeResponse res = new FakeResponse();
+		filter(res, new Body() {
+			@Override
+			public void write(HttpServletResponse res) throws IOException {
+				res.setContentType("text/html; charset=UTF-8");
+				res.getWriter().print(LARGE);
+				res.flushBuffer();
+				try {
+					res.resetBuffer();
+					fail("IllegalStateException expected");
+				} catch (IllegalStateException e) {
+					// 確定済み
+				}
+				res.getWriter().print("tail");
+			}
+		});
+		assertEquals(LARGE + "tail", gunzip(res.body.toByteArray()));
+	}
+
+	/**
+	 * 非同期処理を開始した場合は、非同期処理の完了時に出力を完了する.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void asyncCompletesLater() throws Exception {
+		final FakeRequest req = new FakeRequest();
+		FakeResponse res = new FakeResponse();
+		final PrintWriter[] writer = new PrintWriter[1];
+		filter(req, res, new Body() {
+			@Override
+			public void write(HttpServletResponse res) throws IOException {
+				req.proxy().startAsync();
+				res.setContentType("text/html; charset=UTF-8");
+				writer[0] = res.getWriter();
+				writer[0].print(LARGE);
+			}
+		});
+		// Filterを抜けた後も、非同期処理のスレッドから出力できる
+		writer[0].print("tail");
+		req.complete();
+		assertEquals("gzip", res.headers.get("content-encoding"));
+		assertEquals(LARGE + "tail", gunzip(res.body.toByteArray()));
+	}
+
+	/**
+	 * ノンブロッキング出力は圧縮せず、元のストリームに委譲する.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void writeListenerDelegates() throws Exception {
+		final FakeResponse res = new FakeResponse();
+		final WriteListener listener = new WriteListener() {
+			@Override
+			public void onWritePossible() {
+			}
+
+			@Override
+			public void onError(Throwable t) {
+			}
+		};
+		filter(res, new Body() {
+			@Override
+			public void write(HttpServletResponse response) throws IOException {
+				response.setContentType("text/plain");
+				ServletOutputStream out = response.getOutputStream();
+				out.write("head".getBytes(StandardCharsets.UTF_8));
+				out.setWriteListener(listener);
+				assertSame(listener, res.writeListener);
+				out.write(LARGE.getBytes(StandardCharsets.UTF_8));
+			}
+		});
+		assertNull(res.headers.get("content-encoding"));
+		assertEquals("head" + LARGE, new String(res.body.toByteArray(),
+				StandardCharsets.UTF_8));
+
+		// 圧縮を開始した後は切り替えられない
+		filter(new FakeResponse(), new Body() {
+			@Override
+			public void write(HttpServletResponse response) throws IOException {
+				response.setContentType("text/plain");
+				ServletOutputStream out = response.getOutputStream();
+				out.write(LARGE.getBytes(StandardCharsets.UTF_8));
+				try {
+					out.setWriteListener(listener);
+					fail("IllegalStateException expected");
+				} catch (IllegalStateException e) {
+					// 圧縮中
+				}
+			}
+		});
+	}
+
+	/**
+	 * レスポンスの出力内容.
+	 */
+	private interface Body {
+		/**
+		 * 出力する.
+		 *
+		 * @param res
+		 *            HTTPレスポンス
+		 * @throws IOException
+		 *             入出力エラーが発生した場合
+		 */
+		void write(HttpServletResponse res) throws IOException;
+	}
+
+	/**
+	 * Filterを通して出力する.
+	 *
+	 * @param res
+	 *            HTTPレスポンス
+	 * @param body
+	 *            出力内容
+	 * @throws Exception
+	 *             出力に失敗した場合
+	 */
+	private static void filter(FakeResponse res, Body body) throws Exception {
+		filter(new FakeRequest(), res, body);
+	}
+
+	/**
+	 * Filterを通して出力する.
+	 *
+	 * @param req
+	 *            HTTPリクエスト
+	 * @param res
+	 *            HTTPレスポンス
+	 * @param body
+	 *            出力内容
+	 * @throws Exception
+	 *             出力に失敗した場合
+	 */
+	private static void filter(FakeRequest req, FakeResponse res,
+			final Body body) throws Exception {
+		new CompressionFilter().doFilter(req.proxy(), res.proxy(), new FilterChain() {
+			@Override
+			public void doFilter(ServletRequest request,
+					ServletResponse response) throws IOException {
+				body.write((HttpServletResponse) response);
+			}
+		});
+	}
+
+	/**
+	 * gzipを展開する.
+	 *
+	 * @param data
+	 *            gzipデータ
+	 * @return 展開した文字列
+	 * @throws IOException
+	 *             展開に失敗した場合
+	 */
+	private static String gunzip(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(
+				data))) {
+			byte[] buf = new byte[4096];
+			int n;
+			while ((n = in.read(buf)) != -1) {
+				out.write(buf, 0, n);
+			}
+		}
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * 文字列を繰り返す.
+	 *
+	 * @param s
+	 *            文字列
+	 * @param count
+	 *            回数
+	 * @return 繰り返した文字列
+	 */
+	private static String repeat(String s, int count) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			sb.append(s);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * コンテナのリクエストの代わり.
+	 * <p>
+	 * 非同期処理の開始と完了のみを扱う.
+	 * </p>
+	 */
+	private static final class FakeRequest {
+		/** 非同期処理のリスナー */
+		private final List<AsyncListener> listeners = new ArrayList<>();
+
+		/** 非同期処理中フラグ */
+		private boolean asyncStarted;
+
+		/** HTTPリクエスト */
+		private final HttpServletRequest request = (HttpServletRequest) Proxy
+				.newProxyInstance(getClass().getClassLoader(),
+						new Class<?>[] { HttpServletRequest.class },
+						new InvocationHandler() {
+							@Override
+							public Object invoke(Object proxy, Method method,
+									Object[] args) {
+								switch (method.getName()) {
+								case "getHeader":
+									return "Accept-Encoding".equals(args[0]) ? "gzip"
+											: null;
+								case "getMethod":
+									return "GET";
+								case "getDispatcherType":
+									return DispatcherType.REQUEST;
+								case "startAsync":
+									asyncStarted = true;
+									return context;
+								case "getAsyncContext":
+									return context;
+								case "isAsyncStarted":
+									return asyncStarted;
+								case "isAsyncSupported":
+									return true;
+								default:
+									return null;
+								}
+							}
+						});
+
+		/** 非同期処理のコンテキスト */
+		private final AsyncContext context = (AsyncContext) Proxy
+				.newProxyInstance(getClass().getClassLoader(),
+						new Class<?>[] { AsyncContext.class },
+						new InvocationHandler() {
+							@Override
+							public Object invoke(Object proxy, Method method,
+									Object[] args) {
+								if ("addListener".equals(method.getName())) {
+									listeners.add((AsyncListener) args[0]);
+								}
+								return null;
+							}
+						});
+
+		/**
+		 * {@link HttpServletRequest}として取得する.
+		 *
+		 * @return HTTPリクエスト
+		 */
+		HttpServletRequest proxy() {
+			return request;
+		}
+
+		/**
+		 * コンテナと同様に非同期処理を完了する.
+		 *
+		 * @throws IOException
+		 *             リスナーでエラーが発生した場合
+		 */
+		void complete() throws IOException {
+			asyncStarted = false;
+			for (AsyncListener listener : listeners) {
+				listener.onComplete(new AsyncEvent(context));
+			}
+		}
+	}
+
+	/**
+	 * コンテナのレスポンスの代わり.
+	 * <p>
+	 * flushBufferで確定し、確定前はバッファの破棄、ヘッダの破棄ができる.
+	 * </p>
+	 */
+	private static final class FakeResponse {
+		/** ヘッダ（名前は小文字） */
+		private final Map<String, String> headers = new HashMap<>();
+
+		/** 本文 */
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		/** 確定済みフラグ */
+		private boolean committed;
+
+		/** ノンブロッキング出力のリスナー */
+		private WriteListener writeListener;
+
+		/** 出力ストリーム */
+		private final ServletOutputStream stream = new ServletOutputStream() {
+			@Override
+			public void write(int b) {
+				body.write(b);
+			}
+
+			@Override
+			public boolean isReady() {
+				return true;
+			}
+
+			@Override
+			public void setWriteListener(WriteListener listener) {
+				writeListener = listener;
+			}
+		};
+
+		/**
+		 * {@link HttpServletResponse}として取得する.
+		 *
+		 * @return HTTPレスポンス
+		 */
+		HttpServletResponse proxy() {
+			return (HttpServletResponse) Proxy.newProxyInstance(getClass()
+					.getClassLoader(),
+					new Class<?>[] { HttpServletResponse.class },
+					new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method,
+								Object[] args) {
+							return handle(method.getName(), args);
+						}
+					});
+		}
+
+		/**
+		 * メソッド呼び出しを処理する.
+		 *
+		 * @param name
+		 *            メソッド名
+		 * @param args
+		 *            引数
+		 * @return 戻り値
+		 */
+		private Object handle(String name, Object[] args) {
+			switch (name) {
+			case "getOutputStream":
+				return stream;
+			case "isCommitted":
+				return committed;
+			case "flushBuffer":
+				committed = true;
+				return null;
+			case "resetBuffer":
+				checkCommitted();
+				body.reset();
+				return null;
+			case "reset":
+				checkCommitted();
+				body.reset();
+				headers.clear();
+				return null;
+			case "setHeader":
+			case "addHeader":
+				headers.put(((String) args[0]).toLowerCase(Locale.ENGLISH),
+						(String) args[1]);
+				return null;
+			case "setContentType":
+				headers.put("content-type", (String) args[0]);
+				return null;
+			case "getContentType":
+				return headers.get("content-type");
+			case "getCharacterEncoding":
+				String type = headers.get("content-type");
+				int i = type == null ? -1 : type.indexOf("charset=");
+				return i < 0 ? "ISO-8859-1" : type.substring(i + 8);
+			case "setContentLengthLong":
+				headers.put("content-length", String.valueOf(args[0]));
+				return null;
+			default:
+				return null;
+			}
+		}
+
+		/**
+		 * 確定済みの場合は例外とする.
+		 */
+		private void checkCommitted() {
+			if (committed) {
+				throw new IllegalStateException("committed");
+			}
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package jp.kt.web.page;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * {@link DownloadPage}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class DownloadPageTest {
+	/**
+	 * 指定範囲を転送する.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void transferRange() throws Exception {
+		byte[] data = data(200000);
+		Path file = write(data);
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			DownloadPage.transfer(channel, 10, 150000, os);
+			assertArrayEquals(Arrays.copyOfRange(data, 10, 150010),
+					os.toByteArray());
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * 指定バイト数を送信できない場合（送信中にファイルが縮んだ場合など）.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void transferShortFile() throws Exception {
+		byte[] data = data(100000);
+		Path file = write(data);
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			ByteArrayOutputStream os = new ByteArrayOutputStream();
+			try {
+				DownloadPage.transfer(channel, 0, data.length + 1, os);
+				fail("EOFException expected");
+			} catch (EOFException e) {
+				// 送信できた分は出力済み
+				assertArrayEquals(data, os.toByteArray());
+			}
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	/**
+	 * テストデータを作成する.
+	 *
+	 * @param size
+	 *            バイト数
+	 * @return テストデータ
+	 */
+	private static byte[] data(int size) {
+		byte[] data = new byte[size];
+		for (int i = 0; i < size; i++) {
+			data[i] = (byte) (i * 31);
+		}
+		return data;
+	}
+
+	/**
+	 * 一時ファイルに書き込む.
+	 *
+	 * @param data
+	 *            データ
+	 * @return 一時ファイル
+	 * @throws Exception
+	 *             書き込みに失敗した場合
+	 */
+	private static Path write(byte[] data) throws Exception {
+		Path file = Files.createTempFile("kt-download", ".bin");
+		Files.write(file, data);
+		return file;
+	}
+}
@@ -0,0 +1,97 @@
+package jp.kt.web.page;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * {@link TextStreamDownloadPage}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class TextStreamDownloadPageTest {
+	/**
+	 * Readerの内容を送信し、解放時にcloseする.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void readerClosedOnRelease() throws Exception {
+		TrackingReader reader = new TrackingReader("テキスト");
+		TextStreamDownloadPage page = new TextStreamDownloadPage(reader,
+				"UTF-8");
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		page.writeContent(os);
+		assertEquals("テキスト", new String(os.toByteArray(),
+				StandardCharsets.UTF_8));
+		page.release();
+		assertTrue(reader.closed);
+	}
+
+	/**
+	 * 送信に失敗した場合も、解放時にcloseする.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void readerClosedOnError() throws Exception {
+		TrackingReader reader = new TrackingReader("テキスト");
+		TextStreamDownloadPage page = new TextStreamDownloadPage(reader,
+				"UTF-8");
+		try {
+			page.writeContent(new OutputStream() {
+				@Override
+				public void write(int b) throws IOException {
+					throw new IOException("切断");
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len)
+						throws IOException {
+					throw new IOException("切断");
+				}
+			});
+			fail("IOException expected");
+		} catch (IOException e) {
+			// クライアントの切断
+		}
+		assertFalse(reader.closed);
+		page.release();
+		assertTrue(reader.closed);
+	}
+
+	/**
+	 * closeされたかを記録するReader.
+	 */
+	private static final class TrackingReader extends StringReader {
+		/** close済みフラグ */
+		private boolean closed;
+
+		/**
+		 * コンストラクタ.
+		 *
+		 * @param s
+		 *            読み込む文字列
+		 */
+		TrackingReader(String s) {
+			super(s);
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+			super.close();
+		}
+	}
+}
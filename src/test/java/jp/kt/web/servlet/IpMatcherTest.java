@@ -0,0 +1,151 @@
+package jp.kt.web.servlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * {@link IpMatcher}のテスト.
+ *
+ * @author tatsuya.kumon
+ */
+public class IpMatcherTest {
+	/**
+	 * IPv4のCIDR表記.
+	 */
+	@Test
+	public void ipv4Cidr() {
+		IpMatcher m = IpMatcher.compile(Arrays.asList("192.168.1.0/24",
+				"10.0.0.1", "172.16.0.0/12"));
+		assertTrue(m.matches("192.168.1.0"));
+		assertTrue(m.matches("192.168.1.255"));
+		assertFalse(m.matches("192.168.2.0"));
+		assertFalse(m.matches("192.168.0.255"));
+		assertTrue(m.matches("10.0.0.1"));
+		assertFalse(m.matches("10.0.0.2"));
+		assertTrue(m.matches("172.31.255.255"));
+		assertFalse(m.matches("172.32.0.0"));
+		// IPv4射影アドレスでも一致する
+		assertTrue(m.matches("::ffff:192.168.1.10"));
+	}
+
+	/**
+	 * プレフィックス長の境界値.
+	 */
+	@Test
+	public void prefixBounds() {
+		IpMatcher all = IpMatcher.compile(Collections.singletonList("0.0.0.0/0"));
+		assertTrue(all.matches("0.0.0.0"));
+		assertTrue(all.matches("255.255.255.255"));
+		assertFalse(all.matches("2001:db8::1"));
+		IpMatcher host = IpMatcher.compile(Collections
+				.singletonList("192.168.1.1/32"));
+		assertTrue(host.matches("192.168.1.1"));
+		assertFalse(host.matches("192.168.1.2"));
+		// IPv4で32を超えるプレフィックス長は文字列として扱う
+		IpMatcher invalid = IpMatcher.compile(Collections
+				.singletonList("192.168.1.1/33"));
+		assertFalse(invalid.matches("192.168.1.1"));
+		assertTrue(invalid.matches("192.168.1.1/33"));
+	}
+
+	/**
+	 * IPv6の「::」による省略.
+	 */
+	@Test
+	public void ipv6Compression() {
+		assertArrayEquals(new Object[] { 0L, 0L }, box(IpMatcher
+				.parseAddress("::")));
+		assertArrayEquals(new Object[] { 0L, 1L }, box(IpMatcher
+				.parseAddress("::1")));
+		assertArrayEquals(new Object[] { 0x20010db800000000L, 0L },
+				box(IpMatcher.parseAddress("2001:db8::")));
+		assertArrayEquals(new Object[] { 0x20010db800000000L, 1L },
+				box(IpMatcher.parseAddress("2001:db8::1")));
+		assertArrayEquals(new Object[] { 0x20010db800000000L, 1L },
+				box(IpMatcher.parseAddress("2001:0db8:0:0:0:0:0:1")));
+		assertArrayEquals(new Object[] { 0x0001000000000000L, 0x0000000000070008L },
+				box(IpMatcher.parseAddress("1::7:8")));
+		assertArrayEquals(new Object[] { 0L, 0xffffc0a80101L },
+				box(IpMatcher.parseAddress("::ffff:192.168.1.1")));
+		assertArrayEquals(new Object[] { 0L, 1L }, box(IpMatcher
+				.parseAddress("[::1]")));
+		assertArrayEquals(new Object[] { 0xfe80000000000000L, 1L },
+				box(IpMatcher.parseAddress("fe80::1%eth0")));
+	}
+
+	/**
+	 * IPv6として不正な表記.
+	 */
+	@Test
+	public void ipv6Invalid() {
+		assertNull(IpMatcher.parseAddress(":::"));
+		assertNull(IpMatcher.parseAddress("1::2::3"));
+		assertNull(IpMatcher.parseAddress(":1::"));
+		assertNull(IpMatcher.parseAddress("1:2:3:4:5:6:7:8:9"));
+		assertNull(IpMatcher.parseAddress("1:2:3:4:5:6:7::8"));
+		assertNull(IpMatcher.parseAddress("1:2:3:4:5:6:7"));
+		assertNull(IpMatcher.parseAddress("1:"));
+		assertNull(IpMatcher.parseAddress("12345::"));
+		assertNull(IpMatcher.parseAddress("g::1"));
+	}
+
+	/**
+	 * IPv6のCIDR表記.
+	 */
+	@Test
+	public void ipv6Cidr() {
+		IpMatcher m = IpMatcher.compile(Arrays.asList("2001:db8::/32", "::1"));
+		assertTrue(m.matches("2001:db8::"));
+		assertTrue(m.matches("2001:db8:ffff:ffff:ffff:ffff:ffff:ffff"));
+		assertTrue(m.matches("2001:0DB8:1::1"));
+		assertFalse(m.matches("2001:db9::"));
+		assertTrue(m.matches("::1"));
+		assertTrue(m.matches("0:0:0:0:0:0:0:1"));
+		assertFalse(m.matches("::2"));
+		assertFalse(m.matches("127.0.0.1"));
+	}
+
+	/**
+	 * 範囲の統合.
+	 */
+	@Test
+	public void mergedRanges() {
+		IpMatcher m = IpMatcher.compile(Arrays.asList("10.0.1.0/24",
+				"10.0.0.0/24", "10.0.0.128/25", "10.0.3.0/24"));
+		assertTrue(m.matches("10.0.0.0"));
+		assertTrue(m.matches("10.0.1.255"));
+		assertFalse(m.matches("10.0.2.0"));
+		assertTrue(m.matches("10.0.3.1"));
+	}
+
+	/**
+	 * アドレスとして解釈できない値は文字列の完全一致.
+	 */
+	@Test
+	public void literals() {
+		IpMatcher m = IpMatcher.compile(Arrays.asList("localhost", null));
+		assertFalse(m.isEmpty());
+		assertTrue(m.matches("localhost"));
+		assertFalse(m.matches("127.0.0.1"));
+		assertFalse(m.matches(null));
+		assertTrue(IpMatcher.compile(null).isEmpty());
+	}
+
+	/**
+	 * 比較用に変換する.
+	 *
+	 * @param address
+	 *            上位64ビット、下位64ビットの配列
+	 * @return 変換結果
+	 */
+	private static Object[] box(long[] address) {
+		return new Object[] { address[0], address[1] };
+	}
+}
@@ -0,0 +1,137 @@
+package jp.kt.web.tag;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 1,000行のフォーム画面の出力のベンチマーク.
+ * <p>
+ * コンテナと同様にタグハンドラを再利用し、1行ごとに属性をセットして出力する.<br>
+ * 1行は {@link OutTag}、{@link InputTag}（テキスト、チェックボックス）、
+ * {@link FormatNumberTag}、{@link OptionTag} で構成する.<br>
+ * <br>
+ * test-compileでJMHのベンチマークが生成されるため、下記で実行する.<br>
+ * 1行あたりのメモリ確保量は「-prof gc」で確認する.<br>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt<br>
+ * java -cp target/test-classes:target/classes:$(cat cp.txt) org.openjdk.jmh.Main
+ * FormPageBenchmark -prof gc
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormPageBenchmark {
+	/** 行数 */
+	private static final int ROWS = 1000;
+
+	/** PCのUser-Agent */
+	private static final String PC = "Mozilla/5.0 (Windows NT 10.0; Win64; x64)";
+
+	/** チェック済みの値 */
+	private static final List<String> CHECKED = Arrays.asList("1", "3", "5");
+
+	/** テスト用のPageContext */
+	private TestPageContext pageContext;
+
+	/** 行ごとの名前 */
+	private String[] names;
+
+	/** 行ごとの値 */
+	private String[] values;
+
+	/** 行ごとの金額 */
+	private BigDecimal[] prices;
+
+	/** 名前の出力 */
+	private OutTag name;
+
+	/** テキスト入力 */
+	private InputTag text;
+
+	/** チェックボックス */
+	private InputTag checkbox;
+
+	/** 金額の出力 */
+	private FormatNumberTag price;
+
+	/** 選択肢 */
+	private OptionTag option;
+
+	/**
+	 * 初期化.
+	 */
+	@Setup
+	public void setUp() {
+		pageContext = new TestPageContext(PC);
+		names = new String[ROWS];
+		values = new String[ROWS];
+		prices = new BigDecimal[ROWS];
+		for (int i = 0; i < ROWS; i++) {
+			names[i] = "商品<" + i + "> & \"お買い得\"";
+			values[i] = String.valueOf(i % 10);
+			prices[i] = BigDecimal.valueOf(i * 1234567L, 2);
+		}
+		name = new OutTag();
+		name.setPageContext(pageContext);
+		text = new InputTag();
+		text.setPageContext(pageContext);
+		text.setType("text");
+		text.setSize("20");
+		text.setMaxlength("40");
+		checkbox = new InputTag();
+		checkbox.setPageContext(pageContext);
+		checkbox.setType("checkbox");
+		checkbox.setName("selected");
+		checkbox.setCheckedValue(CHECKED);
+		price = new FormatNumberTag();
+		price.setPageContext(pageContext);
+		price.setPattern("#,##0.00");
+		option = new OptionTag();
+		option.setPageContext(pageContext);
+		option.setSelectedValue("3");
+	}
+
+	/**
+	 * 1画面分を出力する.
+	 *
+	 * @return 出力した文字数
+	 * @throws Exception
+	 *             出力に失敗した場合
+	 */
+	@Benchmark
+	public int renderPage() throws Exception {
+		for (int i = 0; i < ROWS; i++) {
+			name.setValue(names[i]);
+			name.doEndTag();
+			text.setName("name" + i);
+			text.setValue(names[i]);
+			text.doEndTag();
+			checkbox.setValue(values[i]);
+			checkbox.doEndTag();
+			price.setValue(prices[i]);
+			price.doEndTag();
+			option.setValue(values[i]);
+			option.setDisplayText(names[i]);
+			option.doEndTag();
+		}
+		return pageContext.discardOutput();
+	}
+}
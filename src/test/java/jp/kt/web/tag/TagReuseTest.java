@@ -0,0 +1,222 @@
+package jp.kt.web.tag;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import javax.servlet.jsp.JspException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * コンテナによるタグハンドラの再利用のテスト.
+ * <p>
+ * コンテナは再利用時に前回と同じ属性値のsetterを呼び出さない場合があるため、<br>
+ * setterを呼び出さずに再度出力しても同じ結果になることを確認する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class TagReuseTest {
+	/** PCのUser-Agent */
+	private static final String PC = "Mozilla/5.0 (Windows NT 10.0; Win64; x64)";
+
+	/** AndroidのUser-Agent */
+	private static final String ANDROID = "Mozilla/5.0 (Linux; Android 13; Pixel 7)";
+
+	/** テスト用のPageContext */
+	private TestPageContext pageContext;
+
+	/**
+	 * 初期化.
+	 */
+	@Before
+	public void setUp() {
+		pageContext = new TestPageContext(PC);
+	}
+
+	/**
+	 * setterを呼び出さずに再利用した場合.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void reuseWithoutSetters() throws Exception {
+		OutTag out = new OutTag();
+		out.setPageContext(pageContext);
+		out.setValue("a<b");
+		assertEquals("a&lt;b", render(out));
+		assertEquals("a&lt;b", render(out));
+
+		FormatNumberTag number = new FormatNumberTag();
+		number.setPageContext(pageContext);
+		number.setValue(new BigDecimal("1234567.5"));
+		number.setPattern("#,##0.0");
+		assertEquals("1,234,567.5", render(number));
+		assertEquals("1,234,567.5", render(number));
+
+		InputTag input = new InputTag();
+		input.setPageContext(pageContext);
+		input.setType("text");
+		input.setName("q");
+		input.setSize("10");
+		assertEquals(
+				"<input type=\"text\" name=\"q\" size=\"10\">",
+				render(input));
+		assertEquals(
+				"<input type=\"text\" name=\"q\" size=\"10\">",
+				render(input));
+	}
+
+	/**
+	 * release後は初期状態に戻る.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void releaseResets() throws Exception {
+		OutTag out = new OutTag();
+		out.setPageContext(pageContext);
+		out.setValue("<x>");
+		out.setEscapeXml(false);
+		assertEquals("<x>", render(out));
+		out.release();
+		out.setPageContext(pageContext);
+		out.setValue("<y>");
+		assertEquals("&lt;y&gt;", render(out));
+	}
+
+	/**
+	 * 不正なsize、maxlengthは前回の値を残さない.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void invalidSizeClearsPreviousValue() throws Exception {
+		InputTag input = new InputTag();
+		input.setPageContext(pageContext);
+		input.setType("text");
+		input.setName("q");
+		input.setSize("10");
+		input.setMaxlength("20");
+		assertEquals(
+				"<input type=\"text\" name=\"q\" size=\"10\" maxlength=\"20\">",
+				render(input));
+		input.setSize("-1");
+		input.setMaxlength("0");
+		assertEquals("<input type=\"text\" name=\"q\">", render(input));
+	}
+
+	/**
+	 * チェック済みの値にnullを指定すると、前回の値を残さない.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void nullCheckedValueClearsPreviousValue() throws Exception {
+		InputTag input = new InputTag();
+		input.setPageContext(pageContext);
+		input.setType("checkbox");
+		input.setName("c");
+		input.setValue("2");
+		input.setCheckedValue(Arrays.asList("1", "2"));
+		assertEquals(
+				"<input type=\"checkbox\" name=\"c\" value=\"2\" checked=\"checked\">",
+				render(input));
+		input.setCheckedValue(null);
+		assertEquals("<input type=\"checkbox\" name=\"c\" value=\"2\">",
+				render(input));
+		input.setCheckedValue(new String[] { "2" });
+		assertEquals(
+				"<input type=\"checkbox\" name=\"c\" value=\"2\" checked=\"checked\">",
+				render(input));
+	}
+
+	/**
+	 * 別の端末からのリクエストで再利用した場合、typeは端末に応じて変換する.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void typeResolvedPerRequest() throws Exception {
+		InputTag input = new InputTag();
+		input.setPageContext(pageContext);
+		input.setType("tel");
+		input.setName("t");
+		assertEquals("<input type=\"tel\" name=\"t\">", render(input));
+		pageContext.newRequest(ANDROID);
+		assertEquals("<input type=\"text\" name=\"t\">", render(input));
+		pageContext.newRequest(PC);
+		assertEquals("<input type=\"tel\" name=\"t\">", render(input));
+	}
+
+	/**
+	 * 再利用時の出力で確保したメモリ量を出力する.
+	 * <p>
+	 * 計測値はJVMやGCの設定で変わるため判定はせず、
+	 * 画面全体での確認は {@link FormPageBenchmark} で行う.
+	 * </p>
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void reportReuseAllocation() throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory
+				.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			// 計測できないJVMでは確認しない
+			return;
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+		long id = Thread.currentThread().getId();
+		OutTag out = new OutTag();
+		out.setPageContext(pageContext);
+		out.setValue("一覧の値");
+		InputTag input = new InputTag();
+		input.setPageContext(pageContext);
+		input.setType("checkbox");
+		input.setName("c");
+		input.setValue("2");
+		input.setCheckedValue(Arrays.asList("1", "2"));
+		int iterations = 10000;
+		// JITコンパイル後に計測する
+		for (int i = 0; i < iterations; i++) {
+			out.doEndTag();
+			input.doEndTag();
+			pageContext.getOut().clearBuffer();
+		}
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < iterations; i++) {
+			out.doEndTag();
+			input.doEndTag();
+			pageContext.getOut().clearBuffer();
+		}
+		long perTag = (threads.getThreadAllocatedBytes(id) - before)
+				/ iterations;
+		System.out.println("TagReuseTest: " + perTag
+				+ " bytes allocated per reused tag");
+	}
+
+	/**
+	 * タグを出力する.
+	 *
+	 * @param tag
+	 *            タグ
+	 * @return 出力された文字列
+	 * @throws JspException
+	 *             出力に失敗した場合
+	 */
+	private String render(BaseTag tag) throws JspException {
+		tag.doEndTag();
+		return pageContext.takeOutput();
+	}
+}
@@ -0,0 +1,395 @@
+package jp.kt.web.tag;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.el.ELContext;
+import javax.servlet.Servlet;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import javax.servlet.jsp.JspWriter;
+import javax.servlet.jsp.PageContext;
+
+/**
+ * タグのテスト用の {@link PageContext}.
+ * <p>
+ * 出力を文字列として保持し、リクエストはUser-Agentとリクエスト属性のみを扱う.<br>
+ * {@link #newRequest(String)} で、タグハンドラを再利用したまま次のリクエストに切り替える.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+final class TestPageContext extends PageContext {
+	/** 出力先 */
+	private final StringJspWriter out = new StringJspWriter();
+
+	/** HTTPリクエスト */
+	private HttpServletRequest request;
+
+	/**
+	 * コンストラクタ.
+	 *
+	 * @param userAgent
+	 *            User-Agent
+	 */
+	TestPageContext(String userAgent) {
+		newRequest(userAgent);
+	}
+
+	/**
+	 * 次のリクエストに切り替える.
+	 *
+	 * @param userAgent
+	 *            User-Agent
+	 */
+	void newRequest(final String userAgent) {
+		final Map<String, Object> attributes = new HashMap<>();
+		request = (HttpServletRequest) Proxy.newProxyInstance(getClass()
+				.getClassLoader(), new Class<?>[] { HttpServletRequest.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						switch (method.getName()) {
+						case "getHeader":
+							return "User-Agent".equalsIgnoreCase((String) args[0]) ? userAgent
+									: null;
+						case "getAttribute":
+							return attributes.get(args[0]);
+						case "setAttribute":
+							attributes.put((String) args[0], args[1]);
+							return null;
+						case "removeAttribute":
+							attributes.remove(args[0]);
+							return null;
+						default:
+							return null;
+						}
+					}
+				});
+	}
+
+	/**
+	 * 出力された文字列を取得し、出力先を空にする.
+	 *
+	 * @return 出力された文字列
+	 */
+	String takeOutput() {
+		String s = out.buffer.toString();
+		out.buffer.setLength(0);
+		return s;
+	}
+
+	/**
+	 * 出力された文字数を取得し、出力先を空にする.
+	 * <p>
+	 * {@link #takeOutput()} と異なり、文字列を生成しない.
+	 * </p>
+	 *
+	 * @return 出力された文字数
+	 */
+	int discardOutput() {
+		int length = out.buffer.length();
+		out.buffer.setLength(0);
+		return length;
+	}
+
+	@Override
+	public JspWriter getOut() {
+		return out;
+	}
+
+	@Override
+	public ServletRequest getRequest() {
+		return request;
+	}
+
+	@Override
+	public void initialize(Servlet servlet, ServletRequest request,
+			ServletResponse response, String errorPageURL,
+			boolean needsSession, int bufferSize, boolean autoFlush) {
+	}
+
+	@Override
+	public void release() {
+	}
+
+	@Override
+	public HttpSession getSession() {
+		return null;
+	}
+
+	@Override
+	public Object getPage() {
+		return null;
+	}
+
+	@Override
+	public ServletResponse getResponse() {
+		return null;
+	}
+
+	@Override
+	public Exception getException() {
+		return null;
+	}
+
+	@Override
+	public ServletConfig getServletConfig() {
+		return null;
+	}
+
+	@Override
+	public ServletContext getServletContext() {
+		return null;
+	}
+
+	@Override
+	public void forward(String relativeUrlPath) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void include(String relativeUrlPath) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void include(String relativeUrlPath, boolean flush) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public void handlePageException(Exception e) {
+		throw new UnsupportedOperationException(e);
+	}
+
+	@Override
+	public void handlePageException(Throwable t) {
+		throw new UnsupportedOperationException(t);
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		request.setAttribute(name, value);
+	}
+
+	@Override
+	public void setAttribute(String name, Object value, int scope) {
+		request.setAttribute(name, value);
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return request.getAttribute(name);
+	}
+
+	@Override
+	public Object getAttribute(String name, int scope) {
+		return request.getAttribute(name);
+	}
+
+	@Override
+	public Object findAttribute(String name) {
+		return request.getAttribute(name);
+	}
+
+	@Override
+	public void removeAttribute(String name) {
+		request.removeAttribute(name);
+	}
+
+	@Override
+	public void removeAttribute(String name, int scope) {
+		request.removeAttribute(name);
+	}
+
+	@Override
+	public int getAttributesScope(String name) {
+		return REQUEST_SCOPE;
+	}
+
+	@Override
+	public Enumeration<String> getAttributeNamesInScope(int scope) {
+		return Collections.emptyEnumeration();
+	}
+
+	@Override
+	@Deprecated
+	public javax.servlet.jsp.el.ExpressionEvaluator getExpressionEvaluator() {
+		return null;
+	}
+
+	@Override
+	@Deprecated
+	public javax.servlet.jsp.el.VariableResolver getVariableResolver() {
+		return null;
+	}
+
+	@Override
+	public ELContext getELContext() {
+		return null;
+	}
+
+	/**
+	 * 文字列に出力する {@link JspWriter}.
+	 */
+	private static final class StringJspWriter extends JspWriter {
+		/** 出力された文字列 */
+		private final StringBuilder buffer = new StringBuilder();
+
+		/**
+		 * コンストラクタ.
+		 */
+		StringJspWriter() {
+			super(0, true);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			buffer.append(cbuf, off, len);
+		}
+
+		@Override
+		public void newLine() {
+			buffer.append('\n');
+		}
+
+		@Override
+		public void print(boolean b) {
+			buffer.append(b);
+		}
+
+		@Override
+		public void print(char c) {
+			buffer.append(c);
+		}
+
+		@Override
+		public void print(int i) {
+			buffer.append(i);
+		}
+
+		@Override
+		public void print(long l) {
+			buffer.append(l);
+		}
+
+		@Override
+		public void print(float f) {
+			buffer.append(f);
+		}
+
+		@Override
+		public void print(double d) {
+			buffer.append(d);
+		}
+
+		@Override
+		public void print(char[] s) {
+			buffer.append(s);
+		}
+
+		@Override
+		public void print(String s) {
+			buffer.append(s);
+		}
+
+		@Override
+		public void print(Object obj) {
+			buffer.append(obj);
+		}
+
+		@Override
+		public void println() {
+			newLine();
+		}
+
+		@Override
+		public void println(boolean x) {
+			print(x);
+			newLine();
+		}
+
+		@Override
+		public void println(char x) {
+			print(x);
+			newLine();
+		}
+
+		@Override
+		public void println(int x) {
+			print(x);
+			newLine();
+		}
+
+		@Override
+		public void println(long x) {
+			print(x);
+			newLine();
+		}
+
+		@Override
+		public void println(float x) {
+			print(x);
+			newLine();
+		}
+
+		@Override
+		public void println(double x) {
+			print(x);
+			newLine();
+		}
+
+		@Override
+		public void println(char[] x) {
+			print(x);
+			newLine();
+		}
+
+		@Override
+		public void println(String x) {
+			print(x);
+			newLine();
+		}
+
+		@Override
+		public void println(Object x) {
+			print(x);
+			newLine();
+		}
+
+		@Override
+		public void clear() throws IOException {
+			buffer.setLength(0);
+		}
+
+		@Override
+		public void clearBuffer() {
+			buffer.setLength(0);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public int getRemaining() {
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package jp.kt.web.tag;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import jp.kt.tool.HtmlUtil;
+import jp.kt.tool.StringUtil;
+
+import org.junit.Test;
+
+/**
+ * {@link TextTransformer}のテスト.
+ * <p>
+ * 従来の {@link HtmlUtil}、{@link StringUtil} を順に適用した結果と比較する.<br>
+ * {@link TextTransformer} のJavadocに記載した相違点は、比較前に正規化するか、個別に確認する.
+ * </p>
+ *
+ * @author tatsuya.kumon
+ */
+public class TextTransformerTest {
+	/** Shift_JIS系（MS932） */
+	private static final Charset MS932 = Charset.forName("windows-31j");
+
+	/** 比較する文字列 */
+	private static final List<String> CORPUS = Arrays.asList("",
+			"plain text", "&<>\"'", "a&b<c>d\"e'f", "&amp;", "1\r2\n3\r\n4",
+			"\r\n\r\n", "\n\r", "<p>\r\n'x'\r\n</p>", "アイウエオ",
+			"ガギグゲゴザジズゼゾダヂヅデドバビブベボ", "パピプペポ", "ヴヵヶ",
+			"ァィゥェォッャュョヮヰヱヲン", "。「、」・ー゛゜", "ひらがなと漢字",
+			"ｱｲｳｴｵ", "𠮷野家の𠮷", "🍣と\"寿司\"\r\n<おいしい>");
+
+	/** カットを確認する文字列（エスケープ、改行を含まないもの） */
+	private static final List<String> CUT_CORPUS = Arrays.asList("abcdef",
+			"あいうえお", "aあbいcう", "ｱｲｳｴｵ", "ｶﾞｷﾞｸﾞ", "ガギグ", "𠮷野家",
+			"a𠮷b🍣c", "Ωαβ");
+
+	/**
+	 * エスケープ、改行コード変換、半角カナ変換の組み合わせ.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void matchesOriginal() throws Exception {
+		for (String s : CORPUS) {
+			for (int flags = 0; flags < 8; flags++) {
+				boolean escapeXml = (flags & 1) != 0;
+				boolean convertBR = (flags & 2) != 0;
+				boolean zenToHan = (flags & 4) != 0;
+				assertEquals(s + " flags=" + flags,
+						normalize(original(s, escapeXml, convertBR, zenToHan,
+								null)),
+						normalize(transform(s, escapeXml, convertBR, zenToHan,
+								-1, null)));
+			}
+		}
+	}
+
+	/**
+	 * エスケープ、改行を含まない文字列のカット.
+	 * <p>
+	 * 半角カナ変換後の濁音・半濁音を分割しない点が異なるため、半角カナ変換なしで比較する.
+	 * </p>
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void cutMatchesOriginal() throws Exception {
+		for (String s : CUT_CORPUS) {
+			for (int cutByte = 0; cutByte <= s.length() * 4; cutByte++) {
+				assertEquals(s + " cutByte=" + cutByte,
+						original(s, true, true, false, cutByte),
+						transform(s, true, true, false, cutByte, null));
+			}
+		}
+	}
+
+	/**
+	 * UTF-8でのカット位置.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void cutBoundaryUtf8() throws Exception {
+		Charset cs = StandardCharsets.UTF_8;
+		assertEquals("...", transform("あいう", false, false, false, 2, cs));
+		assertEquals("あ...", transform("あいう", false, false, false, 3, cs));
+		assertEquals("あ...", transform("あいう", false, false, false, 5, cs));
+		assertEquals("あい...", transform("あいう", false, false, false, 6, cs));
+		assertEquals("あいう", transform("あいう", false, false, false, 9, cs));
+		// サロゲートペアは4バイトで、分割しない
+		assertEquals("...", transform("𠮷野家", false, false, false, 3, cs));
+		assertEquals("𠮷...", transform("𠮷野家", false, false, false, 4, cs));
+		// 半角カナ変換後の文字で数え、濁音は分割しない（ｶﾞは6バイト）
+		assertEquals("ｱ...", transform("アガ", false, false, true, 4, cs));
+		assertEquals("ｱ...", transform("アガ", false, false, true, 8, cs));
+		assertEquals("ｱｶﾞ", transform("アガ", false, false, true, 9, cs));
+	}
+
+	/**
+	 * MS932でのカット位置.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void cutBoundaryMs932() throws Exception {
+		assertEquals("...", transform("あいう", false, false, false, 1, MS932));
+		assertEquals("あ...", transform("あいう", false, false, false, 3, MS932));
+		assertEquals("あい...", transform("あいう", false, false, false, 4,
+				MS932));
+		assertEquals("あいう", transform("あいう", false, false, false, 6, MS932));
+		assertEquals("ｱｲ...", transform("ｱｲｳ", false, false, false, 2, MS932));
+		// 半角カナ変換後の文字で数える（ｶﾞは2バイト）
+		assertEquals("ｱｶﾞ...", transform("アガイ", false, false, true, 3,
+				MS932));
+		// 表現できない文字は全角1文字として数える
+		assertEquals("𠮷...", transform("𠮷野家", false, false, false, 2, MS932));
+		assertEquals("𠮷野...", transform("𠮷野家", false, false, false, 5,
+				MS932));
+	}
+
+	/**
+	 * カット位置がエスケープ後の文字参照や＜br＞タグの途中になる場合.
+	 * <p>
+	 * 従来はエスケープ後の文字列をカットしていたため、文字参照やタグが壊れていた.
+	 * </p>
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void cutCountsDisplayedText() throws Exception {
+		Charset cs = StandardCharsets.UTF_8;
+		assertEquals("&lt;b...", transform("<b>", true, false, false, 2, cs));
+		assertEquals("&lt;b&gt;", transform("<b>", true, false, false, 3, cs));
+		assertEquals("a<br>...", transform("a\r\nb", false, true, false, 3, cs));
+		assertEquals("a<br>b", transform("a\r\nb", false, true, false, 4, cs));
+		assertEquals("a...", transform("a\r\nb", false, true, false, 2, cs));
+		assertEquals("&#034;x&#034;", transform("\"x\"", true, false, false,
+				3, cs));
+	}
+
+	/**
+	 * 変換対象を含まない文字列は、そのまま出力する.
+	 *
+	 * @throws Exception
+	 *             テスト失敗
+	 */
+	@Test
+	public void unchangedText() throws Exception {
+		final String s = "変換対象を含まない文字列";
+		final String[] appended = new String[1];
+		TextTransformer.write(new Appendable() {
+			@Override
+			public Appendable append(CharSequence csq) {
+				appended[0] = (String) csq;
+				return this;
+			}
+
+			@Override
+			public Appendable append(CharSequence csq, int start, int end) {
+				throw new AssertionError("sliced");
+			}
+
+			@Override
+			public Appendable append(char c) {
+				throw new AssertionError("char");
+			}
+		}, s, true, true, true, -1, null);
+		assertEquals(s, appended[0]);
+	}
+
+	/**
+	 * 従来の {@link OutTag} と同じく、{@link HtmlUtil}、{@link StringUtil} を順に適用する.
+	 *
+	 * @param s
+	 *            テキスト
+	 * @param escapeXml
+	 *            HTML特殊文字をエスケープする場合はtrue
+	 * @param convertBR
+	 *            改行コードを＜br＞タグに変換する場合はtrue
+	 * @param zenToHan
+	 *            全角カナを半角カナに変換する場合はtrue
+	 * @param cutByte
+	 *            カットするバイト数（nullの場合はカットしない）
+	 * @return 出力
+	 */
+	private static String original(String s, boolean escapeXml,
+			boolean convertBR, boolean zenToHan, Integer cutByte) {
+		String out = s;
+		if (escapeXml) {
+			out = HtmlUtil.escape(out);
+		}
+		if (convertBR) {
+			out = HtmlUtil.replaceLineToBrtag(out);
+		}
+		if (zenToHan) {
+			out = StringUtil.zenToHan(out);
+		}
+		boolean cut = false;
+		if (cutByte != null) {
+			try {
+				int beforeLength = out.length();
+				out = StringUtil.cutString(out, cutByte);
+				cut = beforeLength > out.length();
+			} catch (Exception e) {
+				// 従来と同じくカットしない
+			}
+		}
+		return cut ? out + "..." : out;
+	}
+
+	/**
+	 * {@link TextTransformer} で変換する.
+	 *
+	 * @param s
+	 *            テキスト
+	 * @param escapeXml
+	 *            HTML特殊文字をエスケープする場合はtrue
+	 * @param convertBR
+	 *            改行コードを＜br＞タグに変換する場合はtrue
+	 * @param zenToHan
+	 *            全角カナを半角カナに変換する場合はtrue
+	 * @param cutByte
+	 *            カットするバイト数（0未満の場合はカットしない）
+	 * @param charset
+	 *            バイト数を数える文字コード（nullの場合は kt.core.default.charset）
+	 * @return 出力
+	 * @throws IOException
+	 *             出力に失敗した場合
+	 */
+	private static String transform(String s, boolean escapeXml,
+			boolean convertBR, boolean zenToHan, int cutByte, Charset charset)
+			throws IOException {
+		StringBuilder sb = new StringBuilder();
+		if (charset == null) {
+			TextTransformer.write(sb, s, escapeXml, convertBR, zenToHan,
+					cutByte);
+		} else {
+			TextTransformer.write(sb, s, escapeXml, convertBR, zenToHan,
+					cutByte, charset);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * 「"」「'」の文字参照の表記の違いを正規化する.
+	 *
+	 * @param s
+	 *            出力
+	 * @return 正規化した出力
+	 */
+	private static String normalize(String s) {
+		return s.replace("&quot;", "&#034;").replace("&#34;", "&#034;")
+				.replace("&apos;", "&#039;").replace("&#39;", "&#039;");
+	}
+}